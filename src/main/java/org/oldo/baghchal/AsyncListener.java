@@ -0,0 +1,134 @@
+package org.oldo.baghchal;
+
+import org.guppy4j.log.Log;
+import org.guppy4j.log.LogProvider;
+import org.oldo.baghchal.model.Piece;
+
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.guppy4j.log.Log.Level.debug;
+import static org.guppy4j.log.Log.Level.error;
+
+/**
+ * Forwards game table events to a listener on a dedicated thread,
+ * so that the game thread never waits for side effects like sound I/O
+ */
+public final class AsyncListener implements Listener, ListenerMetrics {
+
+    private final Log log;
+
+    private final Listener delegate;
+    private final long maxAgeNanos;
+
+    private final BlockingQueue<Event> queue;
+
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    public AsyncListener(LogProvider logProvider, Listener delegate, int capacity, long maxAgeMillis) {
+        log = logProvider.getLog(getClass());
+        this.delegate = delegate;
+        this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAgeMillis);
+        queue = new ArrayBlockingQueue<>(capacity);
+        final Thread thread = new Thread(this::dispatch, "listener-dispatch");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void afterJump(Piece piece) {
+        enqueue(new Event(true, piece));
+    }
+
+    @Override
+    public void afterStep(Piece piece) {
+        enqueue(new Event(false, piece));
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    @Override
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    private void enqueue(Event event) {
+        // under backpressure the oldest event is the stalest, so it goes first
+        while (!queue.offer(event)) {
+            if (queue.poll() != null) {
+                droppedCount.incrementAndGet();
+            }
+        }
+    }
+
+    private void dispatch() {
+        while (!Thread.currentThread().isInterrupted()) {
+            final Event event;
+            try {
+                event = queue.take();
+            } catch (InterruptedException e) {
+                log.as(debug, e);
+                return;
+            }
+            // a burst of identical events is delivered once
+            while (event.equals(queue.peek())) {
+                queue.poll();
+                coalescedCount.incrementAndGet();
+            }
+            if (System.nanoTime() - event.created > maxAgeNanos) {
+                droppedCount.incrementAndGet();
+            } else {
+                deliver(event);
+            }
+        }
+    }
+
+    private void deliver(Event event) {
+        try {
+            if (event.jump) {
+                delegate.afterJump(event.piece);
+            } else {
+                delegate.afterStep(event.piece);
+            }
+        } catch (RuntimeException e) {
+            // keep the dispatch thread alive for later events
+            log.as(error, e);
+        }
+    }
+
+    private static final class Event {
+
+        final boolean jump;
+        final Piece piece;
+        final long created = System.nanoTime();
+
+        Event(boolean jump, Piece piece) {
+            this.jump = jump;
+            this.piece = piece;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Event event = (Event) o;
+            return jump == event.jump && piece == event.piece;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(jump, piece);
+        }
+    }
+}
@@ -18,7 +18,7 @@ import static org.oldo.baghchal.model.Piece.PREY;
  */
 public final class BaghChalSetup {
 
-    static void prepare(GameTable gameTable) {
+    public static void prepare(GameTable gameTable) {
         final int boardSize = gameTable.getPositions().getBoardSize();
         final int predatorCount = (boardSize / 5) - 1;
         setCornerPositions(gameTable, PREDATOR, predatorCount);
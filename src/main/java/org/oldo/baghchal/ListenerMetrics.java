@@ -0,0 +1,21 @@
+package org.oldo.baghchal;
+
+import javax.management.MXBean;
+
+/**
+ * Counters of the game table events handed to a listener on another thread
+ */
+@MXBean
+public interface ListenerMetrics {
+
+    /**
+     * @return events dropped under backpressure or for being too old when their turn came
+     */
+    long getDroppedCount();
+
+    /**
+     * @return events delivered as one with an identical event right before them
+     */
+    long getCoalescedCount();
+
+}
@@ -7,28 +7,53 @@ import org.guppy4j.log.LogProvider;
 import org.guppy4j.log.Slf4jLogProvider;
 import org.guppy4j.run.Executable;
 import org.guppy4j.run.Startable;
+import org.oldo.baghchal.book.MappedOpeningBook;
+import org.oldo.baghchal.book.OpeningBook;
+import org.oldo.baghchal.control.EngineWarmup;
 import org.oldo.baghchal.control.GameLoop;
+import org.oldo.baghchal.control.HistoryControl;
 import org.oldo.baghchal.control.Player;
 import org.oldo.baghchal.control.PredatorStrategy;
 import org.oldo.baghchal.control.PreyStrategy;
+import org.oldo.baghchal.control.ProofSolver;
+import org.oldo.baghchal.control.RemotePlayer;
+import org.oldo.baghchal.control.TimeManager;
 import org.oldo.baghchal.control.UserPlayer;
+import org.oldo.baghchal.journal.Journal;
+import org.oldo.baghchal.journal.MoveJournal;
+import org.oldo.baghchal.metrics.EdtWatchdog;
+import org.oldo.baghchal.metrics.FlightRecording;
+import org.oldo.baghchal.metrics.GameMetrics;
+import org.oldo.baghchal.metrics.MBeans;
+import org.oldo.baghchal.model.GameClock;
 import org.oldo.baghchal.model.GameTable;
 import org.oldo.baghchal.model.GameTableFactory;
 import org.oldo.baghchal.model.Levels;
+import org.oldo.baghchal.model.Piece;
 import org.oldo.baghchal.model.Players;
-import org.oldo.baghchal.resources.AudioUrlPlayer;
+import org.oldo.baghchal.model.Puzzle;
+import org.oldo.baghchal.net.SpectatorFeed;
+import org.oldo.baghchal.net.SpectatorServer;
+import org.oldo.baghchal.resources.AudioMixer;
+import org.oldo.baghchal.resources.PcmLoader;
 import org.oldo.baghchal.theming.Themes;
 import org.oldo.baghchal.view.GameFrame;
 import org.oldo.baghchal.view.GamePanel;
 import org.oldo.baghchal.view.GameView;
 import org.oldo.g2d.IntPair;
+import org.oldo.g2d.Size;
 import org.oldo.text.CharCanvasImpl;
 
 import javax.swing.SpinnerNumberModel;
+import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.URL;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
 import static java.lang.invoke.MethodHandles.lookup;
+import static org.guppy4j.log.Log.Level.warn;
 import static org.oldo.baghchal.model.Piece.PREDATOR;
 import static org.oldo.baghchal.model.Piece.PREY;
 import static org.oldo.baghchal.theming.Theme.SoundResourceId.CONGRATS;
@@ -48,54 +73,184 @@ public final class Main {
 
         Thread.setDefaultUncaughtExceptionHandler(new FailHandler(log));
 
-        new AudioSystemChecker().run();
-        FlatDarkLaf.install();
+        final StartupProfile startup = new StartupProfile(logProvider);
+        MBeans.register(startup, "StartupMetrics");
 
         System.setProperty("sun.java2d.opengl", "true");
 
+        final CompletableFuture<Void> audioCheck = startup.timeAsync("audio check", new AudioSystemChecker());
+        final CompletableFuture<Void> lookAndFeel = startup.timeAsync("look and feel", FlatDarkLaf::install);
+
         final IntPair defaultBoardSize = new IntPair(5, 5);
 
         final String resourceBasePath = "/org/oldo/baghchal/themes";
-        final Themes themes = new Themes(new SimpleClassPathScanner(), resourceBasePath, "%s/%s.%s");
+        final CompletableFuture<Themes> themesScan = startup.supplyAsync("theme scan",
+                () -> new Themes(new SimpleClassPathScanner(), resourceBasePath, "%s/%s.%s"));
+
+        final GameMetrics metrics = new GameMetrics(Boolean.getBoolean("baghchal.metrics"));
+        MBeans.register(metrics, "GameMetrics");
+
+        final FlightRecording flightRecording = new FlightRecording(metrics, Paths.get("baghchal.jfr"));
+        MBeans.register(flightRecording, "FlightRecording");
+        if (Boolean.getBoolean("baghchal.jfr")) {
+            flightRecording.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(flightRecording::stop));
+        }
+
+        final long edtStallMillis = Long.getLong("baghchal.edtStallMillis", 50);
+        new EdtWatchdog(logProvider, edtStallMillis, 30_000, 5).start();
 
         final int maxLevel = 2;
-        final Levels levels = new Levels(maxLevel);
+        final Levels levels = Boolean.getBoolean("baghchal.puzzles")
+                ? Levels.loadPuzzles(Main.class.getResource("/org/oldo/baghchal/puzzles.txt"))
+                : new Levels(maxLevel);
+
+        // built offline by OpeningBookBuilder
+        final OpeningBook book = MappedOpeningBook.open(logProvider,
+                Paths.get(System.getProperty("baghchal.book", "baghchal.book")));
+
+        // compiles the engine while the window loads, if enabled with -Dbaghchal.warmup=true
+        final EngineWarmup warmup = new EngineWarmup(logProvider, defaultBoardSize, book,
+                Long.getLong("baghchal.warmupMillis", 5_000));
+        if (Boolean.getBoolean("baghchal.warmup")) {
+            warmup.start();
+        }
+
+        final Themes themes = StartupProfile.join(themesScan);
 
-        final Consumer<URL> audioPlayMethod = url -> {
-            if (url != null) {
-                AudioUrlPlayer.play(url);
+        final AudioMixer audioMixer = new AudioMixer(logProvider, new PcmLoader(AudioMixer.FORMAT), 8, 50);
+        // not needed before the first turn, which waits for it
+        final CompletableFuture<Void> soundPreload = startup.defer("sound preload",
+                () -> {
+                    audioMixer.start();
+                    themes.getSoundResources().forEach(audioMixer::preload);
+                });
+        MBeans.register(audioMixer, "AudioMetrics");
+        final Consumer<URL> audioPlayMethod = audioMixer::play;
+
+        final Consumer<GameTable> tableSetupMethod = gameTable -> {
+            final Puzzle puzzle = levels.getPuzzle();
+            if (puzzle != null && puzzle.fits(gameTable)) {
+                puzzle.setUp(gameTable);
+            } else {
+                BaghChalSetup.prepare(gameTable);
             }
         };
-
-        final Consumer<GameTable> tableSetupMethod = BaghChalSetup::prepare;
 //        final Consumer<GameTable> tableSetupMethod = gameTable -> AlquerqueSetup.prepare(gameTable, PREDATOR, PREY);
 
-        final EventSounds listener = new EventSounds(audioPlayMethod, themes);
+        final AsyncListener listener = new AsyncListener(logProvider, new EventSounds(audioPlayMethod, themes), 16, 250);
+        MBeans.register(listener, "ListenerMetrics");
 
         final CharCanvasImpl charCanvas = new CharCanvasImpl();
 
         final GameTableFactory gameTableFactory =
-                (size) -> new GameTable(logProvider, size, tableSetupMethod, listener, charCanvas);
+                (size) -> new GameTable(logProvider, size, tableSetupMethod, listener, charCanvas, metrics);
+
+        StartupProfile.join(lookAndFeel);
 
-        final GameView gamePanel = new GamePanel(gameTableFactory, defaultBoardSize, themes, levels);
+        final GameView gamePanel = startup.supply("game panel",
+                () -> new GamePanel(gameTableFactory, defaultBoardSize, themes, levels, metrics));
 
-        final Player preyStrategy = new PreyStrategy();
-//        final Player preyStrategy = new PredatorStrategy(levels, PREY, PREDATOR);
+        // base and increment in seconds, e.g. -Dbaghchal.clock=300+5; untimed without
+        final GameClock clock = GameClock.parse(System.getProperty("baghchal.clock"));
+        final TimeManager timeManager = new TimeManager(logProvider, 3_000,
+                Long.getLong("baghchal.clockOverheadMillis", 100));
+
+        // searches for forced captures while the computer predators have time to think
+        final ProofSolver solver = new ProofSolver(18, Long.MAX_VALUE, Long.MAX_VALUE, ProofSolver.Progress.NONE);
+
+        final Player preyStrategy = new PreyStrategy(book);
+//        final Player preyStrategy = new PredatorStrategy(levels, PREY, PREDATOR, book, solver);
         final Player preyPlayer = new UserPlayer(PREY, gamePanel);
-        final Player predatorStrategy = new PredatorStrategy(levels, PREDATOR, PREY);
+        final Player predatorStrategy = new PredatorStrategy(levels, PREDATOR, PREY, book, solver);
         final Player predatorPlayer = new UserPlayer(PREDATOR, gamePanel);
 
-        final Players players = new Players(logProvider, preyStrategy, preyPlayer, predatorStrategy, predatorPlayer);
+        final RemotePlayer remote = openRemote(logProvider, defaultBoardSize);
+
+        final Players players = new Players(logProvider, metrics, timeManager,
+                remoteOr(remote, PREY, preyStrategy), remoteOr(remote, PREY, preyPlayer),
+                remoteOr(remote, PREDATOR, predatorStrategy), remoteOr(remote, PREDATOR, predatorPlayer));
+
+        final HistoryControl history = new HistoryControl(gamePanel);
 
         final GameFrame gameFrame = new GameFrame("Bagh-Chal", logProvider, gamePanel, themes,
                 new SpinnerNumberModel(5, 4, 99, 1),
                 new SpinnerNumberModel(5, 4, 99, 1),
-                players, PREDATOR, "Predators", PREY, "Prey");
+                players, history, clock, PREDATOR, "Predators", PREY, "Prey");
+
+        final Executable congrats = () -> audioMixer.play(themes.getSoundResource(CONGRATS));
+
+        if (remote != null) {
+            // takes over the board size of the host's game
+            remote.start(gameFrame::setBoardSize);
+        }
+        final MoveJournal journal = openJournal(logProvider);
 
-        final Executable congrats = () -> AudioUrlPlayer.play(themes.getSoundResource(CONGRATS));
+        final Startable gameLoop = new GameLoop(logProvider, metrics, gameFrame, levels, congrats, players, history,
+                journal, clock, warmup, () -> StartupProfile.join(soundPreload), openSpectators(logProvider, log));
 
-        final Startable gameLoop = new GameLoop(logProvider, gameFrame, levels, congrats, players);
+        gameFrame.addOpenedListener(startup::firstFrameShown);
+
+        StartupProfile.join(audioCheck);
 
         gameLoop.start();
     }
+
+    /**
+     * Lets one piece be played on another machine through the GameHost given by -Dbaghchal.remote=host:port,
+     * if any, in the game given by -Dbaghchal.remoteGame=id; -Dbaghchal.remotePiece=PREDATOR for the other piece
+     */
+    private static RemotePlayer openRemote(LogProvider logProvider, Size boardSize) {
+        final String host = System.getProperty("baghchal.remote");
+        if (host == null) {
+            return null;
+        }
+        final int colon = host.lastIndexOf(':');
+        final InetSocketAddress address = colon < 0
+                ? new InetSocketAddress(host, 7575)
+                : new InetSocketAddress(host.substring(0, colon), Integer.parseInt(host.substring(colon + 1)));
+        return new RemotePlayer(logProvider,
+                Piece.valueOf(System.getProperty("baghchal.remotePiece", "PREY")), address,
+                Integer.getInteger("baghchal.remoteGame", 1), boardSize);
+    }
+
+    /**
+     * @return the remote player if it plays the piece, so neither the user nor the computer can play it here
+     */
+    private static Player remoteOr(RemotePlayer remote, Piece piece, Player player) {
+        return remote != null && remote.getPiece() == piece ? remote : player;
+    }
+
+    /**
+     * Streams the game to spectators on the port given by -Dbaghchal.spectatorPort, if any
+     */
+    private static SpectatorFeed openSpectators(LogProvider logProvider, Log log) {
+        final Integer port = Integer.getInteger("baghchal.spectatorPort");
+        if (port == null) {
+            return SpectatorFeed.NONE;
+        }
+        try {
+            final SpectatorServer server = new SpectatorServer(logProvider, new InetSocketAddress(port));
+            server.start();
+            return server;
+        } catch (IOException e) {
+            log.as(warn, e);
+            return SpectatorFeed.NONE;
+        }
+    }
+
+    /**
+     * Journals the game to the directory given by -Dbaghchal.journal, if any, so it survives a restart
+     */
+    private static MoveJournal openJournal(LogProvider logProvider) {
+        final String dir = System.getProperty("baghchal.journal");
+        if (dir == null) {
+            return MoveJournal.NONE;
+        }
+        final Journal journal = new Journal(logProvider, Paths.get(dir),
+                Integer.getInteger("baghchal.journalSnapshotEvery", 32),
+                Long.getLong("baghchal.journalSyncMillis", 100));
+        Runtime.getRuntime().addShutdownHook(new Thread(journal::close));
+        return journal.open(1);
+    }
 }
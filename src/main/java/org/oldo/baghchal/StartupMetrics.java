@@ -0,0 +1,22 @@
+package org.oldo.baghchal;
+
+import javax.management.MXBean;
+import java.util.Map;
+
+/**
+ * Timings of the application's start-up
+ */
+@MXBean
+public interface StartupMetrics {
+
+    /**
+     * @return milliseconds from start-up until the window was first shown, or -1 before
+     */
+    long getTimeToFirstFrameMillis();
+
+    /**
+     * @return milliseconds of each start-up phase timed so far, in the order they ended
+     */
+    Map<String, Long> getPhaseMillis();
+
+}
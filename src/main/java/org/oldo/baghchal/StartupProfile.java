@@ -0,0 +1,135 @@
+package org.oldo.baghchal;
+
+import org.guppy4j.log.Log;
+import org.guppy4j.log.LogProvider;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.guppy4j.log.Log.Level.debug;
+import static org.guppy4j.log.Log.Level.info;
+
+/**
+ * Times the start-up phases, runs independent ones in parallel
+ * and defers non-critical work until the first frame is visible.
+ * The time to the first frame is logged and published with the phases.
+ */
+public final class StartupProfile implements StartupMetrics {
+
+    private final Log log;
+
+    private final long startNanos = System.nanoTime();
+
+    private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+    private final Collection<Runnable> deferred = new ArrayList<>();
+
+    private volatile long timeToFirstFrameNanos = -1;
+
+    public StartupProfile(LogProvider logProvider) {
+        log = logProvider.getLog(getClass());
+    }
+
+    public void time(String phase, Runnable runnable) {
+        supply(phase, () -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    public <T> T supply(String phase, Supplier<T> supplier) {
+        final long start = System.nanoTime();
+        try {
+            return supplier.get();
+        } finally {
+            record(phase, System.nanoTime() - start);
+        }
+    }
+
+    public CompletableFuture<Void> timeAsync(String phase, Runnable runnable) {
+        return CompletableFuture.runAsync(() -> time(phase, runnable));
+    }
+
+    public <T> CompletableFuture<T> supplyAsync(String phase, Supplier<T> supplier) {
+        return CompletableFuture.supplyAsync(() -> supply(phase, supplier));
+    }
+
+    /**
+     * Waits for a parallel phase, rethrowing its failure as if it had run in the calling thread
+     */
+    public static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            final Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : e;
+        }
+    }
+
+    /**
+     * Runs a phase in parallel once the first frame is shown
+     *
+     * @return completes when the phase is done
+     */
+    public synchronized CompletableFuture<Void> defer(String phase, Runnable runnable) {
+        if (timeToFirstFrameNanos >= 0) {
+            return timeAsync(phase, runnable);
+        }
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        deferred.add(() -> {
+            try {
+                time(phase, runnable);
+                future.complete(null);
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    public void firstFrameShown() {
+        final Collection<Runnable> toRun;
+        synchronized (this) {
+            if (timeToFirstFrameNanos >= 0) {
+                return;
+            }
+            timeToFirstFrameNanos = System.nanoTime() - startNanos;
+            toRun = new ArrayList<>(deferred);
+            deferred.clear();
+        }
+        log.as(info, "Time to first frame: {} ms (JVM uptime {} ms)",
+                getTimeToFirstFrameMillis(), ManagementFactory.getRuntimeMXBean().getUptime());
+        logPhases();
+        CompletableFuture.runAsync(() -> toRun.forEach(Runnable::run));
+    }
+
+    @Override
+    public long getTimeToFirstFrameMillis() {
+        final long nanos = timeToFirstFrameNanos;
+        return nanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    @Override
+    public synchronized Map<String, Long> getPhaseMillis() {
+        final Map<String, Long> millis = new LinkedHashMap<>();
+        phaseNanos.forEach((phase, nanos) -> millis.put(phase, TimeUnit.NANOSECONDS.toMillis(nanos)));
+        return millis;
+    }
+
+    private synchronized void record(String phase, long nanos) {
+        phaseNanos.put(phase, nanos);
+        if (timeToFirstFrameNanos >= 0) {
+            log.as(debug, "Start-up phase {}: {} ms", phase, TimeUnit.NANOSECONDS.toMillis(nanos));
+        }
+    }
+
+    private void logPhases() {
+        getPhaseMillis().forEach((phase, millis) -> log.as(debug, "Start-up phase {}: {} ms", phase, millis));
+    }
+}
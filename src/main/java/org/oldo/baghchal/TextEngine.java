@@ -0,0 +1,319 @@
+package org.oldo.baghchal;
+
+import org.guppy4j.log.LogProvider;
+import org.guppy4j.log.Slf4jLogProvider;
+import org.oldo.baghchal.control.EngineSearch;
+import org.oldo.baghchal.control.ThinkingTime;
+import org.oldo.baghchal.control.TimeManager;
+import org.oldo.baghchal.metrics.GameMetrics;
+import org.oldo.baghchal.model.GameClock;
+import org.oldo.baghchal.model.GameTable;
+import org.oldo.baghchal.model.Move;
+import org.oldo.baghchal.model.Piece;
+import org.oldo.baghchal.model.Position;
+import org.oldo.baghchal.model.Puzzle;
+import org.oldo.g2d.IntPair;
+import org.oldo.g2d.Size;
+import org.oldo.text.CharCanvasImpl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Headless entry point for external drivers, e.g. tournament tools, speaking a line-based
+ * protocol over stdin and stdout in the manner of UCI. Commands are read on the main thread
+ * and searches run on another, so that {@code stop} or {@code isready} are answered while
+ * the engine thinks.
+ * <p>
+ * Commands:
+ * <ul>
+ * <li>{@code baghchal}: answered by {@code id name ...} and {@code baghchalok}</li>
+ * <li>{@code isready}: answered by {@code readyok}</li>
+ * <li>{@code size <width> <height>}: a new game on a board of that size</li>
+ * <li>{@code newgame}: a new game on the board in use</li>
+ * <li>{@code position startpos [moves <move>...]}, or {@code position puzzle <puzzle> [moves <move>...]}
+ * with a position in the format of {@link Puzzle}, whose board size it takes</li>
+ * <li>{@code go [depth <plies>] [nodes <count>] [movetime <ms>] [time <ms>] [inc <ms>] [infinite]}:
+ * searches for the piece to move, given time to think or time left on its clock and its increment,
+ * with {@code info depth <plies> score <score> nodes <count> nps <count> time <ms> pv <move>...}
+ * per iteration and {@code bestmove <move>} or {@code bestmove none} at the end, which is not before
+ * {@code stop} if {@code infinite}</li>
+ * <li>{@code stop}: ends the search, which answers with its best move so far</li>
+ * <li>{@code d}: prints the table</li>
+ * <li>{@code quit}</li>
+ * </ul>
+ * A move is written as table coordinates from and to, e.g. {@code 0,1-1,1} places a prey from
+ * the border. Scores are for the piece to move, {@code win <plies>} or {@code loss <plies>} if forced.
+ * Errors are answered by {@code info string <message>}.
+ */
+public final class TextEngine {
+
+    private static final int MIN_BOARD_SIZE = 4;
+    private static final int MAX_BOARD_SIZE = 99;
+
+    private final LogProvider logProvider;
+    private final PrintStream out;
+    private final TimeManager timeManager;
+    private final ExecutorService searcher = Executors.newSingleThreadExecutor(r -> {
+        final Thread thread = new Thread(r, "search");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private GameTable table;
+    private EngineSearch search = new EngineSearch();
+    private Future<?> running;
+
+    private TextEngine(LogProvider logProvider, PrintStream out, TimeManager timeManager) {
+        this.logProvider = logProvider;
+        this.out = out;
+        this.timeManager = timeManager;
+        table = newTable(new IntPair(5, 5), BaghChalSetup::prepare);
+    }
+
+    public static void main(String... args) throws IOException {
+        // stdout is for the protocol only
+        System.setProperty("logback.configurationFile", "org/oldo/baghchal/logback-engine.xml");
+        final LogProvider logProvider = new Slf4jLogProvider();
+        final PrintStream out = new PrintStream(System.out, false, StandardCharsets.UTF_8.name());
+        final TextEngine engine = new TextEngine(logProvider, out,
+                new TimeManager(logProvider, 3_000, Long.getLong("baghchal.clockOverheadMillis", 50)));
+        final BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = in.readLine()) != null && engine.execute(line.trim())) {
+            // next command
+        }
+        engine.stopSearch();
+    }
+
+    /**
+     * @return false to quit
+     */
+    private boolean execute(String line) {
+        final List<String> words = Arrays.asList(line.split("\\s+"));
+        try {
+            switch (words.get(0)) {
+                case "baghchal":
+                    send("id name Bagh-Chal");
+                    send("baghchalok");
+                    break;
+                case "isready":
+                    send("readyok");
+                    break;
+                case "size":
+                    stopSearch();
+                    table = newTable(new IntPair(boardSize(words, 1), boardSize(words, 2)), BaghChalSetup::prepare);
+                    break;
+                case "newgame":
+                    stopSearch();
+                    table = newTable(new IntPair(table.getBoardXSize(), table.getBoardYSize()), BaghChalSetup::prepare);
+                    break;
+                case "position":
+                    stopSearch();
+                    position(words);
+                    break;
+                case "go":
+                    stopSearch();
+                    go(words);
+                    break;
+                case "stop":
+                    search.stop();
+                    break;
+                case "d":
+                    send(table.toString());
+                    break;
+                case "quit":
+                    return false;
+                case "":
+                    break;
+                default:
+                    send("info string unknown command: " + line);
+            }
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            send("info string " + e.getMessage());
+        }
+        return true;
+    }
+
+    private void position(List<String> words) {
+        int i = 1;
+        final GameTable start;
+        if ("startpos".equals(words.get(i))) {
+            start = newTable(new IntPair(table.getBoardXSize(), table.getBoardYSize()), BaghChalSetup::prepare);
+            i++;
+        } else if ("puzzle".equals(words.get(i))) {
+            final Puzzle puzzle = Puzzle.parse(String.join(" ", words.subList(i + 1, i + 9)));
+            start = newTable(puzzle.getBoardSize(), puzzle::setUp);
+            i += 9;
+        } else {
+            throw new IllegalArgumentException("Expected startpos or puzzle: " + words.get(i));
+        }
+        if (i < words.size()) {
+            if (!"moves".equals(words.get(i))) {
+                throw new IllegalArgumentException("Expected moves: " + words.get(i));
+            }
+            for (String word : words.subList(i + 1, words.size())) {
+                start.movePiece(legalMove(start, parseMove(word)));
+            }
+        }
+        table = start;
+    }
+
+    private void go(List<String> words) {
+        int depth = EngineSearch.MAX_DEPTH;
+        long nodes = Long.MAX_VALUE;
+        long moveTime = -1;
+        long clockTime = -1;
+        long increment = 0;
+        boolean infinite = false;
+        for (int i = 1; i < words.size(); i++) {
+            switch (words.get(i)) {
+                case "depth":
+                    depth = Integer.parseInt(words.get(++i));
+                    break;
+                case "nodes":
+                    nodes = Long.parseLong(words.get(++i));
+                    break;
+                case "movetime":
+                    moveTime = Long.parseLong(words.get(++i));
+                    break;
+                case "time":
+                    clockTime = Long.parseLong(words.get(++i));
+                    break;
+                case "inc":
+                    increment = Long.parseLong(words.get(++i));
+                    break;
+                case "infinite":
+                    infinite = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown search limit: " + words.get(i));
+            }
+        }
+        final Piece toMove = Piece.toMove(table.getHistory().getPly());
+        final ThinkingTime time;
+        if (moveTime >= 0) {
+            time = ThinkingTime.of(moveTime, moveTime);
+        } else if (clockTime >= 0) {
+            // the clock is not running: it only tells the time manager what is left
+            time = timeManager.allocate(table, toMove, new GameClock(Math.max(1, clockTime), increment));
+        } else {
+            time = ThinkingTime.UNLIMITED;
+        }
+        final GameTable root = table.copy();
+        final int maxDepth = depth;
+        final long maxNodes = nodes;
+        final boolean untilStopped = infinite;
+        // a new search, so a stop before it starts is not lost
+        final EngineSearch search = new EngineSearch();
+        this.search = search;
+        running = searcher.submit(() -> {
+            final Move best = search.search(root, toMove, maxDepth, maxNodes, time, this::info);
+            if (untilStopped) {
+                // the best move is only sent on stop, even if the search has nothing left to do
+                search.awaitStop();
+            }
+            send("bestmove " + (best == null ? "none" : format(best)));
+            return null;
+        });
+    }
+
+    private void info(int depth, int score, long nodes, long nanos, List<Move> pv) {
+        final StringBuilder line = new StringBuilder("info depth ").append(depth).append(" score ");
+        if (score >= EngineSearch.WIN - EngineSearch.MAX_DEPTH) {
+            line.append("win ").append(EngineSearch.WIN - score);
+        } else if (score <= EngineSearch.MAX_DEPTH - EngineSearch.WIN) {
+            line.append("loss ").append(EngineSearch.WIN + score);
+        } else {
+            line.append(score);
+        }
+        line.append(" nodes ").append(nodes)
+                .append(" nps ").append(nanos > 0 ? nodes * 1_000_000_000L / nanos : 0)
+                .append(" time ").append(nanos / 1_000_000)
+                .append(" pv");
+        for (Move move : pv) {
+            line.append(' ').append(format(move));
+        }
+        send(line.toString());
+    }
+
+    /**
+     * Ends the search in progress, if any, and waits for its best move to be sent
+     */
+    private void stopSearch() {
+        if (running == null) {
+            return;
+        }
+        search.stop();
+        try {
+            running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            send("info string search failed: " + e.getCause());
+        }
+        running = null;
+    }
+
+    private GameTable newTable(Size size, Consumer<GameTable> setupMethod) {
+        final GameTable newTable = new GameTable(logProvider, size, setupMethod, Listener.NONE,
+                new CharCanvasImpl(), new GameMetrics(false));
+        newTable.reset();
+        return newTable;
+    }
+
+    /**
+     * @return the move if the piece to move may make it, checked as the game host does,
+     * so that prey may be placed from any border cell that holds one
+     */
+    private static Move legalMove(GameTable table, Move move) {
+        final Piece piece = Piece.toMove(table.getHistory().getPly());
+        if (table.getPositions().isOnTable(move.p1()) && table.get(move.p1()) == piece && table.isValid(move, piece)) {
+            return move;
+        }
+        throw new IllegalArgumentException("Illegal move for " + piece + ": " + format(move));
+    }
+
+    private static Move parseMove(String word) {
+        final String[] ends = word.split("-");
+        if (ends.length != 2) {
+            throw new IllegalArgumentException("Not a move: " + word);
+        }
+        return new Move(parsePosition(ends[0]), parsePosition(ends[1]));
+    }
+
+    private static Position parsePosition(String word) {
+        final String[] coordinates = word.split(",");
+        if (coordinates.length != 2) {
+            throw new IllegalArgumentException("Not a position: " + word);
+        }
+        return new Position(Integer.parseInt(coordinates[0]), Integer.parseInt(coordinates[1]));
+    }
+
+    private static String format(Move move) {
+        return move.p1().x() + "," + move.p1().y() + "-" + move.p2().x() + "," + move.p2().y();
+    }
+
+    private static int boardSize(List<String> words, int i) {
+        final int size = Integer.parseInt(words.get(i));
+        if (size < MIN_BOARD_SIZE || size > MAX_BOARD_SIZE) {
+            throw new IllegalArgumentException("Board size out of range " + MIN_BOARD_SIZE + ".." + MAX_BOARD_SIZE + ": " + size);
+        }
+        return size;
+    }
+
+    private synchronized void send(String line) {
+        out.println(line);
+        out.flush();
+    }
+}
@@ -0,0 +1,26 @@
+package org.oldo.baghchal.book;
+
+import org.oldo.baghchal.model.GameTable;
+
+import static org.oldo.baghchal.model.Piece.PREDATOR;
+import static org.oldo.baghchal.model.Piece.PREY;
+
+/**
+ * Static evaluation shared by the opening book builder and the engine search,
+ * so that the engine plays on from book positions as they were scored
+ */
+public final class Evaluation {
+
+    private Evaluation() {
+    }
+
+    /**
+     * @return score for the predators: prey taken first, then mobility
+     */
+    public static int forPredators(GameTable table) {
+        final int prey = table.getCount(PREY) + table.getHiddenBorderPieceCount();
+        final int mobility = table.getStepsWhereAdjacent(PREDATOR, null).size()
+                + 2 * table.getPossibleJumps(PREDATOR, PREY).size();
+        return mobility - 100 * prey;
+    }
+}
@@ -0,0 +1,104 @@
+package org.oldo.baghchal.book;
+
+import org.guppy4j.log.Log;
+import org.guppy4j.log.LogProvider;
+import org.oldo.baghchal.model.GameTable;
+import org.oldo.baghchal.model.Move;
+import org.oldo.baghchal.model.Piece;
+import org.oldo.baghchal.model.Position;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.file.StandardOpenOption.READ;
+import static org.guppy4j.log.Log.Level.info;
+import static org.guppy4j.log.Log.Level.warn;
+
+/**
+ * Opening book file mapped into memory and probed by binary search.
+ * <p>
+ * Layout: magic, board width and height, entry count (ints), then the entries sorted by
+ * key, each a long key and an int move (one byte per coordinate: x1, y1, x2, y2).
+ */
+public final class MappedOpeningBook implements OpeningBook {
+
+    static final int MAGIC = 0x42434231;
+    static final int HEADER_BYTES = 16;
+    static final int ENTRY_BYTES = 12;
+
+    private final ByteBuffer entries;
+    private final int boardX;
+    private final int boardY;
+    private final int count;
+
+    private MappedOpeningBook(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not an opening book");
+        }
+        boardX = buffer.getInt(4);
+        boardY = buffer.getInt(8);
+        count = buffer.getInt(12);
+        if (buffer.capacity() != HEADER_BYTES + (long) count * ENTRY_BYTES) {
+            throw new IOException("Truncated opening book");
+        }
+        buffer.position(HEADER_BYTES);
+        entries = buffer.slice();
+    }
+
+    /**
+     * @return the book in the file, or {@link OpeningBook#NONE} if there is no usable one
+     */
+    public static OpeningBook open(LogProvider logProvider, Path path) {
+        final Log log = logProvider.getLog(MappedOpeningBook.class);
+        if (!Files.exists(path)) {
+            log.as(info, "No opening book at {}", path.toAbsolutePath());
+            return NONE;
+        }
+        try (final FileChannel channel = FileChannel.open(path, READ)) {
+            // the mapping stays valid after the channel is closed
+            final MappedOpeningBook book = new MappedOpeningBook(channel.map(READ_ONLY, 0, channel.size()));
+            log.as(info, "Opening book for {} x {} with {} positions", book.boardX, book.boardY, book.count);
+            return book;
+        } catch (IOException e) {
+            log.as(warn, "Cannot use opening book {}: {}", path, e.getMessage());
+            return NONE;
+        }
+    }
+
+    @Override
+    public Move probe(GameTable table, Piece piece) {
+        if (table.getBoardXSize() != boardX || table.getBoardYSize() != boardY) {
+            return null;
+        }
+        final long key = OpeningBook.key(table, piece);
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final long midKey = entries.getLong(mid * ENTRY_BYTES);
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                final Move move = unpack(entries.getInt(mid * ENTRY_BYTES + 8));
+                // guards against key collisions
+                return table.get(move.p1()) == piece && table.isValid(move, piece) ? move : null;
+            }
+        }
+        return null;
+    }
+
+    static int pack(Move move) {
+        return move.p1().x() << 24 | move.p1().y() << 16 | move.p2().x() << 8 | move.p2().y();
+    }
+
+    private static Move unpack(int packed) {
+        return new Move(new Position(packed >>> 24, packed >>> 16 & 0xff),
+                new Position(packed >>> 8 & 0xff, packed & 0xff));
+    }
+}
@@ -0,0 +1,25 @@
+package org.oldo.baghchal.book;
+
+import org.oldo.baghchal.model.GameTable;
+import org.oldo.baghchal.model.Move;
+import org.oldo.baghchal.model.Piece;
+
+/**
+ * Best moves for positions near the start of the game, prepared offline
+ */
+public interface OpeningBook {
+
+    /**
+     * @return the book move of the piece on the table, or null if the position is not in the book
+     */
+    Move probe(GameTable table, Piece piece);
+
+    /**
+     * @return key of the position with the piece to move
+     */
+    static long key(GameTable table, Piece piece) {
+        return table.getKey() ^ (piece.ordinal() + 1) * 0x9e3779b97f4a7c15L;
+    }
+
+    OpeningBook NONE = (table, piece) -> null;
+}
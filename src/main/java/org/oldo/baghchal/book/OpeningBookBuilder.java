@@ -0,0 +1,153 @@
+package org.oldo.baghchal.book;
+
+import org.guppy4j.log.Slf4jLogProvider;
+import org.oldo.baghchal.BaghChalSetup;
+import org.oldo.baghchal.Listener;
+import org.oldo.baghchal.metrics.GameMetrics;
+import org.oldo.baghchal.model.GameTable;
+import org.oldo.baghchal.model.Move;
+import org.oldo.baghchal.model.Piece;
+import org.oldo.g2d.IntPair;
+import org.oldo.text.CharCanvasImpl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.oldo.baghchal.model.Piece.PREDATOR;
+
+/**
+ * Builds an opening book offline: every position up to the given number of plies from
+ * the start is searched by alpha-beta on all cores, and its best move is stored.
+ * <p>
+ * Arguments: [book file] [plies] [search depth] [board width] [board height]
+ */
+public final class OpeningBookBuilder {
+
+    private static final int WIN = 1_000_000;
+
+    private final int plies;
+    private final int searchDepth;
+
+    private OpeningBookBuilder(int plies, int searchDepth) {
+        this.plies = plies;
+        this.searchDepth = searchDepth;
+    }
+
+    public static void main(String... args) throws IOException {
+        final Path path = Paths.get(args.length > 0 ? args[0] : "baghchal.book");
+        final int plies = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        final int searchDepth = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        final int boardX = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        final int boardY = args.length > 4 ? Integer.parseInt(args[4]) : 5;
+
+        final GameTable start = new GameTable(new Slf4jLogProvider(), new IntPair(boardX, boardY),
+                BaghChalSetup::prepare, Listener.NONE, new CharCanvasImpl(), new GameMetrics(false));
+        start.reset();
+
+        final long t0 = System.nanoTime();
+        final Map<Long, Integer> book = new OpeningBookBuilder(plies, searchDepth).build(start);
+        write(path, boardX, boardY, book);
+        System.out.printf("%d positions up to ply %d, searched %d plies deep, in %.1f s, written to %s%n",
+                book.size(), plies, searchDepth, (System.nanoTime() - t0) / 1e9, path.toAbsolutePath());
+    }
+
+    /**
+     * @return best move by position key
+     */
+    private Map<Long, Integer> build(GameTable start) {
+        final Map<Long, Integer> book = new ConcurrentHashMap<>();
+        Collection<GameTable> frontier = Collections.singletonList(start);
+        for (int ply = 0; ply < plies && !frontier.isEmpty(); ply++) {
+            final Piece piece = Piece.toMove(ply);
+            final boolean expand = ply + 1 < plies;
+            final Map<Long, GameTable> next = new ConcurrentHashMap<>();
+            // each table is read (which fills its caches) by one thread only
+            frontier.parallelStream().forEach(table -> {
+                Move best = null;
+                int bestScore = -WIN - 1;
+                for (Move move : table.getLegalMoves(piece)) {
+                    final GameTable child = table.copy();
+                    child.movePiece(move);
+                    final int score = -search(child, piece.other(), searchDepth - 1, -WIN - 1, -bestScore);
+                    if (score > bestScore) {
+                        bestScore = score;
+                        best = move;
+                    }
+                    if (expand) {
+                        // transpositions are expanded once
+                        next.putIfAbsent(OpeningBook.key(child, piece.other()), child);
+                    }
+                }
+                if (best != null) {
+                    book.put(OpeningBook.key(table, piece), MappedOpeningBook.pack(best));
+                }
+            });
+            System.out.printf("ply %d: %d positions%n", ply, frontier.size());
+            frontier = next.values();
+        }
+        return book;
+    }
+
+    /**
+     * @return negamax score for the piece to move
+     */
+    private static int search(GameTable table, Piece piece, int depth, int alpha, int beta) {
+        final List<Move> moves = table.getLegalMoves(piece);
+        if (moves.isEmpty()) {
+            return -WIN;
+        }
+        if (depth == 0) {
+            return piece == PREDATOR ? Evaluation.forPredators(table) : -Evaluation.forPredators(table);
+        }
+        int best = alpha;
+        for (Move move : moves) {
+            final GameTable child = table.copy();
+            child.movePiece(move);
+            final int score = -search(child, piece.other(), depth - 1, -beta, -best);
+            if (score > best) {
+                best = score;
+                if (best >= beta) {
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+    private static void write(Path path, int boardX, int boardY, Map<Long, Integer> book) throws IOException {
+        final long[] keys = new long[book.size()];
+        int i = 0;
+        for (long key : book.keySet()) {
+            keys[i++] = key;
+        }
+        Arrays.sort(keys);
+        final ByteBuffer buffer = ByteBuffer.allocate(MappedOpeningBook.HEADER_BYTES + keys.length * MappedOpeningBook.ENTRY_BYTES);
+        buffer.putInt(MappedOpeningBook.MAGIC).putInt(boardX).putInt(boardY).putInt(keys.length);
+        for (long key : keys) {
+            buffer.putLong(key).putInt(book.get(key));
+        }
+        buffer.flip();
+        final Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (final FileChannel channel = FileChannel.open(temp, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        Files.move(temp, path, ATOMIC_MOVE, REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,174 @@
+package org.oldo.baghchal.control;
+
+import org.oldo.baghchal.book.Evaluation;
+import org.oldo.baghchal.model.GameTable;
+import org.oldo.baghchal.model.Move;
+import org.oldo.baghchal.model.Piece;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.oldo.baghchal.model.Piece.PREDATOR;
+
+/**
+ * Iterative deepening alpha-beta search for external drivers: one more ply per iteration,
+ * the principal variation of the last one searched first. It starts no iteration its thinking
+ * time has no room for, and stops at a depth, a node count, the hard limit of its thinking time
+ * or on {@link #stop()} from another thread, answering with the best move of the last complete
+ * iteration. A stopped search stays stopped, so there is one instance per search.
+ * <p>
+ * Scores are for the piece to move, by the {@link Evaluation} the opening book is built with: prey
+ * taken first, then predator mobility. A side without a move loses, sooner rather than later.
+ */
+public final class EngineSearch {
+
+    public static final int MAX_DEPTH = 64;
+    public static final int WIN = 1_000_000;
+
+    /**
+     * Receives the result of each complete iteration
+     */
+    public interface Info {
+
+        void report(int depth, int score, long nodes, long nanos, List<Move> pv);
+
+        Info NONE = (depth, score, nodes, nanos, pv) -> {
+            // ignore
+        };
+    }
+
+    // moves of the principal variation found so far, by ply from the root
+    private final Move[][] pv = new Move[MAX_DEPTH + 1][MAX_DEPTH + 1];
+    private final int[] pvLength = new int[MAX_DEPTH + 1];
+    private final Move[] previousPv = new Move[MAX_DEPTH];
+    private int previousPvLength;
+
+    private ThinkingTime time;
+    private long nodeLimit;
+    private long nodes;
+    private boolean aborted;
+    private volatile boolean stopped;
+    private final CountDownLatch stopSignal = new CountDownLatch(1);
+
+    /**
+     * Ends the search as soon as it sees the flag, also before it starts, e.g. from the thread reading commands
+     */
+    public void stop() {
+        stopped = true;
+        stopSignal.countDown();
+    }
+
+    /**
+     * Waits for {@link #stop()}, e.g. to hold back the best move of a search without limits that ended early
+     */
+    public void awaitStop() throws InterruptedException {
+        stopSignal.await();
+    }
+
+    /**
+     * @param maxDepth plies to search at most, up to {@link #MAX_DEPTH}
+     * @return the best move, or null if the piece to move has none
+     */
+    public Move search(GameTable table, Piece toMove, int maxDepth, long nodeLimit, ThinkingTime time, Info info) {
+        this.time = time;
+        this.nodeLimit = nodeLimit;
+        nodes = 0;
+        aborted = false;
+        previousPvLength = 0;
+        final long start = System.nanoTime();
+        final List<Move> rootMoves = table.getLegalMoves(toMove);
+        if (rootMoves.isEmpty() || toMove == PREDATOR && table.arePredatorsTrapped()) {
+            return null;
+        }
+        Move best = rootMoves.get(0);
+        final int depthLimit = Math.min(maxDepth, MAX_DEPTH);
+        int stableIterations = 0;
+        for (int depth = 1; depth <= depthLimit && time.hasTimeForIteration(stableIterations); depth++) {
+            final int score = search(table, toMove, depth, 0, -WIN - 1, WIN + 1);
+            if (aborted) {
+                break;
+            }
+            previousPvLength = pvLength[0];
+            System.arraycopy(pv[0], 0, previousPv, 0, previousPvLength);
+            stableIterations = isSame(previousPv[0], best) ? stableIterations + 1 : 0;
+            best = previousPv[0];
+            info.report(depth, score, nodes, System.nanoTime() - start, Arrays.asList(previousPv).subList(0, previousPvLength));
+            if (Math.abs(score) >= WIN - MAX_DEPTH) {
+                // a forced result does not change with depth
+                break;
+            }
+        }
+        return best;
+    }
+
+    public long getNodeCount() {
+        return nodes;
+    }
+
+    /**
+     * @return negamax score for the piece to move
+     */
+    private int search(GameTable table, Piece piece, int depth, int ply, int alpha, int beta) {
+        pvLength[ply] = ply;
+        if (++nodes >= nodeLimit || stopped || (nodes & 0x3ff) == 0 && time.isUp()) {
+            aborted = true;
+        }
+        if (aborted) {
+            return 0;
+        }
+        if (ply > 0 && table.isDrawn()) {
+            return 0;
+        }
+        final List<Move> moves = orderMoves(table.getLegalMoves(piece), ply);
+        if (moves.isEmpty() || piece == PREDATOR && table.arePredatorsTrapped()) {
+            return -WIN + ply;
+        }
+        if (depth == 0) {
+            return piece == PREDATOR ? Evaluation.forPredators(table) : -Evaluation.forPredators(table);
+        }
+        int best = alpha;
+        for (Move move : moves) {
+            final GameTable child = table.copy();
+            child.movePiece(move);
+            final int score = -search(child, piece.other(), depth - 1, ply + 1, -beta, -best);
+            if (aborted) {
+                return 0;
+            }
+            if (score > best) {
+                best = score;
+                pv[ply][ply] = move;
+                System.arraycopy(pv[ply + 1], ply + 1, pv[ply], ply + 1, pvLength[ply + 1] - ply - 1);
+                pvLength[ply] = Math.max(ply + 1, pvLength[ply + 1]);
+                if (best >= beta) {
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return the moves with the one of the previous principal variation at this ply first
+     */
+    private List<Move> orderMoves(List<Move> moves, int ply) {
+        if (ply >= previousPvLength) {
+            return moves;
+        }
+        final Move pvMove = previousPv[ply];
+        final List<Move> ordered = new ArrayList<>(moves.size());
+        for (Move m : moves) {
+            if (isSame(m, pvMove)) {
+                ordered.add(0, m);
+            } else {
+                ordered.add(m);
+            }
+        }
+        return ordered;
+    }
+
+    private static boolean isSame(Move a, Move b) {
+        return a.p1().equals(b.p1()) && a.p2().equals(b.p2());
+    }
+}
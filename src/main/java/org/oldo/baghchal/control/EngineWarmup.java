@@ -0,0 +1,136 @@
+package org.oldo.baghchal.control;
+
+import org.guppy4j.log.Log;
+import org.guppy4j.log.LogProvider;
+import org.oldo.baghchal.BaghChalSetup;
+import org.oldo.baghchal.Listener;
+import org.oldo.baghchal.book.OpeningBook;
+import org.oldo.baghchal.metrics.GameMetrics;
+import org.oldo.baghchal.model.GameTable;
+import org.oldo.baghchal.model.Levels;
+import org.oldo.baghchal.model.Move;
+import org.oldo.baghchal.model.Piece;
+import org.oldo.g2d.Size;
+import org.oldo.text.CharCanvasImpl;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.guppy4j.log.Log.Level.info;
+import static org.oldo.baghchal.model.Piece.PREDATOR;
+import static org.oldo.baghchal.model.Piece.PREY;
+
+/**
+ * Plays computer games on a table of its own, on a low-priority thread while the window loads,
+ * so that set-up, move generation and the strategies are compiled before the first real move.
+ * Stops when play begins or after a time limit, and logs how much faster a probe move got.
+ */
+public final class EngineWarmup {
+
+    private static final int MAX_PLIES = 300;
+    // every so often the predators get time to think, which runs the solver
+    private static final int THINK_EVERY = 8;
+
+    private final Log log;
+    private final LogProvider logProvider;
+    private final Size boardSize;
+    private final OpeningBook book;
+    private final long maxMillis;
+
+    private volatile boolean stopped;
+
+    /**
+     * @param maxMillis time after which the warm-up stops by itself
+     */
+    public EngineWarmup(LogProvider logProvider, Size boardSize, OpeningBook book, long maxMillis) {
+        log = logProvider.getLog(getClass());
+        this.logProvider = logProvider;
+        this.boardSize = boardSize;
+        this.book = book;
+        this.maxMillis = maxMillis;
+    }
+
+    public void start() {
+        final Thread thread = new Thread(this::run, "engine-warmup");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Ends the warm-up after the move in progress, e.g. as real play begins
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    private void run() {
+        final long start = System.nanoTime();
+        final long deadline = start + TimeUnit.MILLISECONDS.toNanos(maxMillis);
+        // players and table of its own, so nothing is shared with the game in play
+        final Levels levels = new Levels(2);
+        levels.nextLevel();
+        final Player prey = new PreyStrategy(book);
+        final Player predator = new PredatorStrategy(levels, PREDATOR, PREY, book,
+                new ProofSolver(14, Long.MAX_VALUE, Long.MAX_VALUE, ProofSolver.Progress.NONE));
+        final GameTable table = new GameTable(logProvider, boardSize, BaghChalSetup::prepare, Listener.NONE,
+                new CharCanvasImpl(), new GameMetrics(false));
+
+        final long coldNanos = probe(table, prey, predator);
+        long warmNanos = coldNanos;
+        int games = 0;
+        int moves = 0;
+        while (!stopped && System.nanoTime() - deadline < 0) {
+            moves += play(table, prey, predator, deadline);
+            games++;
+            if (!stopped) {
+                warmNanos = probe(table, prey, predator);
+            }
+        }
+        log.as(info, "Warm-up played {} games, {} moves in {} ms: a first move took {} ms cold, {} ms warm, {} ms saved",
+                games, moves, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                millis(coldNanos), millis(warmNanos), millis(coldNanos - warmNanos));
+    }
+
+    /**
+     * @return plies played
+     */
+    private int play(GameTable table, Player prey, Player predator, long deadline) {
+        table.reset();
+        for (int ply = 0; ply < MAX_PLIES; ply++) {
+            if (stopped || System.nanoTime() - deadline >= 0) {
+                return ply;
+            }
+            final Piece piece = Piece.toMove(table.getHistory().getPly());
+            final Player player = piece == PREY ? prey : predator;
+            final Move move = piece == PREDATOR && ply % THINK_EVERY == 1
+                    ? player.play(table, ThinkingTime.of(5, 10))
+                    : player.play(table);
+            if (move == null) {
+                return ply;
+            }
+            table.movePiece(move);
+            if (table.isDrawn()) {
+                return ply + 1;
+            }
+        }
+        return MAX_PLIES;
+    }
+
+    /**
+     * @return time for the first move of each side from the start
+     */
+    private static long probe(GameTable table, Player prey, Player predator) {
+        final long start = System.nanoTime();
+        table.reset();
+        final Move first = prey.play(table);
+        if (first != null) {
+            table.movePiece(first);
+            predator.play(table);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.1f", nanos / 1e6);
+    }
+}
@@ -4,16 +4,29 @@ import org.guppy4j.log.Log;
 import org.guppy4j.log.LogProvider;
 import org.guppy4j.run.Executable;
 import org.guppy4j.run.Startable;
+import org.oldo.baghchal.journal.MoveJournal;
+import org.oldo.baghchal.metrics.GameMetrics;
+import org.oldo.baghchal.metrics.TurnEvent;
+import org.oldo.baghchal.model.GameClock;
 import org.oldo.baghchal.model.GameTable;
 import org.oldo.baghchal.model.Levels;
 import org.oldo.baghchal.model.Move;
 import org.oldo.baghchal.model.Piece;
 import org.oldo.baghchal.model.Players;
+import org.oldo.baghchal.model.Puzzle;
+import org.oldo.baghchal.net.SpectatorFeed;
 import org.oldo.baghchal.view.GameFrame;
 
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+
 import static java.lang.System.lineSeparator;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.guppy4j.Booleans.not;
 import static org.guppy4j.log.Log.Level.debug;
+import static org.guppy4j.log.Log.Level.info;
+import static org.oldo.baghchal.model.Piece.PREDATOR;
 
 /**
  * Loop for the turn-taking of players
@@ -21,56 +34,174 @@ import static org.guppy4j.log.Log.Level.debug;
 public final class GameLoop implements Startable {
 
     private final Log log;
+    private final GameMetrics metrics;
 
     private final GameFrame gameFrame;
 
     private final Levels levels;
     private final Executable congrats;
     private final Players players;
+    private final HistoryControl history;
+    private final MoveJournal journal;
+    private final GameClock clock;
+    private final EngineWarmup warmup;
+    // waits for the sounds decoded at startup
+    private final Executable awaitSounds;
+    private final SpectatorFeed spectators;
+
+    // ends a user's turn when their time is up
+    private final ScheduledExecutorService flagFall = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, "flag-fall");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // the table and game last played, to tell players of new games
+    private GameTable lastTable;
+    private int lastGame;
 
-    public GameLoop(LogProvider logProvider, GameFrame gameFrame,
-                    Levels levels, Executable congrats, Players players) {
+    public GameLoop(LogProvider logProvider, GameMetrics metrics, GameFrame gameFrame,
+                    Levels levels, Executable congrats, Players players, HistoryControl history,
+                    MoveJournal journal, GameClock clock, EngineWarmup warmup, Executable awaitSounds,
+                    SpectatorFeed spectators) {
         log = logProvider.getLog(getClass());
+        this.metrics = metrics;
         this.gameFrame = gameFrame;
         this.levels = levels;
         this.congrats = congrats;
         this.players = players;
+        this.history = history;
+        this.journal = journal;
+        this.clock = clock;
+        this.warmup = warmup;
+        this.awaitSounds = awaitSounds;
+        this.spectators = spectators;
     }
 
     public void start() {
         gameFrame.start();
+        if (journal.recover(gameFrame::setBoardSize, levels) != null) {
+            gameFrame.repaintView();
+        }
+        // real play begins
+        warmup.stop();
+        // with the window shown, so the first sound of each kind plays without decoding
+        awaitSounds.execute();
 
         while (not(levels.isGameOver())) {
-            for (Piece piece : players.getPieces()) {
-                try {
-                    processTurn(piece);
-
-                } catch (PlayerInterruptedException e) {
-                    log.as(debug, e);
-                    break;
-                }
+            final GameTable gameTable = gameFrame.getGameTable();
+            history.apply(gameTable, players);
+            checkNewGame(gameTable);
+            // also after undo, redo, a new game or a resync
+            spectators.publish(gameTable.getSnapshot());
+            // whose turn it is follows from the moves made, also after undo or redo
+            final Piece piece = players.getPieceToMove(gameTable.getHistory().getPly());
+            if (gameTable.getHistory().isAtStart()) {
+                clock.reset();
+            }
+            clock.start(piece);
+            final long start = metrics.start();
+            try {
+                processTurn(piece);
+                metrics.recordTurn(start);
+
+            } catch (PlayerInterruptedException e) {
+                log.as(debug, e);
+                // e.g. after a remote player resynced the table
+                gameFrame.repaintView();
+            }
+        }
+    }
+
+    /**
+     * Tells the players of a new game, after the table was reset or replaced, e.g. with a
+     * board of another size, but not of the first game played
+     */
+    private void checkNewGame(GameTable gameTable) {
+        if (gameTable == lastTable && gameTable.getGameNumber() == lastGame) {
+            return;
+        }
+        if (lastTable != null) {
+            players.gameStarted(gameTable);
+        }
+        lastTable = gameTable;
+        lastGame = gameTable.getGameNumber();
+    }
+
+    private Move play(GameTable gameTable, Piece piece) {
+        final ScheduledFuture<?> flag = clock.isTimed() && !players.isPlayedByComputer(piece)
+                ? flagFall.schedule(gameTable::interruptTurn, clock.getRemainingMillis(piece) + 1, MILLISECONDS)
+                : null;
+        try {
+            return players.play(gameTable, piece, clock);
+        } finally {
+            if (flag != null) {
+                flag.cancel(false);
             }
         }
     }
 
     private void processTurn(Piece piece) {
+        final TurnEvent event = new TurnEvent();
+        event.begin();
         final GameTable gameTable = gameFrame.getGameTable();
-        final Move move = players.play(gameTable, piece);
+        // trapped predators end the game without asking their player for a move
+        final Move played = piece == PREDATOR && gameTable.arePredatorsTrapped() || clock.isFlagged(piece)
+                ? null : play(gameTable, piece);
+        clock.stop(piece);
+        final boolean lostOnTime = clock.isFlagged(piece);
+        if (lostOnTime) {
+            log.as(info, "{} lost on time", piece);
+        }
+        final Move move = lostOnTime ? null : played;
+        final Puzzle puzzle = levels.getPuzzle();
+        boolean puzzleSolved = false;
+        boolean puzzleFailed = false;
+        boolean drawn = false;
         if (move != null) {
+            // the user may have started a new game while the move was made
+            checkNewGame(gameTable);
             gameTable.movePiece(move);
+            spectators.publish(gameTable.getSnapshot());
+            journal.moveMade(gameTable, levels, move);
+            players.moveMade(gameTable, move);
             log.as(debug, lineSeparator() + move + lineSeparator() + gameTable);
+            if (puzzle != null && puzzle.fits(gameTable)) {
+                final Piece next = players.getPieceToMove(gameTable.getHistory().getPly());
+                puzzleSolved = puzzle.isSolved(gameTable, next);
+                puzzleFailed = puzzle.isFailed(gameTable, next);
+            }
+            drawn = gameTable.isDrawn() && !puzzleSolved;
+            if (drawn) {
+                log.as(info, "Draw after ply {}", gameTable.getHistory().getPly());
+            }
         }
         final boolean playerGaveUp = (move == null);
-        levels.setLevelDone(playerGaveUp);
-        if (playerGaveUp && players.isPlayedByComputer(piece)) {
+        levels.setLevelDone(playerGaveUp || puzzleSolved);
+        // shown like the level-end message until the next move, since the reset below wipes the board
+        levels.setDrawn(drawn);
+        if (playerGaveUp && players.isPlayedByComputer(piece)
+                || puzzleSolved && !players.isPlayedByComputer(piece)) {
             congrats.execute();
         }
         gameFrame.repaintView();
-        if (playerGaveUp) {
+        if (puzzleSolved) {
+            // sets up the next puzzle with the reset below
+            levels.nextLevel();
+        }
+        if (playerGaveUp || puzzleSolved || puzzleFailed || drawn) {
             gameTable.reset();
         }
         final boolean nextLevel = playerGaveUp && not(levels.isGameOver());
         gameFrame.enableNextLevel(nextLevel);
+        event.end();
+        if (event.shouldCommit()) {
+            event.piece = piece.name();
+            event.computer = players.isPlayedByComputer(piece);
+            event.gaveUp = playerGaveUp;
+            event.drawn = drawn;
+            event.commit();
+        }
     }
 
 }
@@ -0,0 +1,61 @@
+package org.oldo.baghchal.control;
+
+import org.oldo.baghchal.model.GameHistory;
+import org.oldo.baghchal.model.GameTable;
+import org.oldo.baghchal.model.Players;
+import org.oldo.baghchal.view.GameView;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Undo and redo requests of the user, carried out by the game loop between turns
+ * so that no computer player is thinking while the table changes
+ */
+public final class HistoryControl {
+
+    private final GameView view;
+    private final AtomicInteger requested = new AtomicInteger();
+
+    public HistoryControl(GameView view) {
+        this.view = view;
+    }
+
+    public void undo() {
+        request(-1);
+    }
+
+    public void redo() {
+        request(1);
+    }
+
+    private void request(int plies) {
+        requested.addAndGet(plies);
+        // a user waiting for their move gives up the turn, so the game loop gets to apply it
+        view.getGameTable().interruptTurn();
+    }
+
+    /**
+     * Applies the pending requests. Turns of computer players are stepped over,
+     * so that undo and redo go from one turn of the user to the next.
+     */
+    void apply(GameTable gameTable, Players players) {
+        final int plies = requested.getAndSet(0);
+        if (plies == 0) {
+            return;
+        }
+        final GameHistory history = gameTable.getHistory();
+        final int direction = Integer.signum(plies);
+        // a recovered or resynced game starts its history after ply 0
+        final int base = history.getBasePly();
+        int target = Math.max(base, Math.min(history.size(), history.getPly() + plies));
+        final int next = target + direction;
+        if (players.isPlayedByComputer(players.getPieceToMove(target))
+                && base <= next && next <= history.size()
+                && !players.isPlayedByComputer(players.getPieceToMove(next))) {
+            target = next;
+        }
+        if (target != history.getPly()) {
+            gameTable.goTo(target);
+        }
+    }
+}
@@ -10,6 +10,34 @@ public interface Player {
 
     Move play(GameTable gameTable);
 
+    /**
+     * Plays with the given time to think, which a computer player must not exceed
+     */
+    default Move play(GameTable gameTable, ThinkingTime time) {
+        return play(gameTable);
+    }
+
+    /**
+     * Learns of a move made on the table by either side, e.g. to pass it on
+     */
+    default void moveMade(GameTable gameTable, Move move) {
+        // most players do not care
+    }
+
+    /**
+     * Learns that the table was reset or replaced for a new game, e.g. to pass it on
+     */
+    default void gameStarted(GameTable gameTable) {
+        // most players do not care
+    }
+
     boolean isComputer();
 
+    /**
+     * @return how many moves a computer player looks ahead
+     */
+    default int getSearchDepth() {
+        return 0;
+    }
+
 }
@@ -1,15 +1,16 @@
 package org.oldo.baghchal.control;
 
+import org.oldo.baghchal.book.OpeningBook;
 import org.oldo.baghchal.model.GameTable;
 import org.oldo.baghchal.model.Levels;
 import org.oldo.baghchal.model.Move;
 import org.oldo.baghchal.model.Piece;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.BiPredicate;
 
 import static org.guppy4j.Lists.getRandomFrom;
 import static org.oldo.baghchal.model.Piece.PREDATOR;
@@ -24,25 +25,72 @@ public final class PredatorStrategy implements Player {
 
     private final Piece mine;
     private final Piece opponent;
+    private final OpeningBook book;
+    private final ProofSolver solver;
 
-    public PredatorStrategy(Levels levels, Piece mine, Piece opponent) {
+    public PredatorStrategy(Levels levels, Piece mine, Piece opponent, OpeningBook book, ProofSolver solver) {
         this.levels = levels;
         this.mine = mine;
         this.opponent = opponent;
+        this.book = book;
+        this.solver = solver;
+    }
+
+    /**
+     * Searches for a capture the opponent cannot prevent while there is time, up to more plies on higher levels
+     */
+    @Override
+    public Move play(GameTable gameTable, ThinkingTime time) {
+        final Move forcedCapture = findForcedCapture(gameTable, time);
+        return forcedCapture != null ? forcedCapture : play(gameTable);
     }
 
     @Override
     public Move play(GameTable gameTable) {
+        if (gameTable.arePredatorsTrapped()) {
+            return null;
+        }
+        final Move bookMove = book.probe(gameTable, mine);
+        if (bookMove != null) {
+            return bookMove;
+        }
         final Move take = getRandomFrom(gameTable.getPossibleJumps(mine, opponent));
         if (take != null) {
             return take;
         }
-        final List<Move> possibleSteps = gameTable.getStepsWhereAdjacent(mine, null);
+        final List<Move> possibleSteps = avoidDraws(gameTable.getStepsWhereAdjacent(mine, null), gameTable);
         if (possibleSteps.isEmpty()) {
             return null;
         }
         final Move threateningMove = tryThreateningMove(levels.getLevel(), possibleSteps, gameTable);
-        return threateningMove != null ? threateningMove : getRandomFrom(possibleSteps);
+        return threateningMove != null ? threateningMove : getRandomFrom(avoidTraps(possibleSteps, gameTable));
+    }
+
+    private Move findForcedCapture(GameTable gameTable, ThinkingTime time) {
+        // a capture right away needs no search
+        if (gameTable.arePredatorsTrapped() || !gameTable.getPossibleJumps(mine, opponent).isEmpty()) {
+            return null;
+        }
+        final int count = countOpponents(gameTable);
+        final BiPredicate<GameTable, Piece> captured = (table, toMove) -> countOpponents(table) < count;
+        int stableIterations = 0;
+        for (int plies = 3; plies <= 2 * levels.getLevel() + 1 && time.hasTimeForIteration(stableIterations); plies += 2) {
+            final ProofSolver.Result result = solver.solve(gameTable.copy(), mine, mine, captured, plies, time);
+            if (result == ProofSolver.Result.PROVEN) {
+                return solver.getBestMove();
+            }
+            if (result == ProofSolver.Result.UNKNOWN) {
+                // out of time
+                return null;
+            }
+            stableIterations++;
+        }
+        return null;
+    }
+
+    private int countOpponents(GameTable gameTable) {
+        // hidden border pieces are prey
+        return gameTable.getCount(opponent) + (opponent == PREY ? gameTable.getHiddenBorderPieceCount() : 0);
     }
 
     @Override
@@ -50,6 +98,50 @@ public final class PredatorStrategy implements Player {
         return true;
     }
 
+    @Override
+    public int getSearchDepth() {
+        return 1;
+    }
+
+    /**
+     * @return the steps that do not draw the game, or all steps if none
+     */
+    private List<Move> avoidDraws(List<Move> possibleSteps, GameTable gameTable) {
+        final List<Move> steps = new ArrayList<>();
+        for (Move m : possibleSteps) {
+            if (!gameTable.isDrawnAfterStep(m)) {
+                steps.add(m);
+            }
+        }
+        return steps.isEmpty() ? possibleSteps : steps;
+    }
+
+    /**
+     * @return the steps after which the opponent cannot leave a predator without a move, or all steps if none
+     */
+    private List<Move> avoidTraps(List<Move> possibleSteps, GameTable gameTable) {
+        final List<Move> safeSteps = new ArrayList<>();
+        for (Move m : possibleSteps) {
+            final GameTable b = gameTable.copy();
+            b.movePiece(m);
+            if (!canTrap(b)) {
+                safeSteps.add(m);
+            }
+        }
+        return safeSteps.isEmpty() ? possibleSteps : safeSteps;
+    }
+
+    private boolean canTrap(GameTable gameTable) {
+        for (Move m : gameTable.getLegalMoves(opponent)) {
+            final GameTable b = gameTable.copy();
+            b.movePiece(m);
+            if (b.getTrappedPredatorCount() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private Move tryThreateningMove(int level, Iterable<Move> possibleMoves, GameTable gameTable) {
         final Map<Integer, List<Move>> threateningMoves = getThreateningMoves(possibleMoves, gameTable);
         for (int i = level; i > 0; i--) {
@@ -78,10 +170,6 @@ public final class PredatorStrategy implements Player {
     private int numberOfPiecesThreatened(Move m, GameTable gameTable) {
         final GameTable b = gameTable.copy();
         b.movePiece(m);
-        final Collection<Move> jumps = new ArrayList<>();
-        for (Move step : b.getStepsWhereAdjacent(mine, opponent)) {
-            b.addPossibleJump(jumps, step);
-        }
-        return jumps.size();
+        return b.getPossibleJumps(mine, opponent).size();
     }
 }
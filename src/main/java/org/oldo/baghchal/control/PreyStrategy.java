@@ -1,15 +1,12 @@
 package org.oldo.baghchal.control;
 
-import org.oldo.baghchal.model.Direction;
+import org.oldo.baghchal.book.OpeningBook;
 import org.oldo.baghchal.model.GameTable;
 import org.oldo.baghchal.model.Move;
-import org.oldo.baghchal.model.Piece;
 import org.oldo.baghchal.model.Position;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 import static org.guppy4j.Lists.getRandomFrom;
 import static org.oldo.baghchal.model.Piece.PREDATOR;
@@ -20,8 +17,22 @@ import static org.oldo.baghchal.model.Piece.PREY;
  */
 public final class PreyStrategy implements Player {
 
+    private final OpeningBook book;
+
+    public PreyStrategy(OpeningBook book) {
+        this.book = book;
+    }
+
     @Override
     public Move play(GameTable gameTable) {
+        final Move bookMove = book.probe(gameTable, PREY);
+        if (bookMove != null) {
+            return bookMove;
+        }
+        final Move drawingMove = getRandomFrom(getDrawingMoves(gameTable));
+        if (drawingMove != null) {
+            return drawingMove;
+        }
         final Move defensiveMove = getRandomFrom(getDefensiveMoves(gameTable));
         if (defensiveMove != null) {
             return defensiveMove;
@@ -52,7 +63,7 @@ public final class PreyStrategy implements Player {
     }
 
     private interface Rejector {
-        boolean rejects(Position p, GameTable table, Position fore, Position back);
+        boolean rejects(Position p, GameTable table);
     }
 
     private Move getMove(Position borderPosition, List<Position> safeBoardPositions) {
@@ -66,67 +77,52 @@ public final class PreyStrategy implements Player {
     }
 
     private static List<Position> getBoardPositions(GameTable gameTable, Rejector rejector) {
-        final Set<Position> positions = new HashSet<>();
-        for (Position p : gameTable.getPositions().getBoard()) {
-            if (gameTable.isEmptyAt(p) && isOkPosition(p, gameTable, rejector)) {
+        final List<Position> positions = new ArrayList<>();
+        for (Position p : gameTable.getEmptyBoardPositions()) {
+            if (!rejector.rejects(p, gameTable)) {
                 positions.add(p);
             }
         }
-        return new ArrayList<>(positions);
-    }
-
-    private static boolean isOkPosition(Position p, GameTable table, Rejector rejector) {
-        for (Direction d : Direction.values()) {
-            final Position fore = d.addTo(p);
-            final Position back = d.subtractFrom(p);
-
-            if (rejector.rejects(p, table, fore, back)) {
-                // not safe because both neighboring fields are empty or occupied by predator
-                // which means on this position we could be jumped over and killed
-                return false;
-            }
-        }
-        return true;
+        return positions;
     }
 
-    private static boolean rejectUnsafe(Position p, GameTable table, Position fore, Position back) {
-        return table.isStepAlongLine(new Move(p, fore)) && table.getPositions().isBoard(back)
-                && isEmptyOrPredator(table.get(fore)) && isEmptyOrPredator(table.get(back));
+    private static boolean rejectUnsafe(Position p, GameTable table) {
+        // could be jumped over once the predators get there
+        return table.isExposed(p);
     }
 
-    private static boolean rejectDeadly(Position p, GameTable table, Position fore, Position back) {
-        final Piece fp = table.get(fore);
-        final Piece bp = table.get(back);
-        return table.isStepAlongLine(new Move(p, fore)) && table.getPositions().isBoard(back)
-                && (isPredator(fp) && isEmpty(bp) || isEmpty(fp) && isPredator(bp));
+    private static boolean rejectDeadly(Position p, GameTable table) {
+        // could be jumped over right away
+        return table.isAttacked(p);
     }
 
-    private static boolean neverReject(Position p, GameTable table, Position fore, Position back) {
+    private static boolean neverReject(Position p, GameTable table) {
         return false;
     }
 
-    private static boolean isPredator(Piece piece) {
-        return piece == PREDATOR;
-    }
-
-    private static boolean isEmptyOrPredator(Piece piece) {
-        return (piece == null) || (piece == PREDATOR);
-    }
-
-    private static boolean isEmpty(Piece piece) {
-        return piece == null;
+    /**
+     * @return steps that draw the game, once all prey are placed, if a prey could be taken otherwise
+     */
+    private static List<Move> getDrawingMoves(GameTable gameTable) {
+        final List<Move> drawingMoves = new ArrayList<>();
+        if (gameTable.getBorderPosition(PREY) == null && !gameTable.getPossibleJumps(PREDATOR, PREY).isEmpty()) {
+            for (Move step : gameTable.getStepsWhereAdjacent(PREY, null)) {
+                if (gameTable.isDrawnAfterStep(step)) {
+                    drawingMoves.add(step);
+                }
+            }
+        }
+        return drawingMoves;
     }
 
     private static List<Move> getDefensiveMoves(GameTable gameTable) {
         final List<Move> defenseMoves = new ArrayList<>();
         for (Move possibleJump : gameTable.getPossibleJumps(PREDATOR, PREY)) {
             final Position p2 = possibleJump.p2();
-            for (Position p1 : gameTable.getPositions().getAll()) {
-                if (gameTable.get(p1) == PREY) {
-                    final Move move = new Move(p1, p2);
-                    if (gameTable.isValid(move, PREY)) {
-                        defenseMoves.add(move);
-                    }
+            for (Position p1 : gameTable.getPositionsOf(PREY)) {
+                final Move move = new Move(p1, p2);
+                if (gameTable.isValid(move, PREY)) {
+                    defenseMoves.add(move);
                 }
             }
         }
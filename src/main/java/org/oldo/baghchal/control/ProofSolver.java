@@ -0,0 +1,238 @@
+package org.oldo.baghchal.control;
+
+import org.oldo.baghchal.model.GameTable;
+import org.oldo.baghchal.model.Move;
+import org.oldo.baghchal.model.Piece;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiPredicate;
+
+/**
+ * Depth-first proof-number search (df-pn): proves or disproves that the attacking piece
+ * reaches a goal within a number of plies, whatever the defender does. A side that cannot
+ * move loses. Proof and disproof numbers live in a transposition table of fixed size,
+ * two entries per bucket, where the entry for the smaller subtree is replaced first.
+ * <p>
+ * Numbers are kept from the view of the piece to move: phi is the proof number of its
+ * win and delta the proof number of its loss. The plies left are part of a node's key,
+ * so a repeated position with fewer plies left is a different node and there are no cycles.
+ */
+public final class ProofSolver {
+
+    public enum Result {
+        PROVEN, DISPROVEN, UNKNOWN
+    }
+
+    /**
+     * Receives the progress of a search, as proof and disproof numbers of the attacker's goal
+     */
+    public interface Progress {
+
+        void report(long nodes, int proof, int disproof);
+
+        Progress NONE = (nodes, proof, disproof) -> {
+            // ignore
+        };
+    }
+
+    private static final int INF = Integer.MAX_VALUE / 4;
+
+    private final long nodeLimit;
+    private final long progressInterval;
+    private final Progress progress;
+
+    private final int mask;
+    private final long[] keys;
+    private final int[] phis;
+    private final int[] deltas;
+    private final long[] work;
+
+    private Piece attacker;
+    private BiPredicate<GameTable, Piece> goal;
+    private ThinkingTime time;
+    private boolean timeUp;
+    private boolean rootAttacks;
+    private long nodes;
+    private int rootPhi;
+    private int rootDelta;
+    private Move bestMove;
+
+    /**
+     * @param tableBits        log2 of the number of transposition table entries
+     * @param nodeLimit        nodes after which the search gives up
+     * @param progressInterval nodes between progress reports
+     */
+    public ProofSolver(int tableBits, long nodeLimit, long progressInterval, Progress progress) {
+        this.nodeLimit = nodeLimit;
+        this.progressInterval = progressInterval;
+        this.progress = progress;
+        final int size = 1 << tableBits;
+        mask = size - 2;
+        keys = new long[size];
+        phis = new int[size];
+        deltas = new int[size];
+        work = new long[size];
+    }
+
+    /**
+     * @param goal whether the attacker reached its goal on the table, with the given piece to move
+     */
+    public Result solve(GameTable table, Piece toMove, Piece attacker, BiPredicate<GameTable, Piece> goal, int plies) {
+        return solve(table, toMove, attacker, goal, plies, ThinkingTime.UNLIMITED);
+    }
+
+    /**
+     * @return {@link Result#UNKNOWN} also if the time is up before the search is done
+     */
+    public Result solve(GameTable table, Piece toMove, Piece attacker, BiPredicate<GameTable, Piece> goal, int plies,
+                        ThinkingTime time) {
+        this.attacker = attacker;
+        this.goal = goal;
+        this.time = time;
+        timeUp = false;
+        rootAttacks = toMove == attacker;
+        nodes = 0;
+        rootPhi = 1;
+        rootDelta = 1;
+        bestMove = null;
+        // numbers are only valid for one goal
+        Arrays.fill(work, 0);
+        final long numbers = mid(table, toMove, plies, INF, INF, true);
+        final int phi = phi(numbers);
+        final int delta = delta(numbers);
+        if (phi == 0) {
+            return rootAttacks ? Result.PROVEN : Result.DISPROVEN;
+        }
+        if (delta == 0) {
+            return rootAttacks ? Result.DISPROVEN : Result.PROVEN;
+        }
+        return Result.UNKNOWN;
+    }
+
+    /**
+     * @return a winning first move for the piece to move at the root of the last solved search, if any
+     */
+    public Move getBestMove() {
+        return bestMove;
+    }
+
+    public long getNodeCount() {
+        return nodes;
+    }
+
+    private long mid(GameTable table, Piece toMove, int plies, int thPhi, int thDelta, boolean root) {
+        if (++nodes % progressInterval == 0) {
+            progress.report(nodes, rootAttacks ? rootPhi : rootDelta, rootAttacks ? rootDelta : rootPhi);
+        }
+        if ((nodes & 0xff) == 0 && time.isUp()) {
+            timeUp = true;
+        }
+        final long key = key(table, toMove, plies);
+        if (goal.test(table, toMove)) {
+            return store(key, toMove == attacker ? win() : loss(), 1);
+        }
+        if (plies == 0) {
+            return store(key, toMove == attacker ? loss() : win(), 1);
+        }
+        final List<Move> moves = table.getLegalMoves(toMove);
+        if (moves.isEmpty()) {
+            return store(key, loss(), 1);
+        }
+        final Piece next = toMove.other();
+        final GameTable[] children = new GameTable[moves.size()];
+        final long[] childKeys = new long[moves.size()];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = table.copy();
+            children[i].movePiece(moves.get(i));
+            childKeys[i] = key(children[i], next, plies - 1);
+        }
+        final long start = nodes;
+        while (true) {
+            // the piece to move wins if any child is lost for its piece to move, and loses if all are won
+            int phi = INF;
+            int delta = 0;
+            int best = 0;
+            int bestPhi = INF;
+            int secondDelta = INF;
+            for (int i = 0; i < children.length; i++) {
+                final long numbers = lookup(childKeys[i]);
+                final int childPhi = phi(numbers);
+                final int childDelta = delta(numbers);
+                delta = Math.min(INF, delta + childPhi);
+                if (childDelta < phi) {
+                    secondDelta = phi;
+                    phi = childDelta;
+                    bestPhi = childPhi;
+                    best = i;
+                } else if (childDelta < secondDelta) {
+                    secondDelta = childDelta;
+                }
+            }
+            if (root) {
+                rootPhi = phi;
+                rootDelta = delta;
+                if (phi == 0) {
+                    bestMove = moves.get(best);
+                }
+            }
+            if (phi >= thPhi || delta >= thDelta || nodes >= nodeLimit || timeUp) {
+                return store(key, numbers(phi, delta), nodes - start);
+            }
+            mid(children[best], next, plies - 1,
+                    thDelta - (delta - bestPhi), Math.min(thPhi, secondDelta + 1), false);
+        }
+    }
+
+    private long key(GameTable table, Piece toMove, int plies) {
+        return table.getKey() ^ (toMove.ordinal() + 1) * 0x9e3779b97f4a7c15L ^ (plies + 1) * 0xc2b2ae3d27d4eb4fL;
+    }
+
+    private long lookup(long key) {
+        final int i = bucket(key);
+        for (int j = i; j < i + 2; j++) {
+            if (keys[j] == key && work[j] > 0) {
+                return numbers(phis[j], deltas[j]);
+            }
+        }
+        // not searched yet
+        return numbers(1, 1);
+    }
+
+    private long store(long key, long numbers, long subtree) {
+        final int i = bucket(key);
+        int slot = keys[i + 1] == key ? i + 1 : i;
+        if (keys[slot] != key && work[i + 1] < work[i]) {
+            slot = i + 1;
+        }
+        keys[slot] = key;
+        phis[slot] = phi(numbers);
+        deltas[slot] = delta(numbers);
+        work[slot] = Math.max(1, subtree);
+        return numbers;
+    }
+
+    private int bucket(long key) {
+        return (int) (key ^ key >>> 32) & mask;
+    }
+
+    private static long win() {
+        return numbers(0, INF);
+    }
+
+    private static long loss() {
+        return numbers(INF, 0);
+    }
+
+    private static long numbers(int phi, int delta) {
+        return (long) phi << 32 | delta;
+    }
+
+    private static int phi(long numbers) {
+        return (int) (numbers >>> 32);
+    }
+
+    private static int delta(long numbers) {
+        return (int) numbers;
+    }
+}
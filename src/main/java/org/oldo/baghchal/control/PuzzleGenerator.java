@@ -0,0 +1,86 @@
+package org.oldo.baghchal.control;
+
+import org.guppy4j.log.Slf4jLogProvider;
+import org.oldo.baghchal.BaghChalSetup;
+import org.oldo.baghchal.Listener;
+import org.oldo.baghchal.book.OpeningBook;
+import org.oldo.baghchal.metrics.GameMetrics;
+import org.oldo.baghchal.model.GameTable;
+import org.oldo.baghchal.model.Levels;
+import org.oldo.baghchal.model.Move;
+import org.oldo.baghchal.model.Piece;
+import org.oldo.baghchal.model.Puzzle;
+import org.oldo.g2d.IntPair;
+import org.oldo.text.CharCanvasImpl;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.oldo.baghchal.model.Piece.PREDATOR;
+import static org.oldo.baghchal.model.Piece.PREY;
+
+/**
+ * Finds puzzles offline: positions from computer self-play where the solver proves that the
+ * predators capture a prey, or the prey trap all predators, in the fewest plies given. Prints
+ * one puzzle per line in the format read by {@link Levels#loadPuzzles}.
+ * <p>
+ * Arguments: [games] [min plies] [max plies] [board width] [board height]
+ */
+public final class PuzzleGenerator {
+
+    public static void main(String... args) {
+        final int games = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        final int minPlies = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        final int maxPlies = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        final int boardX = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        final int boardY = args.length > 4 ? Integer.parseInt(args[4]) : 5;
+
+        final Levels levels = new Levels(2);
+        final Player prey = new PreyStrategy(OpeningBook.NONE);
+        final ProofSolver solver = new ProofSolver(20, 2_000_000, 1_000_000,
+                (nodes, proof, disproof) -> System.err.printf("# %d nodes, proof %d, disproof %d%n", nodes, proof, disproof));
+        // plays without thinking time, so it never uses the solver itself
+        final Player predator = new PredatorStrategy(levels, PREDATOR, PREY, OpeningBook.NONE, solver);
+        final Set<String> found = new HashSet<>();
+
+        for (int game = 0; game < games; game++) {
+            final GameTable table = new GameTable(new Slf4jLogProvider(), new IntPair(boardX, boardY),
+                    BaghChalSetup::prepare, Listener.NONE, new CharCanvasImpl(), new GameMetrics(false));
+            table.reset();
+            for (int ply = 0; ply < 200; ply++) {
+                final Piece toMove = Piece.toMove(ply);
+                for (Puzzle puzzle : solve(solver, table, ply, toMove, minPlies, maxPlies)) {
+                    if (found.add(puzzle.toString())) {
+                        System.out.println(puzzle);
+                    }
+                }
+                final Move move = (toMove == PREY ? prey : predator).play(table);
+                if (move == null) {
+                    break;
+                }
+                table.movePiece(move);
+            }
+        }
+    }
+
+    private static List<Puzzle> solve(ProofSolver solver, GameTable table, int ply, Piece toMove,
+                                      int minPlies, int maxPlies) {
+        final List<Puzzle> puzzles = new ArrayList<>();
+        // the attacker moves first and last
+        final int captures = toMove == PREDATOR ? 1 : 0;
+        final Puzzle probe = Puzzle.of(table, ply, toMove, captures, 0);
+        for (int plies = 1; plies <= maxPlies; plies += 2) {
+            final ProofSolver.Result result = solver.solve(table.copy(), toMove, toMove, probe::isSolved, plies);
+            if (result == ProofSolver.Result.PROVEN) {
+                // shorter proofs would make the puzzle easier than it claims
+                if (plies >= minPlies) {
+                    puzzles.add(Puzzle.of(table, ply, toMove, captures, plies));
+                }
+                break;
+            }
+        }
+        return puzzles;
+    }
+}
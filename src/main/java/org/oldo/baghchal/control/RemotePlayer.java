@@ -0,0 +1,171 @@
+package org.oldo.baghchal.control;
+
+import org.guppy4j.log.Log;
+import org.guppy4j.log.LogProvider;
+import org.oldo.baghchal.metrics.LatencyHistogram;
+import org.oldo.baghchal.model.GameTable;
+import org.oldo.baghchal.model.Move;
+import org.oldo.baghchal.model.Piece;
+import org.oldo.baghchal.net.HostConnection;
+import org.oldo.baghchal.net.SyncSnapshot;
+import org.oldo.g2d.IntPair;
+import org.oldo.g2d.Size;
+
+import java.net.InetSocketAddress;
+import java.util.function.Function;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.guppy4j.log.Log.Level.info;
+import static org.guppy4j.log.Log.Level.warn;
+
+/**
+ * A player on another machine, met through a game host: the moves made here are sent to the
+ * host, and the moves of this player come from it. When the host sends a snapshot, the table
+ * is resynced from it, and if that hands the turn to this side, its player is asked again.
+ * A new game here starts one on the host, and one started by the other player comes with a resync,
+ * which also takes over the board size of the host's game.
+ * The host's game is the one that counts, so undo and redo here are undone by the next resync.
+ */
+public final class RemotePlayer implements Player, HostConnection.Receiver {
+
+    private final Log log;
+    private final Piece piece;
+    private final HostConnection connection;
+    private final LatencyHistogram roundTrips = new LatencyHistogram();
+
+    // moves, snapshots and numbers of new games from the host, and markers of discarded tables
+    private final BlockingQueue<Object> received = new LinkedBlockingQueue<>();
+
+    // number of the host's game on the table, as of the last resync or new game here
+    private int game;
+    // makes a table of the host's board size
+    private Function<Size, GameTable> tables;
+    // whether the next new game is the host's, on a table made for its board size
+    private boolean resized;
+
+    /**
+     * @param piece     the piece played on the other machine
+     * @param boardSize board of the game, if this side starts it on the host
+     */
+    public RemotePlayer(LogProvider logProvider, Piece piece, InetSocketAddress host, int gameId, Size boardSize) {
+        log = logProvider.getLog(getClass());
+        this.piece = piece;
+        connection = new HostConnection(logProvider, host, gameId, piece.other(), boardSize, this, roundTrips);
+    }
+
+    /**
+     * @param tables replaces the table in play with one of the given board size, and returns it
+     */
+    public void start(Function<Size, GameTable> tables) {
+        this.tables = tables;
+        connection.start();
+    }
+
+    public void close() {
+        connection.close();
+    }
+
+    public Piece getPiece() {
+        return piece;
+    }
+
+    @Override
+    public boolean isComputer() {
+        return false;
+    }
+
+    @Override
+    public Move play(GameTable gameTable) {
+        final Object discarded = new Object();
+        final Runnable discardListener = () -> received.add(discarded);
+        gameTable.addDiscardListener(discardListener);
+        try {
+            connection.ping();
+            return awaitMove(gameTable, discarded);
+        } finally {
+            gameTable.removeDiscardListener(discardListener);
+        }
+    }
+
+    private Move awaitMove(GameTable gameTable, Object discarded) {
+        while (true) {
+            final Object next;
+            try {
+                next = received.take();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            if (next == discarded) {
+                throw new PlayerInterruptedException("Game table changed during remote player's turn!");
+            }
+            if (next instanceof Move) {
+                final Move move = (Move) next;
+                if (gameTable.get(move.p1()) == piece && gameTable.isValid(move, piece)) {
+                    return move;
+                }
+                log.as(warn, "{} from the host does not fit the table, resyncing", move);
+                connection.resync();
+            } else if (next instanceof SyncSnapshot) {
+                resync(gameTable, (SyncSnapshot) next);
+            } else if (next instanceof Integer && (Integer) next > game) {
+                // not started here as well, e.g. by a new game from the menu there
+                connection.resync();
+            }
+        }
+    }
+
+    /**
+     * Sends the moves of this side to the host
+     */
+    @Override
+    public void moveMade(GameTable gameTable, Move move) {
+        if (gameTable.get(move.p2()) != piece) {
+            connection.send(move);
+        }
+    }
+
+    @Override
+    public void gameStarted(GameTable gameTable) {
+        if (resized) {
+            // started by the host already
+            resized = false;
+            return;
+        }
+        connection.newGame(game, new IntPair(gameTable.getBoardXSize(), gameTable.getBoardYSize()));
+        game++;
+    }
+
+    @Override
+    public void moveReceived(Move move) {
+        received.add(move);
+    }
+
+    @Override
+    public void snapshotReceived(SyncSnapshot snapshot) {
+        received.add(snapshot);
+    }
+
+    @Override
+    public void newGameReceived(int number) {
+        received.add(number);
+    }
+
+    private void resync(GameTable gameTable, SyncSnapshot snapshot) {
+        game = snapshot.getGame();
+        if (!snapshot.fits(gameTable)) {
+            log.as(info, "The host's game is on a {} x {} board, resizing", snapshot.getBoardSize().x(), snapshot.getBoardSize().y());
+            resized = true;
+            snapshot.restore(tables.apply(snapshot.getBoardSize()));
+            throw new PlayerInterruptedException("Resized to the host's board");
+        }
+        if (snapshot.isSameAs(gameTable)) {
+            return;
+        }
+        snapshot.restore(gameTable);
+        log.as(info, "Resynced with the host at ply {}, {} ms round trip", snapshot.getPly(), roundTrips.getMeanMillis());
+        if (Piece.toMove(snapshot.getPly()) != piece) {
+            throw new PlayerInterruptedException("Resynced with the host, the other side is to move");
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package org.oldo.baghchal.control;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time a computer player may think about one move: a soft limit for starting another
+ * iteration of a search and a hard limit at which any search stops.
+ */
+public final class ThinkingTime {
+
+    public static final ThinkingTime UNLIMITED = new ThinkingTime(Long.MAX_VALUE, Long.MAX_VALUE);
+
+    private final long start = System.nanoTime();
+    private final long softNanos;
+    private final long hardNanos;
+
+    private ThinkingTime(long softNanos, long hardNanos) {
+        this.softNanos = softNanos;
+        this.hardNanos = hardNanos;
+    }
+
+    /**
+     * @return time starting now
+     */
+    public static ThinkingTime of(long softMillis, long hardMillis) {
+        return new ThinkingTime(TimeUnit.MILLISECONDS.toNanos(softMillis), TimeUnit.MILLISECONDS.toNanos(hardMillis));
+    }
+
+    public boolean isUp() {
+        return System.nanoTime() - start >= hardNanos;
+    }
+
+    /**
+     * A search whose result stays the same stops early; one whose result keeps changing
+     * may go on up to twice the soft limit, but never past the hard limit.
+     *
+     * @param stableIterations iterations in a row that came to the same result
+     */
+    public boolean hasTimeForIteration(int stableIterations) {
+        final long target;
+        if (stableIterations >= 2) {
+            target = softNanos / 2;
+        } else if (stableIterations == 1) {
+            target = softNanos;
+        } else {
+            target = Math.min(hardNanos, softNanos > Long.MAX_VALUE / 2 ? softNanos : 2 * softNanos);
+        }
+        return System.nanoTime() - start < target;
+    }
+
+    public long getSoftNanos() {
+        return softNanos;
+    }
+}
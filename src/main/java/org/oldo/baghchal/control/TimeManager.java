@@ -0,0 +1,56 @@
+package org.oldo.baghchal.control;
+
+import org.guppy4j.log.Log;
+import org.guppy4j.log.LogProvider;
+import org.oldo.baghchal.model.GameClock;
+import org.oldo.baghchal.model.GameTable;
+import org.oldo.baghchal.model.Piece;
+
+import static org.guppy4j.log.Log.Level.debug;
+import static org.oldo.baghchal.model.Piece.PREY;
+
+/**
+ * Allocates the thinking time of a computer player for its next move from the time left on its
+ * clock, the increment and the phase of the game. While prey are still placed, moves count half,
+ * as there is less to think about than once all pieces move.
+ */
+public final class TimeManager {
+
+    private static final double PLACEMENT_WEIGHT = 0.5;
+    // moves each side is expected to make once all prey are placed
+    private static final int MOVEMENT_MOVES = 30;
+
+    private final Log log;
+    private final long untimedMillis;
+    private final long overheadMillis;
+
+    /**
+     * @param untimedMillis  thinking time per move without a clock
+     * @param overheadMillis time kept back for making the move, so a computer player never runs out
+     */
+    public TimeManager(LogProvider logProvider, long untimedMillis, long overheadMillis) {
+        log = logProvider.getLog(getClass());
+        this.untimedMillis = untimedMillis;
+        this.overheadMillis = overheadMillis;
+    }
+
+    public ThinkingTime allocate(GameTable table, Piece piece, GameClock clock) {
+        if (!clock.isTimed()) {
+            return ThinkingTime.of(untimedMillis, untimedMillis);
+        }
+        final long available = clock.getRemainingMillis(piece) - overheadMillis;
+        if (available <= 0) {
+            return ThinkingTime.of(0, 0);
+        }
+        // each side moves once per prey still to be placed
+        final int placements = table.getOffBoardCount(PREY);
+        final double movesToGo = placements * PLACEMENT_WEIGHT + MOVEMENT_MOVES;
+        final double weight = placements > 0 ? PLACEMENT_WEIGHT : 1;
+        // the increment comes back after the move, but only if the move is made in time
+        final long hard = Math.min(available, available / 4 + clock.getIncrementMillis());
+        final long soft = Math.min(hard, (long) (available * weight / movesToGo) + clock.getIncrementMillis() * 3 / 4);
+        log.as(debug, "{} has {} ms left, {} placements to go: thinking {} to {} ms",
+                piece, available + overheadMillis, placements, soft, hard);
+        return ThinkingTime.of(soft, hard);
+    }
+}
@@ -31,7 +31,8 @@ public final class UserPlayer implements Player {
         final Result result = new Result();
 
         final MouseAdapter dndHandler = new DragAndDropHandler(gameTable, view, move -> done(result, move), piece);
-        gameTable.addDiscardListener(() -> done(result, null));
+        final Runnable discardListener = () -> done(result, null);
+        gameTable.addDiscardListener(discardListener);
 
         view.addMouseAdapter(dndHandler);
         try {
@@ -40,8 +41,10 @@ public final class UserPlayer implements Player {
             }
         } catch (InterruptedException e) {
             throw new IllegalStateException(e);
+        } finally {
+            view.removeMouseAdapter(dndHandler);
+            gameTable.removeDiscardListener(discardListener);
         }
-        view.removeMouseAdapter(dndHandler);
 
         if (result.move == null) {
             throw new PlayerInterruptedException("Game table changed during player's turn!");
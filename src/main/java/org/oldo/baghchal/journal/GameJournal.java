@@ -0,0 +1,115 @@
+package org.oldo.baghchal.journal;
+
+import org.guppy4j.log.Log;
+import org.guppy4j.log.LogProvider;
+import org.oldo.baghchal.model.GameTable;
+import org.oldo.baghchal.model.Levels;
+import org.oldo.baghchal.model.Move;
+import org.oldo.baghchal.model.Piece;
+import org.oldo.g2d.IntPair;
+import org.oldo.g2d.Size;
+
+import java.util.function.Function;
+
+import static org.guppy4j.log.Log.Level.info;
+import static org.guppy4j.log.Log.Level.warn;
+
+/**
+ * Journal of one game: moves go to the shared log, and a snapshot is written instead
+ * whenever the moves no longer follow on from the last recorded one (new game, level,
+ * board size, undo or redo) or enough moves were logged since the last snapshot
+ */
+final class GameJournal implements MoveJournal {
+
+    private final Log log;
+
+    private final Journal journal;
+    private final int gameId;
+    private final int snapshotEvery;
+
+    // what can be recovered until the first snapshot is written
+    private JournalSnapshot recoverable;
+    private Journal.Records tail;
+
+    private int epoch;
+    private int lastPly = -1;
+    private int sinceSnapshot;
+    private Size boardSize;
+    private int level;
+
+    GameJournal(LogProvider logProvider, Journal journal, int gameId, int snapshotEvery,
+                JournalSnapshot recoverable, Journal.Records tail) {
+        log = logProvider.getLog(getClass());
+        this.journal = journal;
+        this.gameId = gameId;
+        this.snapshotEvery = snapshotEvery;
+        this.recoverable = recoverable;
+        this.tail = tail;
+        // new snapshots must not adopt records of an older epoch
+        epoch = recoverable == null ? 0 : recoverable.getEpoch();
+        for (int i = 0; tail != null && i < tail.size(); i++) {
+            epoch = Math.max(epoch, tail.getEpoch(i));
+        }
+    }
+
+    @Override
+    public void moveMade(GameTable table, Levels levels, Move move) {
+        final int ply = table.getHistory().getPly();
+        if (ply != lastPly + 1 || sinceSnapshot >= snapshotEvery
+                || level != levels.getLevel() || boardSize == null || !table.isBoardSize(boardSize)) {
+            snapshot(table, levels);
+        } else {
+            journal.append(gameId, epoch, ply, move);
+            sinceSnapshot++;
+        }
+        lastPly = ply;
+    }
+
+    @Override
+    public GameTable recover(Function<Size, GameTable> tables, Levels levels) {
+        final JournalSnapshot snapshot = recoverable;
+        if (snapshot == null) {
+            return null;
+        }
+        final Size size = new IntPair(snapshot.getBoardX(), snapshot.getBoardY());
+        final GameTable table = tables.apply(size);
+        if (!table.isBoardSize(size)) {
+            log.as(warn, "Game {} cannot be recovered on a board of other size than {} x {}",
+                    gameId, size.x(), size.y());
+            return null;
+        }
+        snapshot.restore(table, levels);
+        int ply = snapshot.getPly();
+        for (int i = 0; tail != null && i < tail.size(); i++) {
+            if (tail.getEpoch(i) != snapshot.getEpoch()) {
+                continue;
+            }
+            final Move move = tail.getMove(i);
+            final Piece piece = table.get(move.p1());
+            if (tail.getPly(i) != ply + 1 || piece == null || !table.isValid(move, piece)) {
+                log.as(warn, "Game {} recovered up to ply {}, {} at ply {} does not follow",
+                        gameId, ply, move, tail.getPly(i));
+                break;
+            }
+            table.movePiece(move);
+            ply++;
+        }
+        log.as(info, "Recovered game {} at ply {}, {} moves after its snapshot",
+                gameId, ply, ply - snapshot.getPly());
+        // replayed moves are compacted into a new snapshot, which releases old log segments
+        snapshot(table, levels);
+        lastPly = ply;
+        return table;
+    }
+
+    private void snapshot(GameTable table, Levels levels) {
+        final JournalSnapshot snapshot = JournalSnapshot.of(table, levels, epoch + 1);
+        journal.writeSnapshot(gameId, snapshot);
+        epoch = snapshot.getEpoch();
+        sinceSnapshot = 0;
+        boardSize = new IntPair(snapshot.getBoardX(), snapshot.getBoardY());
+        level = snapshot.getLevel();
+        recoverable = null;
+        tail = null;
+    }
+}
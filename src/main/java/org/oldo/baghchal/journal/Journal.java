@@ -0,0 +1,376 @@
+package org.oldo.baghchal.journal;
+
+import org.guppy4j.log.Log;
+import org.guppy4j.log.LogProvider;
+import org.oldo.baghchal.model.Move;
+import org.oldo.baghchal.model.Position;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.guppy4j.log.Log.Level.error;
+import static org.guppy4j.log.Log.Level.info;
+import static org.guppy4j.log.Log.Level.warn;
+
+/**
+ * Write-ahead journal of moves shared by any number of games, plus a snapshot file
+ * per game. Each move is handed to the OS as soon as it is made; forcing it to disk
+ * is batched every few milliseconds (or done per move if the interval is 0), so one
+ * fsync covers all games. The log is split into segments, and a segment is deleted
+ * once every game with moves in it has taken a newer snapshot.
+ * <p>
+ * Record layout (20 bytes): game id, snapshot epoch, ply after the move, move
+ * (one byte per coordinate) and the CRC-32 of the preceding 16 bytes. A torn record
+ * at the end of the log is cut off when the journal is opened.
+ */
+public final class Journal {
+
+    static final int RECORD_BYTES = 20;
+
+    private static final long SEGMENT_BYTES = 8L << 20;
+    private static final String SEGMENT_FORMAT = "journal-%016d.log";
+    private static final String SNAPSHOT_PREFIX = "game-";
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+
+    private final Log log;
+    private final LogProvider logProvider;
+
+    private final Path dir;
+    private final int snapshotEvery;
+    private final long syncMillis;
+    private final ScheduledExecutorService syncer;
+
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+    private final CRC32 crc = new CRC32();
+
+    // guarded by this: per segment, the games whose moves there are newer than their snapshot
+    private final TreeMap<Long, Set<Integer>> liveGames = new TreeMap<>();
+    private final Map<Integer, Records> recovered = new HashMap<>();
+    private FileChannel segment;
+    private long segmentSeq;
+    private long segmentSize;
+    private boolean closed;
+
+    private volatile boolean dirty;
+    private final AtomicLong appendCount = new AtomicLong();
+    private final AtomicLong syncCount = new AtomicLong();
+
+    /**
+     * @param snapshotEvery moves after which a game writes a new snapshot
+     * @param syncMillis    interval for forcing moves to disk, or 0 to force each move
+     */
+    public Journal(LogProvider logProvider, Path dir, int snapshotEvery, long syncMillis) {
+        log = logProvider.getLog(getClass());
+        this.logProvider = logProvider;
+        this.dir = dir;
+        this.snapshotEvery = snapshotEvery;
+        this.syncMillis = syncMillis;
+        try {
+            Files.createDirectories(dir);
+            long lastSeq = 0;
+            for (Path path : list("journal-*.log")) {
+                lastSeq = Long.parseLong(path.getFileName().toString().replaceAll("\\D", ""));
+                readSegment(path, lastSeq);
+            }
+            openSegment(lastSeq + 1);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not open journal in " + dir, e);
+        }
+        if (syncMillis > 0) {
+            syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread thread = new Thread(r, "journal-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            syncer.scheduleWithFixedDelay(this::sync, syncMillis, syncMillis, MILLISECONDS);
+        } else {
+            syncer = null;
+        }
+    }
+
+    /**
+     * @return ids of the games that have a snapshot, in ascending order
+     */
+    public List<Integer> getGameIds() {
+        final List<Integer> ids = new ArrayList<>();
+        try {
+            for (Path path : list(SNAPSHOT_PREFIX + "*" + SNAPSHOT_SUFFIX)) {
+                final String name = path.getFileName().toString();
+                ids.add(Integer.valueOf(name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length())));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not list games in " + dir, e);
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    /**
+     * @return the journal of one game, to be used by one thread at a time
+     */
+    public MoveJournal open(int gameId) {
+        JournalSnapshot snapshot;
+        try {
+            snapshot = JournalSnapshot.read(snapshotPath(gameId));
+        } catch (IOException e) {
+            log.as(warn, "Game {} cannot be recovered: {}", gameId, e.getMessage());
+            snapshot = null;
+        }
+        final Records records;
+        synchronized (this) {
+            records = recovered.remove(gameId);
+        }
+        return new GameJournal(logProvider, this, gameId, snapshotEvery, snapshot, records);
+    }
+
+    public long getAppendCount() {
+        return appendCount.get();
+    }
+
+    public long getSyncCount() {
+        return syncCount.get();
+    }
+
+    void append(int gameId, int epoch, int ply, Move move) {
+        final int packed = pack(move);
+        synchronized (this) {
+            if (closed) {
+                // moves made while shutting down are not recorded
+                return;
+            }
+            record.clear();
+            record.putInt(gameId).putInt(epoch).putInt(ply).putInt(packed);
+            crc.reset();
+            crc.update(record.array(), 0, RECORD_BYTES - 4);
+            record.putInt((int) crc.getValue());
+            record.flip();
+            try {
+                while (record.hasRemaining()) {
+                    segment.write(record);
+                }
+                if (syncMillis == 0) {
+                    segment.force(false);
+                    syncCount.incrementAndGet();
+                } else {
+                    dirty = true;
+                }
+                liveGames.get(segmentSeq).add(gameId);
+                segmentSize += RECORD_BYTES;
+                if (segmentSize >= SEGMENT_BYTES) {
+                    segment.force(false);
+                    segment.close();
+                    openSegment(segmentSeq + 1);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not append to journal in " + dir, e);
+            }
+        }
+        appendCount.incrementAndGet();
+    }
+
+    /**
+     * Makes the snapshot durable, which makes the game's older moves obsolete
+     */
+    void writeSnapshot(int gameId, JournalSnapshot snapshot) {
+        try {
+            snapshot.write(snapshotPath(gameId));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write snapshot of game " + gameId + " to " + dir, e);
+        }
+        synchronized (this) {
+            final Iterator<Map.Entry<Long, Set<Integer>>> segments = liveGames.entrySet().iterator();
+            while (segments.hasNext()) {
+                final Map.Entry<Long, Set<Integer>> entry = segments.next();
+                entry.getValue().remove(gameId);
+                if (entry.getValue().isEmpty() && entry.getKey() != segmentSeq) {
+                    delete(segmentPath(entry.getKey()));
+                    segments.remove();
+                }
+            }
+        }
+    }
+
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                segment.force(false);
+                segment.close();
+            } catch (IOException e) {
+                log.as(error, e);
+            }
+        }
+        if (syncer != null) {
+            syncer.shutdown();
+        }
+    }
+
+    private void sync() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        final FileChannel channel;
+        synchronized (this) {
+            channel = segment;
+        }
+        try {
+            channel.force(false);
+            syncCount.incrementAndGet();
+        } catch (ClosedChannelException e) {
+            // rotated or closed, both of which force the segment
+        } catch (IOException e) {
+            log.as(error, e);
+        }
+    }
+
+    private void openSegment(long seq) throws IOException {
+        segment = FileChannel.open(segmentPath(seq), CREATE_NEW, WRITE);
+        segmentSeq = seq;
+        segmentSize = 0;
+        liveGames.put(seq, new HashSet<>());
+    }
+
+    private void readSegment(Path path, long seq) throws IOException {
+        final byte[] bytes = Files.readAllBytes(path);
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        final Set<Integer> games = new HashSet<>();
+        while (buffer.remaining() >= RECORD_BYTES) {
+            final int start = buffer.position();
+            crc.reset();
+            crc.update(bytes, start, RECORD_BYTES - 4);
+            final int gameId = buffer.getInt();
+            final int epoch = buffer.getInt();
+            final int ply = buffer.getInt();
+            final int move = buffer.getInt();
+            if (buffer.getInt() != (int) crc.getValue()) {
+                buffer.position(start);
+                break;
+            }
+            Records records = recovered.get(gameId);
+            if (records == null) {
+                records = new Records();
+                recovered.put(gameId, records);
+            }
+            records.add(epoch, ply, move);
+            games.add(gameId);
+        }
+        if (buffer.hasRemaining()) {
+            log.as(warn, "Cutting off {} bytes of torn journal tail in {}", buffer.remaining(), path);
+            try (final FileChannel channel = FileChannel.open(path, WRITE)) {
+                channel.truncate(buffer.position());
+                channel.force(true);
+            }
+        }
+        if (games.isEmpty()) {
+            delete(path);
+        } else {
+            liveGames.put(seq, games);
+        }
+        log.as(info, "Read {} journal records of {} games from {}", buffer.position() / RECORD_BYTES, games.size(), path);
+    }
+
+    private List<Path> list(String glob) throws IOException {
+        final List<Path> paths = new ArrayList<>();
+        try (final DirectoryStream<Path> stream = Files.newDirectoryStream(dir, glob)) {
+            for (Path path : stream) {
+                paths.add(path);
+            }
+        }
+        Collections.sort(paths);
+        return paths;
+    }
+
+    private void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.as(warn, "Could not delete {}: {}", path, e.getMessage());
+        }
+    }
+
+    private Path segmentPath(long seq) {
+        return dir.resolve(String.format(SEGMENT_FORMAT, seq));
+    }
+
+    private Path snapshotPath(int gameId) {
+        return dir.resolve(SNAPSHOT_PREFIX + gameId + SNAPSHOT_SUFFIX);
+    }
+
+    private static int pack(Move move) {
+        final int[] coordinates = {move.p1().x(), move.p1().y(), move.p2().x(), move.p2().y()};
+        int packed = 0;
+        for (int c : coordinates) {
+            if (c < 0 || c > 0xff) {
+                throw new IllegalArgumentException("Move out of journal range: " + move);
+            }
+            packed = packed << 8 | c;
+        }
+        return packed;
+    }
+
+    static Move unpack(int packed) {
+        return new Move(new Position(packed >>> 24, packed >>> 16 & 0xff),
+                new Position(packed >>> 8 & 0xff, packed & 0xff));
+    }
+
+    /**
+     * A game's records read from the log, in the order they were written
+     */
+    static final class Records {
+
+        private int[] data = new int[3 * 16];
+        private int size;
+
+        void add(int epoch, int ply, int move) {
+            if (3 * size == data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[3 * size] = epoch;
+            data[3 * size + 1] = ply;
+            data[3 * size + 2] = move;
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int getEpoch(int i) {
+            return data[3 * i];
+        }
+
+        int getPly(int i) {
+            return data[3 * i + 1];
+        }
+
+        Move getMove(int i) {
+            return unpack(data[3 * i + 2]);
+        }
+    }
+}
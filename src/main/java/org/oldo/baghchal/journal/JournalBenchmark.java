@@ -0,0 +1,175 @@
+package org.oldo.baghchal.journal;
+
+import org.guppy4j.log.LogProvider;
+import org.guppy4j.log.Slf4jLogProvider;
+import org.oldo.baghchal.BaghChalSetup;
+import org.oldo.baghchal.Listener;
+import org.oldo.baghchal.metrics.GameMetrics;
+import org.oldo.baghchal.model.GameTable;
+import org.oldo.baghchal.model.Levels;
+import org.oldo.baghchal.model.Move;
+import org.oldo.baghchal.model.Piece;
+import org.oldo.baghchal.model.Position;
+import org.oldo.g2d.IntPair;
+import org.oldo.g2d.Size;
+import org.oldo.text.CharCanvasImpl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Journal write throughput and recovery time for many concurrent games of random moves.
+ * The journal is abandoned without closing it, as in a crash, before the games are recovered.
+ * <p>
+ * Arguments: [directory] [games] [moves per game] [sync millis] [snapshot every]
+ */
+public final class JournalBenchmark {
+
+    private static final int LEVELS = 2;
+
+    private final LogProvider logProvider = new Slf4jLogProvider();
+    private final GameMetrics metrics = new GameMetrics(false);
+    private final Size boardSize = new IntPair(5, 5);
+
+    public static void main(String... args) throws IOException, InterruptedException {
+        final Path dir = args.length > 0 ? Paths.get(args[0]) : Files.createTempDirectory("baghchal-journal");
+        final int games = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        final int moves = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        final long syncMillis = args.length > 3 ? Long.parseLong(args[3]) : 100;
+        final int snapshotEvery = args.length > 4 ? Integer.parseInt(args[4]) : 32;
+        new JournalBenchmark().run(dir, games, moves, syncMillis, snapshotEvery);
+    }
+
+    private void run(Path dir, int games, int moves, long syncMillis, int snapshotEvery)
+            throws InterruptedException {
+        System.out.printf("%d games, %d moves each, sync every %d ms, snapshot every %d moves, in %s%n",
+                games, moves, syncMillis, snapshotEvery, dir);
+
+        // moves are chosen up front, so only making and journaling them is timed
+        final List<List<Move>> scripts = new ArrayList<>(games);
+        for (int g = 0; g < games; g++) {
+            scripts.add(script(moves, new Random(g)));
+        }
+
+        final Journal journal = new Journal(logProvider, dir, snapshotEvery, syncMillis);
+        final GameTable[] tables = new GameTable[games];
+        final Levels[] levels = new Levels[games];
+        final int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final long writeStart = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            final int first = t;
+            executor.execute(() -> {
+                final List<MoveJournal> journals = new ArrayList<>();
+                for (int g = first; g < games; g += threads) {
+                    tables[g] = newTable(boardSize);
+                    tables[g].reset();
+                    levels[g] = new Levels(LEVELS);
+                    journals.add(journal.open(g));
+                }
+                // games take turns, as concurrent games would
+                for (int m = 0; m < moves; m++) {
+                    for (int g = first, j = 0; g < games; g += threads, j++) {
+                        if (m >= scripts.get(g).size()) {
+                            continue;
+                        }
+                        final Move move = scripts.get(g).get(m);
+                        if (move == null) {
+                            tables[g].reset();
+                        } else {
+                            tables[g].movePiece(move);
+                            journals.get(j).moveMade(tables[g], levels[g], move);
+                        }
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.HOURS);
+        final long writeNanos = System.nanoTime() - writeStart;
+        long total = 0;
+        for (List<Move> script : scripts) {
+            total += script.size();
+        }
+        System.out.printf("write: %d moves in %.1f ms, %.0f moves/s, %d appended, %d snapshots, %d forces%n",
+                total, writeNanos / 1e6, total / (writeNanos / 1e9), journal.getAppendCount(),
+                total - journal.getAppendCount(), journal.getSyncCount());
+
+        final long recoverStart = System.nanoTime();
+        final Journal reopened = new Journal(logProvider, dir, snapshotEvery, syncMillis);
+        final long scanNanos = System.nanoTime() - recoverStart;
+        int mismatches = 0;
+        for (int g : reopened.getGameIds()) {
+            final Levels recoveredLevels = new Levels(LEVELS);
+            final GameTable recovered = reopened.open(g).recover(this::newTable, recoveredLevels);
+            if (recovered == null || !sameGame(tables[g], recovered) || recoveredLevels.getLevel() != levels[g].getLevel()) {
+                mismatches++;
+            }
+        }
+        final long recoverNanos = System.nanoTime() - recoverStart;
+        reopened.close();
+        System.out.printf("recovery: %d games in %.1f ms (log scan %.1f ms), %.1f us per game, %d mismatches%n",
+                games, recoverNanos / 1e6, scanNanos / 1e6, recoverNanos / 1e3 / games, mismatches);
+    }
+
+    private GameTable newTable(Size size) {
+        return new GameTable(logProvider, size, BaghChalSetup::prepare, Listener.NONE, new CharCanvasImpl(), metrics);
+    }
+
+    /**
+     * @return random legal moves, null where the game is started over since the side to move is stuck
+     */
+    private List<Move> script(int moves, Random random) {
+        final GameTable table = newTable(boardSize);
+        table.reset();
+        final List<Move> script = new ArrayList<>(moves);
+        while (script.size() < moves) {
+            final Move move = randomMove(table, Piece.toMove(table.getHistory().getPly()), random);
+            if (move == null) {
+                table.reset();
+            } else {
+                table.movePiece(move);
+            }
+            script.add(move);
+        }
+        // starting over is not journaled, so scripts end with a move
+        while (script.get(script.size() - 1) == null) {
+            script.remove(script.size() - 1);
+        }
+        return script;
+    }
+
+    private static Move randomMove(GameTable table, Piece piece, Random random) {
+        final List<Position> sources = table.getPositionsOf(piece);
+        Collections.shuffle(sources, random);
+        for (Position source : sources) {
+            final List<Position> targets = table.getLegalTargets(source, piece);
+            if (!targets.isEmpty()) {
+                return new Move(source, targets.get(random.nextInt(targets.size())));
+            }
+        }
+        return null;
+    }
+
+    private static boolean sameGame(GameTable expected, GameTable actual) {
+        if (expected.getHistory().getPly() != actual.getHistory().getPly()
+                || expected.getSnapshot().getHiddenBorderPieceCount() != actual.getSnapshot().getHiddenBorderPieceCount()) {
+            return false;
+        }
+        for (Position p : expected.getPositions().getAll()) {
+            if (expected.get(p) != actual.get(p)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
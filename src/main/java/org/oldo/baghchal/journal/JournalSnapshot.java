@@ -0,0 +1,171 @@
+package org.oldo.baghchal.journal;
+
+import org.oldo.baghchal.model.BoardSnapshot;
+import org.oldo.baghchal.model.GameTable;
+import org.oldo.baghchal.model.Levels;
+import org.oldo.baghchal.model.Piece;
+import org.oldo.baghchal.model.Position;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * A game's table and level at one ply, two bits per table cell. Journal records
+ * of the same epoch continue from it. Written to a temporary file, forced and
+ * then renamed, so a crash leaves either the previous snapshot or this one.
+ */
+final class JournalSnapshot {
+
+    private static final int MAGIC = 0x42434a31;
+    private static final Piece[] PIECES = Piece.values();
+
+    private final int epoch;
+    private final int ply;
+    private final int boardX;
+    private final int boardY;
+    private final int level;
+    private final boolean levelDone;
+    private final int hiddenBorderPieceCount;
+    private final byte[] cells;
+
+    private JournalSnapshot(int epoch, int ply, int boardX, int boardY,
+                            int level, boolean levelDone, int hiddenBorderPieceCount, byte[] cells) {
+        this.epoch = epoch;
+        this.ply = ply;
+        this.boardX = boardX;
+        this.boardY = boardY;
+        this.level = level;
+        this.levelDone = levelDone;
+        this.hiddenBorderPieceCount = hiddenBorderPieceCount;
+        this.cells = cells;
+    }
+
+    static JournalSnapshot of(GameTable table, Levels levels, int epoch) {
+        final BoardSnapshot board = table.getSnapshot();
+        final byte[] cells = new byte[cellBytes(board.getXSize(), board.getYSize())];
+        int i = 0;
+        for (Position p : board.getPositions().getAll()) {
+            final Piece piece = board.get(p);
+            if (piece != null) {
+                cells[i >> 2] |= (piece.ordinal() + 1) << ((i & 3) << 1);
+            }
+            i++;
+        }
+        return new JournalSnapshot(epoch, table.getHistory().getPly(),
+                board.getBoardXSize(), board.getBoardYSize(),
+                levels.getLevel(), levels.isLevelDone(), board.getHiddenBorderPieceCount(), cells);
+    }
+
+    int getEpoch() {
+        return epoch;
+    }
+
+    int getPly() {
+        return ply;
+    }
+
+    int getBoardX() {
+        return boardX;
+    }
+
+    int getBoardY() {
+        return boardY;
+    }
+
+    int getLevel() {
+        return level;
+    }
+
+    /**
+     * Puts the pieces on an empty table of the snapshot's size and starts its history at the snapshot's ply
+     */
+    void restore(GameTable table, Levels levels) {
+        int i = 0;
+        for (Position p : table.getPositions().getAll()) {
+            final int code = (cells[i >> 2] >> ((i & 3) << 1)) & 3;
+            table.set(p, code == 0 ? null : PIECES[code - 1]);
+            i++;
+        }
+        table.setHiddenBorderPieceCount(hiddenBorderPieceCount);
+        table.startHistoryAt(ply);
+        levels.restore(level, levelDone);
+    }
+
+    void write(Path path) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(40 + cells.length);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(epoch);
+        out.writeInt(ply);
+        out.writeInt(boardX);
+        out.writeInt(boardY);
+        out.writeInt(level);
+        out.writeBoolean(levelDone);
+        out.writeInt(hiddenBorderPieceCount);
+        out.write(cells);
+        final CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeInt((int) crc.getValue());
+
+        final Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (final FileChannel channel = FileChannel.open(temp, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            final ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, path, ATOMIC_MOVE, REPLACE_EXISTING);
+    }
+
+    /**
+     * @return the snapshot in the file, or null if there is none
+     * @throws IOException if the file cannot be read or is corrupt
+     */
+    static JournalSnapshot read(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        final byte[] bytes = Files.readAllBytes(path);
+        if (bytes.length < 4) {
+            throw new IOException("Truncated snapshot " + path);
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 4);
+        if ((int) crc.getValue() != ByteBuffer.wrap(bytes, bytes.length - 4, 4).getInt()) {
+            throw new IOException("Corrupt snapshot " + path);
+        }
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a snapshot: " + path);
+        }
+        final int epoch = in.readInt();
+        final int ply = in.readInt();
+        final int boardX = in.readInt();
+        final int boardY = in.readInt();
+        final int level = in.readInt();
+        final boolean levelDone = in.readBoolean();
+        final int hidden = in.readInt();
+        final byte[] cells = new byte[cellBytes(boardX + 2, boardY + 2)];
+        in.readFully(cells);
+        return new JournalSnapshot(epoch, ply, boardX, boardY, level, levelDone, hidden, cells);
+    }
+
+    private static int cellBytes(int xSize, int ySize) {
+        return (xSize * ySize + 3) / 4;
+    }
+}
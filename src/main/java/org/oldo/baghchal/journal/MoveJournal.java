@@ -0,0 +1,41 @@
+package org.oldo.baghchal.journal;
+
+import org.oldo.baghchal.model.GameTable;
+import org.oldo.baghchal.model.Levels;
+import org.oldo.baghchal.model.Move;
+import org.oldo.g2d.Size;
+
+import java.util.function.Function;
+
+/**
+ * Durable record of one game, from which it can be recovered after a restart
+ */
+public interface MoveJournal {
+
+    /**
+     * Records the move just made on the table (called by the thread that plays the game)
+     */
+    void moveMade(GameTable table, Levels levels, Move move);
+
+    /**
+     * Restores the last recorded state of the game
+     *
+     * @param tables provides an empty table of the recorded board size
+     * @return the restored table, or null if nothing was recorded
+     */
+    GameTable recover(Function<Size, GameTable> tables, Levels levels);
+
+    MoveJournal NONE = new MoveJournal() {
+
+        @Override
+        public void moveMade(GameTable table, Levels levels, Move move) {
+            // ignore
+        }
+
+        @Override
+        public GameTable recover(Function<Size, GameTable> tables, Levels levels) {
+            return null;
+        }
+
+    };
+}
@@ -0,0 +1,30 @@
+package org.oldo.baghchal.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event: a computer player choosing its move
+ */
+@Name("org.oldo.baghchal.AiDecision")
+@Label("AI Decision")
+@Category("Bagh-Chal")
+@Description("A computer player choosing its move")
+public final class AiDecisionEvent extends Event {
+
+    @Label("Player")
+    public String player;
+
+    @Label("Search Depth")
+    public int depth;
+
+    @Label("Nodes")
+    @Description("Positions examined, or -1 unless metrics are enabled")
+    public long nodes;
+
+    @Label("Move")
+    public String move;
+}
@@ -0,0 +1,23 @@
+package org.oldo.baghchal.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event: a change of the board size
+ */
+@Name("org.oldo.baghchal.BoardResize")
+@Label("Board Resize")
+@Category("Bagh-Chal")
+@Description("A change of the board size, including the new game table")
+public final class BoardResizeEvent extends Event {
+
+    @Label("Width")
+    public int width;
+
+    @Label("Height")
+    public int height;
+}
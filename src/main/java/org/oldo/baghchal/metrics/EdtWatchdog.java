@@ -0,0 +1,158 @@
+package org.oldo.baghchal.metrics;
+
+import org.guppy4j.log.Log;
+import org.guppy4j.log.LogProvider;
+
+import java.awt.EventQueue;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.System.lineSeparator;
+import static org.guppy4j.log.Log.Level.debug;
+
+/**
+ * Detects when the event dispatch thread does not process a heartbeat in time,
+ * samples its stack while the stall lasts and logs the slowest stalls periodically
+ */
+public final class EdtWatchdog {
+
+    private static final int STACK_DEPTH = 16;
+
+    private final Log log;
+
+    private final long thresholdNanos;
+    private final long sampleMillis;
+    private final long reportNanos;
+    private final int reportSize;
+
+    private volatile Thread edt;
+    private volatile long heartbeatPostedAt;
+    private volatile long lastHeartbeatLatency;
+
+    // confined to the watchdog thread
+    private final Map<String, Integer> stallSamples = new HashMap<>();
+    private final List<Stall> slowest = new ArrayList<>();
+    private long stallCount;
+    private boolean unreported;
+
+    public EdtWatchdog(LogProvider logProvider, long thresholdMillis, long reportMillis, int reportSize) {
+        log = logProvider.getLog(getClass());
+        thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        sampleMillis = Math.max(1, thresholdMillis / 5);
+        reportNanos = TimeUnit.MILLISECONDS.toNanos(reportMillis);
+        this.reportSize = reportSize;
+    }
+
+    public void start() {
+        final Thread thread = new Thread(this::watch, "edt-watchdog");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void watch() {
+        long lastReport = System.nanoTime();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(sampleMillis);
+            } catch (InterruptedException e) {
+                log.as(debug, e);
+                return;
+            }
+            final long now = System.nanoTime();
+            final long postedAt = heartbeatPostedAt;
+            if (postedAt == 0) {
+                finishStall();
+                postHeartbeat(now);
+            } else if (now - postedAt > thresholdNanos) {
+                sampleStack();
+            }
+            if (unreported && now - lastReport > reportNanos) {
+                report();
+                lastReport = now;
+            }
+        }
+    }
+
+    private void postHeartbeat(long now) {
+        heartbeatPostedAt = now;
+        EventQueue.invokeLater(() -> {
+            edt = Thread.currentThread();
+            lastHeartbeatLatency = System.nanoTime() - now;
+            heartbeatPostedAt = 0;
+        });
+    }
+
+    private void sampleStack() {
+        final Thread t = edt;
+        if (t != null) {
+            stallSamples.merge(format(t.getStackTrace()), 1, Integer::sum);
+        }
+    }
+
+    private void finishStall() {
+        final long latency = lastHeartbeatLatency;
+        if (latency > thresholdNanos) {
+            stallCount++;
+            slowest.add(new Stall(latency, stallSamples));
+            slowest.sort(Comparator.comparingLong((Stall s) -> s.nanos).reversed());
+            if (slowest.size() > reportSize) {
+                slowest.remove(reportSize);
+            }
+            unreported = true;
+        }
+        lastHeartbeatLatency = 0;
+        stallSamples.clear();
+    }
+
+    private void report() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(stallCount).append(" EDT stalls over ")
+                .append(TimeUnit.NANOSECONDS.toMillis(thresholdNanos)).append(" ms so far, slowest:");
+        for (Stall stall : slowest) {
+            sb.append(lineSeparator()).append(stall);
+        }
+        log.as(debug, sb.toString());
+        unreported = false;
+    }
+
+    private static String format(StackTraceElement[] stack) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < Math.min(STACK_DEPTH, stack.length); i++) {
+            sb.append(lineSeparator()).append("\tat ").append(stack[i]);
+        }
+        return sb.toString();
+    }
+
+    private static final class Stall {
+
+        final long nanos;
+        final int samples;
+        final String stack;
+
+        Stall(long nanos, Map<String, Integer> stackSamples) {
+            this.nanos = nanos;
+            int total = 0;
+            String top = null;
+            int topCount = 0;
+            for (Map.Entry<String, Integer> e : stackSamples.entrySet()) {
+                total += e.getValue();
+                if (e.getValue() > topCount) {
+                    top = e.getKey();
+                    topCount = e.getValue();
+                }
+            }
+            samples = total;
+            stack = top == null ? " (ended before a stack was sampled)"
+                    : String.format(" (%d of %d samples in this stack)%s", topCount, total, top);
+        }
+
+        @Override
+        public String toString() {
+            return TimeUnit.NANOSECONDS.toMillis(nanos) + " ms, " + samples + " samples" + stack;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.oldo.baghchal.metrics;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.text.ParseException;
+
+/**
+ * Starts and stops flight recordings using the bundled game settings (baghchal.jfc)
+ */
+public final class FlightRecording implements FlightRecordingMXBean {
+
+    private static final String SETTINGS = "/org/oldo/baghchal/baghchal.jfc";
+
+    private final GameMetrics metrics;
+    private final Path destination;
+
+    private Recording recording;
+    // whether metrics were collected before the recording started
+    private boolean metricsEnabled;
+
+    public FlightRecording(GameMetrics metrics, Path destination) {
+        this.metrics = metrics;
+        this.destination = destination;
+    }
+
+    @Override
+    public synchronized boolean isRecording() {
+        return recording != null;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (recording == null) {
+            final Recording r = new Recording(loadSettings());
+            r.setName("Bagh-Chal");
+            r.setToDisk(true);
+            r.start();
+            recording = r;
+            // AI decision events report node counts only while metrics are collected
+            metricsEnabled = metrics.isEnabled();
+            metrics.setEnabled(true);
+        }
+    }
+
+    @Override
+    public synchronized String stop() {
+        if (recording == null) {
+            return null;
+        }
+        try {
+            recording.stop();
+            recording.dump(destination);
+            return destination.toAbsolutePath().toString();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write recording to " + destination, e);
+        } finally {
+            recording.close();
+            recording = null;
+            metrics.setEnabled(metricsEnabled);
+        }
+    }
+
+    private static Configuration loadSettings() {
+        try (final InputStream stream = FlightRecording.class.getResourceAsStream(SETTINGS);
+             final Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8)) {
+            return Configuration.create(reader);
+        } catch (IOException | ParseException e) {
+            throw new IllegalStateException("Could not read flight recorder settings " + SETTINGS, e);
+        }
+    }
+}
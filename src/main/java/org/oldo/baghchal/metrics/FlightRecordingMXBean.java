@@ -0,0 +1,17 @@
+package org.oldo.baghchal.metrics;
+
+/**
+ * Management interface for flight recordings with the bundled settings
+ */
+public interface FlightRecordingMXBean {
+
+    boolean isRecording();
+
+    void start();
+
+    /**
+     * @return path of the file the recording was written to
+     */
+    String stop();
+
+}
@@ -0,0 +1,209 @@
+package org.oldo.baghchal.metrics;
+
+import java.util.Collection;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms of the game's hot paths.
+ * While disabled, each probe costs one volatile read.
+ */
+public final class GameMetrics implements GameMetricsMXBean {
+
+    private static final long FPS_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private volatile boolean enabled;
+    private final Collection<Runnable> enabledListeners = new CopyOnWriteArrayList<>();
+
+    private final LatencyHistogram turnLatency = new LatencyHistogram();
+    private final LatencyHistogram thinkLatency = new LatencyHistogram();
+    private final LatencyHistogram paintLatency = new LatencyHistogram();
+    private final LatencyHistogram frameTime = new LatencyHistogram();
+
+    private final LongAdder moveGenerations = new LongAdder();
+    private final LongAdder nodes = new LongAdder();
+    private final LongAdder droppedFrames = new LongAdder();
+
+    // written by the game loop thread only
+    private long thinkStartNodes;
+    private volatile long lastThinkNanos;
+    private volatile long lastThinkNodes;
+
+    // written by the EDT only
+    private long fpsWindowStart;
+    private int fpsWindowFrames;
+    private volatile double framesPerSecond;
+    // makes the next paint start a new window, as paints were not counted while disabled
+    private volatile boolean fpsWindowStale = true;
+
+    public GameMetrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        if (enabled && !this.enabled) {
+            fpsWindowStale = true;
+        }
+        this.enabled = enabled;
+        enabledListeners.forEach(Runnable::run);
+    }
+
+    /**
+     * @param listener is run on the thread that enables or disables the metrics, e.g. a JMX thread
+     */
+    public void addEnabledListener(Runnable listener) {
+        enabledListeners.add(listener);
+    }
+
+    /**
+     * @return the start time to pass to one of the record methods, or 0 when disabled
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public void recordTurn(long start) {
+        if (start != 0) {
+            turnLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    public long startThink() {
+        final long start = start();
+        if (start != 0) {
+            thinkStartNodes = nodes.sum();
+        }
+        return start;
+    }
+
+    public void recordThink(long start) {
+        if (start != 0) {
+            final long nanos = System.nanoTime() - start;
+            thinkLatency.record(nanos);
+            lastThinkNodes = nodes.sum() - thinkStartNodes;
+            lastThinkNanos = nanos;
+        }
+    }
+
+    public void recordPaint(long start) {
+        if (start != 0) {
+            final long now = System.nanoTime();
+            paintLatency.record(now - start);
+            if (fpsWindowStale) {
+                fpsWindowStale = false;
+                fpsWindowStart = start;
+                fpsWindowFrames = 0;
+            }
+            fpsWindowFrames++;
+            final long elapsed = now - fpsWindowStart;
+            if (elapsed >= FPS_WINDOW_NANOS) {
+                framesPerSecond = fpsWindowFrames * (double) FPS_WINDOW_NANOS / elapsed;
+                fpsWindowStart = now;
+                fpsWindowFrames = 0;
+            }
+        }
+    }
+
+    /**
+     * Records the time between two consecutive animation frames
+     */
+    public void recordFrameTime(long nanos) {
+        if (enabled) {
+            frameTime.record(nanos);
+        }
+    }
+
+    public void countDroppedFrames(long frames) {
+        if (enabled) {
+            droppedFrames.add(frames);
+        }
+    }
+
+    public void countMoveGeneration() {
+        if (enabled) {
+            moveGenerations.increment();
+        }
+    }
+
+    public void countNode() {
+        if (enabled) {
+            nodes.increment();
+        }
+    }
+
+    @Override
+    public LatencySummary getTurnLatency() {
+        return turnLatency.getSummary();
+    }
+
+    @Override
+    public LatencySummary getThinkLatency() {
+        return thinkLatency.getSummary();
+    }
+
+    @Override
+    public LatencySummary getPaintLatency() {
+        return paintLatency.getSummary();
+    }
+
+    @Override
+    public LatencySummary getFrameTime() {
+        return frameTime.getSummary();
+    }
+
+    @Override
+    public long getDroppedFrameCount() {
+        return droppedFrames.sum();
+    }
+
+    @Override
+    public long getMoveGenerationCount() {
+        return moveGenerations.sum();
+    }
+
+    @Override
+    public long getNodeCount() {
+        return nodes.sum();
+    }
+
+    @Override
+    public double getNodesPerSecond() {
+        final long nanos = lastThinkNanos;
+        return nanos == 0 ? 0 : lastThinkNodes * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    @Override
+    public long getLastThinkNodes() {
+        return lastThinkNodes;
+    }
+
+    @Override
+    public double getLastThinkMillis() {
+        return lastThinkNanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public double getFramesPerSecond() {
+        return framesPerSecond;
+    }
+
+    @Override
+    public void reset() {
+        turnLatency.reset();
+        thinkLatency.reset();
+        paintLatency.reset();
+        frameTime.reset();
+        droppedFrames.reset();
+        moveGenerations.reset();
+        nodes.reset();
+        lastThinkNanos = 0;
+        lastThinkNodes = 0;
+    }
+}
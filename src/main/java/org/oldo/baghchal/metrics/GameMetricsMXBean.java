@@ -0,0 +1,39 @@
+package org.oldo.baghchal.metrics;
+
+/**
+ * Management interface of the game's hot-path metrics
+ */
+public interface GameMetricsMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    LatencySummary getTurnLatency();
+
+    LatencySummary getThinkLatency();
+
+    LatencySummary getPaintLatency();
+
+    /**
+     * @return time between consecutive animation frames
+     */
+    LatencySummary getFrameTime();
+
+    long getDroppedFrameCount();
+
+    long getMoveGenerationCount();
+
+    long getNodeCount();
+
+    double getNodesPerSecond();
+
+    long getLastThinkNodes();
+
+    double getLastThinkMillis();
+
+    double getFramesPerSecond();
+
+    void reset();
+
+}
@@ -0,0 +1,96 @@
+package org.oldo.baghchal.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with logarithmic buckets (about 20% precision)
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        final long n = Math.max(0, nanos);
+        counts.incrementAndGet(bucket(n));
+        count.incrementAndGet();
+        totalNanos.addAndGet(n);
+        maxNanos.accumulateAndGet(n, Math::max);
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public double getMeanMillis() {
+        final long c = count.get();
+        return c == 0 ? 0 : toMillis(totalNanos.get() / (double) c);
+    }
+
+    public double getMaxMillis() {
+        return toMillis(maxNanos.get());
+    }
+
+    /**
+     * @param quantile between 0 and 1, e.g. 0.99
+     */
+    public double getPercentileMillis(double quantile) {
+        final long c = count.get();
+        if (c == 0) {
+            return 0;
+        }
+        final long rank = (long) Math.ceil(quantile * c);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return toMillis(Math.min(upperBound(i), maxNanos.get()));
+            }
+        }
+        return getMaxMillis();
+    }
+
+    public LatencySummary getSummary() {
+        return new LatencySummary(getCount(), getMeanMillis(),
+                getPercentileMillis(0.5), getPercentileMillis(0.9), getPercentileMillis(0.99), getMaxMillis());
+    }
+
+    private static int bucket(long n) {
+        if (n < SUB_BUCKETS) {
+            return (int) n;
+        }
+        final int msb = 63 - Long.numberOfLeadingZeros(n);
+        final int sub = (int) (n >>> (msb - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (msb - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        final int msb = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        final int sub = bucket % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (msb - SUB_BITS)) - 1;
+    }
+
+    private static double toMillis(double nanos) {
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,25 @@
+package org.oldo.baghchal.metrics;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Registers management beans with the platform MBean server
+ */
+public final class MBeans {
+
+    private static final String DOMAIN = "org.oldo.baghchal";
+
+    private MBeans() {
+    }
+
+    public static void register(Object bean, String type) {
+        try {
+            final ObjectName name = new ObjectName(DOMAIN + ":type=" + type);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(bean, name);
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register MBean " + type, e);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package org.oldo.baghchal.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event: a move applied to the game table
+ */
+@Name("org.oldo.baghchal.Move")
+@Label("Move")
+@Category("Bagh-Chal")
+@Description("A move applied to the displayed game table")
+public final class MoveEvent extends Event {
+
+    @Label("Piece")
+    public String piece;
+
+    @Label("From X")
+    public int fromX;
+
+    @Label("From Y")
+    public int fromY;
+
+    @Label("To X")
+    public int toX;
+
+    @Label("To Y")
+    public int toY;
+
+    @Label("Jump")
+    public boolean jump;
+}
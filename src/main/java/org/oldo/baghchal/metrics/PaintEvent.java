@@ -0,0 +1,26 @@
+package org.oldo.baghchal.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event: one paint of the game panel
+ */
+@Name("org.oldo.baghchal.Paint")
+@Label("Paint")
+@Category("Bagh-Chal")
+@Description("One paintComponent call of the game panel")
+public final class PaintEvent extends Event {
+
+    @Label("Clip Width")
+    public int clipWidth;
+
+    @Label("Clip Height")
+    public int clipHeight;
+
+    @Label("Dragging")
+    public boolean dragging;
+}
@@ -0,0 +1,20 @@
+package org.oldo.baghchal.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event: a switch to another theme
+ */
+@Name("org.oldo.baghchal.ThemeSwitch")
+@Label("Theme Switch")
+@Category("Bagh-Chal")
+@Description("A switch to another theme, including relayout")
+public final class ThemeSwitchEvent extends Event {
+
+    @Label("Theme")
+    public String theme;
+}
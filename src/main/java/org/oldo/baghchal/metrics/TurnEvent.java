@@ -0,0 +1,29 @@
+package org.oldo.baghchal.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event: one player's turn in the game loop
+ */
+@Name("org.oldo.baghchal.Turn")
+@Label("Turn")
+@Category("Bagh-Chal")
+@Description("One player's turn, from asking the player to the repainted view")
+public final class TurnEvent extends Event {
+
+    @Label("Piece")
+    public String piece;
+
+    @Label("Computer")
+    public boolean computer;
+
+    @Label("Gave Up")
+    public boolean gaveUp;
+
+    @Label("Drawn")
+    public boolean drawn;
+}
@@ -0,0 +1,79 @@
+package org.oldo.baghchal.model;
+
+/**
+ * Immutable copy of the game table contents, safe to read from any thread
+ */
+public final class BoardSnapshot {
+
+    private final Piece[][] grid;
+    private final TablePositions positions;
+    private final int boardXSize;
+    private final int boardYSize;
+    private final int hiddenBorderPieceCount;
+
+    private final Move lastMove;
+    private final Position capturedAt;
+    private final Piece captured;
+
+    BoardSnapshot(Piece[][] grid, TablePositions positions,
+                  int boardXSize, int boardYSize, int hiddenBorderPieceCount,
+                  Move lastMove, Position capturedAt, Piece captured) {
+        this.grid = new Piece[grid.length][];
+        for (int x = 0; x < grid.length; x++) {
+            this.grid[x] = grid[x].clone();
+        }
+        this.positions = positions;
+        this.boardXSize = boardXSize;
+        this.boardYSize = boardYSize;
+        this.hiddenBorderPieceCount = hiddenBorderPieceCount;
+        this.lastMove = lastMove;
+        this.capturedAt = capturedAt;
+        this.captured = captured;
+    }
+
+    public Piece get(Position p) {
+        return grid[p.x()][p.y()];
+    }
+
+    public TablePositions getPositions() {
+        return positions;
+    }
+
+    public int getBoardXSize() {
+        return boardXSize;
+    }
+
+    public int getBoardYSize() {
+        return boardYSize;
+    }
+
+    public int getXSize() {
+        return grid.length;
+    }
+
+    public int getYSize() {
+        return grid[0].length;
+    }
+
+    public int getHiddenBorderPieceCount() {
+        return hiddenBorderPieceCount;
+    }
+
+    /**
+     * @return the move that led to this state, null after a reset
+     */
+    public Move getLastMove() {
+        return lastMove;
+    }
+
+    /**
+     * @return where the last move captured a piece, null if it did not
+     */
+    public Position getCapturedAt() {
+        return capturedAt;
+    }
+
+    public Piece getCaptured() {
+        return captured;
+    }
+}
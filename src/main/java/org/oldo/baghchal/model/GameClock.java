@@ -0,0 +1,109 @@
+package org.oldo.baghchal.model;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Time left per side: a base time at the start of the game, plus an increment for each move
+ * made in time. Only the side to move has its clock running. A clock without base time is
+ * untimed and never runs out.
+ */
+public final class GameClock {
+
+    private final long baseMillis;
+    private final long incrementMillis;
+
+    private final Map<Piece, Long> remainingNanos = new EnumMap<>(Piece.class);
+    private Piece running;
+    private long runningSince;
+
+    public GameClock(long baseMillis, long incrementMillis) {
+        this.baseMillis = baseMillis;
+        this.incrementMillis = incrementMillis;
+        reset();
+    }
+
+    /**
+     * @param spec base and increment in seconds, e.g. "300+5", or null for an untimed clock
+     */
+    public static GameClock parse(String spec) {
+        if (spec == null) {
+            return new GameClock(0, 0);
+        }
+        final String[] parts = spec.trim().split("\\+");
+        try {
+            final double base = Double.parseDouble(parts[0]);
+            final double increment = parts.length > 1 ? Double.parseDouble(parts[1]) : 0;
+            if (parts.length > 2 || base <= 0 || increment < 0) {
+                throw new IllegalArgumentException("Not a clock (base+increment in seconds): " + spec);
+            }
+            return new GameClock(Math.round(base * 1000), Math.round(increment * 1000));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a clock (base+increment in seconds): " + spec, e);
+        }
+    }
+
+    public boolean isTimed() {
+        return baseMillis > 0;
+    }
+
+    public long getIncrementMillis() {
+        return incrementMillis;
+    }
+
+    /**
+     * Gives both sides their base time, with no clock running
+     */
+    public synchronized void reset() {
+        for (Piece piece : Piece.values()) {
+            remainingNanos.put(piece, baseMillis * 1_000_000);
+        }
+        running = null;
+    }
+
+    /**
+     * Starts the clock of the side to move, unless it is already running
+     */
+    public synchronized void start(Piece piece) {
+        if (running != piece) {
+            stop(running);
+            running = piece;
+            runningSince = System.nanoTime();
+        }
+    }
+
+    /**
+     * Stops the clock of the side that moved and adds the increment, if it moved in time
+     */
+    public synchronized void stop(Piece piece) {
+        if (piece == null || running != piece) {
+            return;
+        }
+        final long left = getRemainingNanos(piece);
+        remainingNanos.put(piece, left > 0 ? left + incrementMillis * 1_000_000 : 0);
+        running = null;
+    }
+
+    /**
+     * @return time left for the side, counting down while its clock runs; never negative
+     */
+    public synchronized long getRemainingMillis(Piece piece) {
+        return isTimed() ? Math.max(0, getRemainingNanos(piece) / 1_000_000) : Long.MAX_VALUE;
+    }
+
+    public synchronized boolean isFlagged(Piece piece) {
+        return isTimed() && getRemainingNanos(piece) <= 0;
+    }
+
+    /**
+     * @return the side whose clock runs, or null
+     */
+    public synchronized Piece getRunning() {
+        return running;
+    }
+
+    private long getRemainingNanos(Piece piece) {
+        final long left = remainingNanos.get(piece);
+        return piece == running ? left - (System.nanoTime() - runningSince) : left;
+    }
+}
@@ -0,0 +1,216 @@
+package org.oldo.baghchal.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The moves of the current level, one packed int each, with a compact keyframe
+ * of the table every few moves. Moving to another ply replays moves from the
+ * current ply or from the nearest keyframe, whichever is closer.
+ * <p>
+ * Move layout: bits 0-13 source index, 14-27 target index, 28-29 captured piece
+ * (0 for none, else ordinal + 1), 30 whether the piece was taken from a hidden reserve.
+ */
+public final class GameHistory {
+
+    private static final int INDEX_BITS = 14;
+    private static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+    private static final int CAPTURED_SHIFT = 2 * INDEX_BITS;
+    private static final int RESERVE_BIT = 1 << (CAPTURED_SHIFT + 2);
+
+    private static final Piece[] PIECES = Piece.values();
+
+    private final TablePositions positions;
+    private final int keyframeInterval;
+
+    private int[] moves = new int[64];
+    private int size;
+    private int ply;
+    // plies played before the history started, e.g. when the game was recovered
+    private int base;
+
+    private final List<Keyframe> keyframes = new ArrayList<>();
+
+    GameHistory(TablePositions positions) {
+        if (positions.size() > INDEX_MASK + 1) {
+            throw new IllegalArgumentException("Table too large for packed moves: " + positions.size());
+        }
+        this.positions = positions;
+        // keeps keyframes at about two bytes per move on large boards
+        keyframeInterval = Math.max(16, positions.size() / 8);
+    }
+
+    /**
+     * @return number of moves that can be undone
+     */
+    public int getPly() {
+        return base + ply;
+    }
+
+    /**
+     * @return the ply the history starts at, which no undo goes below
+     */
+    public int getBasePly() {
+        return base;
+    }
+
+    /**
+     * @return number of recorded moves, including those that can be redone
+     */
+    public int size() {
+        return base + size;
+    }
+
+    /**
+     * @return true if no move was made since the history started
+     */
+    public boolean isAtStart() {
+        return size == 0;
+    }
+
+    /**
+     * Starts over with the table as it is now
+     */
+    void clear(GameTable table) {
+        clear(table, 0);
+    }
+
+    /**
+     * Starts over with the table as it is now, after the given number of plies
+     */
+    void clear(GameTable table, int basePly) {
+        base = basePly;
+        size = 0;
+        ply = 0;
+        keyframes.clear();
+        keyframes.add(new Keyframe(table));
+    }
+
+    /**
+     * Records a move just made on the table, dropping any moves that could have been redone
+     */
+    void record(Move move, Piece captured, boolean fromReserve, GameTable table) {
+        if (ply == moves.length) {
+            moves = Arrays.copyOf(moves, moves.length * 2);
+        }
+        moves[ply++] = pack(move, captured, fromReserve);
+        size = ply;
+        // keyframes after the previous ply belong to the moves just dropped
+        final int valid = (ply - 1) / keyframeInterval + 1;
+        while (keyframes.size() > valid) {
+            keyframes.remove(keyframes.size() - 1);
+        }
+        if (ply % keyframeInterval == 0) {
+            keyframes.add(new Keyframe(table));
+        }
+    }
+
+    void goTo(int targetPly, GameTable table) {
+        final int target = targetPly - base;
+        if (target < 0 || target > size) {
+            throw new IllegalArgumentException("No such ply: " + targetPly + " of " + size());
+        }
+        final int below = Math.min(target / keyframeInterval, keyframes.size() - 1);
+        final int above = below + 1;
+        int distance = Math.abs(target - ply);
+        int start = -1;
+        if (target - below * keyframeInterval < distance) {
+            start = below;
+            distance = target - below * keyframeInterval;
+        }
+        if (above < keyframes.size() && above * keyframeInterval - target < distance) {
+            start = above;
+        }
+        if (start >= 0) {
+            keyframes.get(start).restore(table);
+            ply = start * keyframeInterval;
+        }
+        while (ply < target) {
+            redo(moves[ply++], table);
+        }
+        while (ply > target) {
+            undo(moves[--ply], table);
+        }
+    }
+
+    /**
+     * @return the source and target of the move leading to the ply
+     */
+    public Move getMove(int ply) {
+        return unpack(moves[ply - base - 1]);
+    }
+
+    private int pack(Move move, Piece captured, boolean fromReserve) {
+        return positions.indexOf(move.p1())
+                | positions.indexOf(move.p2()) << INDEX_BITS
+                | (captured == null ? 0 : captured.ordinal() + 1) << CAPTURED_SHIFT
+                | (fromReserve ? RESERVE_BIT : 0);
+    }
+
+    private void redo(int packed, GameTable table) {
+        final Move move = unpack(packed);
+        final Piece piece = table.get(move.p1());
+        if ((packed & RESERVE_BIT) != 0) {
+            table.setHiddenBorderPieceCount(table.getHiddenBorderPieceCount() - 1);
+        } else {
+            table.set(move.p1(), null);
+        }
+        table.set(move.p2(), piece);
+        if (getCaptured(packed) != null) {
+            table.set(move.middle(), null);
+        }
+    }
+
+    private void undo(int packed, GameTable table) {
+        final Move move = unpack(packed);
+        final Piece piece = table.get(move.p2());
+        table.set(move.p2(), null);
+        final Piece captured = getCaptured(packed);
+        if (captured != null) {
+            table.set(move.middle(), captured);
+        }
+        if ((packed & RESERVE_BIT) != 0) {
+            table.setHiddenBorderPieceCount(table.getHiddenBorderPieceCount() + 1);
+        } else {
+            table.set(move.p1(), piece);
+        }
+    }
+
+    private Move unpack(int packed) {
+        return new Move(positions.get(packed & INDEX_MASK), positions.get((packed >>> INDEX_BITS) & INDEX_MASK));
+    }
+
+    private static Piece getCaptured(int packed) {
+        final int captured = (packed >>> CAPTURED_SHIFT) & 3;
+        return captured == 0 ? null : PIECES[captured - 1];
+    }
+
+    /**
+     * The table's pieces at two bits per cell, plus the hidden reserve
+     */
+    private final class Keyframe {
+
+        private final byte[] cells;
+        private final int hiddenBorderPieceCount;
+
+        Keyframe(GameTable table) {
+            cells = new byte[(positions.size() + 3) / 4];
+            for (int i = 0; i < positions.size(); i++) {
+                final Piece piece = table.get(positions.get(i));
+                if (piece != null) {
+                    cells[i >> 2] |= (piece.ordinal() + 1) << ((i & 3) << 1);
+                }
+            }
+            hiddenBorderPieceCount = table.getHiddenBorderPieceCount();
+        }
+
+        void restore(GameTable table) {
+            for (int i = 0; i < positions.size(); i++) {
+                final int code = (cells[i >> 2] >> ((i & 3) << 1)) & 3;
+                table.set(positions.get(i), code == 0 ? null : PIECES[code - 1]);
+            }
+            table.setHiddenBorderPieceCount(hiddenBorderPieceCount);
+        }
+    }
+}
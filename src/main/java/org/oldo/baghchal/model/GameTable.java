@@ -2,28 +2,30 @@ package org.oldo.baghchal.model;
 
 import org.guppy4j.log.LogProvider;
 import org.oldo.baghchal.Listener;
+import org.oldo.baghchal.metrics.GameMetrics;
+import org.oldo.baghchal.metrics.MoveEvent;
 import org.oldo.g2d.Size;
 import org.oldo.text.CharCanvas;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 import static org.guppy4j.Booleans.not;
-import static org.oldo.baghchal.model.Direction.*;
 
 /**
  * The game board model
  */
 public final class GameTable {
 
-    private static final Direction[] directions = {
-            RIGHT_UP, RIGHT, RIGHT_DOWN, DOWN
-    };
-
     private final LogProvider logProvider;
+    private final GameMetrics metrics;
 
     private final Size boardSize;
 
@@ -31,35 +33,72 @@ public final class GameTable {
 
     private final Piece[][] grid;
 
+    // per piece: the positions it occupies (by TablePositions index) and how many are on the border
+    private final BitSet[] pieceIndex = new BitSet[Piece.values().length];
+    private final int[] borderCount = new int[Piece.values().length];
+    // Zobrist key of the pieces on the table, see getKey()
+    private long key;
+
+    private final MoveCache moves;
+
+    // only kept for the table in play, not for look-ahead copies
+    private final GameHistory history;
+
+    // positions of the game in play, shared read-only with look-ahead copies
+    private Repetitions repetitions;
+    // plies played on the table, which tells whose move it is
+    private int ply;
+    // resets of the table, each of which starts a new game
+    private int games;
+
+    // built on first use, so look-ahead copies that never ask do not pay for it
+    private ThreatMap threats;
+    private PredatorRegions regions;
+
     private final Consumer<GameTable> setupMethod;
     private final Listener listener;
     private final TablePositions positions;
 
     private final TableToString tableToString;
 
+    // copies used for look-ahead are never rendered, so they do not publish snapshots
+    private final boolean publishing;
+    private final AtomicReference<BoardSnapshot> snapshot = new AtomicReference<>();
+
     public GameTable(LogProvider logProvider, Size boardSize,
                      Consumer<GameTable> setupMethod, Listener listener,
-                     CharCanvas charCanvas) {
+                     CharCanvas charCanvas, GameMetrics metrics) {
+        this(logProvider, boardSize, setupMethod, listener, charCanvas, metrics,
+                new TablePositions(new Position(1, 1), new Position(boardSize.x(), boardSize.y()),
+                        boardSize.x() + 2, boardSize.y() + 2),
+                null, true);
+    }
+
+    private GameTable(LogProvider logProvider, Size boardSize,
+                      Consumer<GameTable> setupMethod, Listener listener,
+                      CharCanvas charCanvas, GameMetrics metrics,
+                      TablePositions positions, MoveCache moves, boolean publishing) {
         this.logProvider = logProvider;
+        this.metrics = metrics;
+        this.publishing = publishing;
         this.setupMethod = setupMethod;
         this.listener = listener;
         this.boardSize = boardSize;
         this.charCanvas = charCanvas;
         grid = new Piece[boardSize.x() + 2][boardSize.y() + 2];
-        final Position topLeft = new Position(1, 1);
-        final Position bottomRight = new Position(boardSize.x(), boardSize.y());
-        positions = new TablePositions(topLeft, bottomRight, getPositions(grid));
+        this.positions = positions;
+        this.moves = moves != null ? new MoveCache(moves) : new MoveCache(positions);
+        for (int i = 0; i < pieceIndex.length; i++) {
+            pieceIndex[i] = new BitSet(positions.size());
+        }
         tableToString = new TableToString(this, charCanvas);
-    }
-
-    private static Iterable<Position> getPositions(Piece[][] grid) {
-        final Collection<Position> list = new ArrayList<>();
-        for (int x = 0; x < grid.length; x++) {
-            for (int y = 0; y < grid[x].length; y++) {
-                list.add(new Position(x, y));
-            }
+        history = publishing ? new GameHistory(positions) : null;
+        if (history != null) {
+            history.clear(this);
+            repetitions = new Repetitions();
+            repetitions.clear(getRepetitionKey(), ply, getPieceCount());
         }
-        return list;
+        publish(null, null, null);
     }
 
     public TablePositions getPositions() {
@@ -73,39 +112,190 @@ public final class GameTable {
      * @param gt An existing GameTable instance
      */
     private GameTable(GameTable gt) {
-        this(gt.logProvider, gt.boardSize, gt.setupMethod, Listener.NONE, gt.charCanvas);
+        this(gt.logProvider, gt.boardSize, gt.setupMethod, Listener.NONE, gt.charCanvas, gt.metrics,
+                gt.positions, gt.moves, false);
         for (int x = 0; x < grid.length; x++) {
             System.arraycopy(gt.grid[x], 0, grid[x], 0, grid[x].length);
         }
+        for (int i = 0; i < pieceIndex.length; i++) {
+            pieceIndex[i].or(gt.pieceIndex[i]);
+        }
+        System.arraycopy(gt.borderCount, 0, borderCount, 0, borderCount.length);
+        key = gt.key;
+        hiddenBorderPieceCount = gt.hiddenBorderPieceCount;
+        repetitions = gt.repetitions;
+        ply = gt.ply;
+        games = gt.games;
+        // kept up to date by moves, so look-ahead does not flood the whole board again
+        regions = gt.regions != null ? new PredatorRegions(gt.regions) : null;
     }
 
     public GameTable copy() {
+        metrics.countNode();
         return new GameTable(this);
     }
 
     public void movePiece(Move move) {
+        final MoveEvent event = publishing ? new MoveEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
         final Piece piece = get(move.p1());
+        final boolean fromReserve = positions.isBorder(move.p1()) && hiddenBorderPieceCount > 0;
         if (piece == null) {
             throw new IllegalStateException("Cannot move piece from empty position:" + move.p1());
         } else {
             pick(move.p1(), piece);
             set(move.p2(), piece);
         }
-        if (move.isJump() && positions.isBoardMove(move)) {
-            clear(move.middle());
+        final boolean jump = move.isJump() && positions.isBoardMove(move);
+        final Position capturedAt = jump ? move.middle() : null;
+        final Piece captured = jump ? get(capturedAt) : null;
+        if (jump) {
+            clear(capturedAt);
+        }
+        ply++;
+        if (history != null) {
+            history.record(move, captured, fromReserve, this);
+            repetitions.record(getRepetitionKey(), ply, getPieceCount());
+        }
+        publish(move, capturedAt, captured);
+        if (jump) {
             listener.afterJump(piece);
         } else {
             listener.afterStep(piece);
         }
+        if (event != null && event.shouldCommit()) {
+            commit(event, move, piece, jump);
+        }
+    }
+
+    private static void commit(MoveEvent event, Move move, Piece piece, boolean jump) {
+        event.piece = piece.name();
+        event.fromX = move.p1().x();
+        event.fromY = move.p1().y();
+        event.toX = move.p2().x();
+        event.toY = move.p2().y();
+        event.jump = jump;
+        event.commit();
+    }
+
+    /**
+     * The latest complete state of this table, published after each move or reset.
+     * Readers on other threads (e.g. painting) never see a half-done move.
+     */
+    public BoardSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    private void publish(Move move, Position capturedAt, Piece captured) {
+        if (publishing) {
+            snapshot.set(new BoardSnapshot(grid, positions,
+                    boardSize.x(), boardSize.y(), hiddenBorderPieceCount, move, capturedAt, captured));
+        }
+    }
+
+    /**
+     * @return Zobrist key of the pieces on the table and the hidden border pieces, the same
+     * in every run for the same position, so it may be stored (e.g. in an opening book)
+     */
+    public long getKey() {
+        return key ^ TablePositions.getHiddenKey(hiddenBorderPieceCount);
+    }
+
+    /**
+     * @return true if the game in play is drawn with the pieces as on this table: the position
+     * occurs for the third time, or there was no capture for a number of plies. Look-ahead copies
+     * count the positions of the game in play, and only up to their first capture.
+     */
+    public boolean isDrawn() {
+        return repetitions != null && repetitions.isDrawn(getRepetitionKey(), ply, getPieceCount());
+    }
+
+    /**
+     * @return true if the step from one board position to another would draw the game,
+     * as {@link #isDrawn()} on a copy after the step would tell
+     */
+    public boolean isDrawnAfterStep(Move step) {
+        final Piece piece = get(step.p1());
+        final long after = getKey() ^ positions.getKey(positions.indexOf(step.p1()), piece)
+                ^ positions.getKey(positions.indexOf(step.p2()), piece);
+        return repetitions != null && repetitions.isDrawn(getRepetitionKey(after, ply + 1), ply + 1, getPieceCount());
+    }
+
+    private long getRepetitionKey() {
+        return getRepetitionKey(getKey(), ply);
+    }
+
+    private static long getRepetitionKey(long key, int ply) {
+        // the same pieces with the other side to move are another position
+        return key ^ (ply & 1) * 0x9e3779b97f4a7c15L;
+    }
+
+    private int getPieceCount() {
+        int count = hiddenBorderPieceCount;
+        for (BitSet index : pieceIndex) {
+            count += index.cardinality();
+        }
+        return count;
     }
 
     public void setHiddenBorderPieceCount(int count) {
         this.hiddenBorderPieceCount = count;
     }
 
+    public int getHiddenBorderPieceCount() {
+        return hiddenBorderPieceCount;
+    }
+
+    /**
+     * @return a number that changes with each new game on the table
+     */
+    public int getGameNumber() {
+        return games;
+    }
+
+    public GameHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Lets a setup method start the game after the given number of plies, which hands the
+     * first move to another piece (e.g. for a puzzle)
+     */
+    public void setStartPly(int ply) {
+        startPly = ply;
+    }
+
+    /**
+     * Starts the history over at the given ply with the pieces as they are now,
+     * e.g. after restoring a saved game
+     */
+    public void startHistoryAt(int ply) {
+        history.clear(this, ply);
+        this.ply = ply;
+        repetitions.clear(getRepetitionKey(), ply, getPieceCount());
+        publish(null, null, null);
+    }
+
+    /**
+     * Moves the table to the given ply of its history and ends a user's pending turn
+     */
+    public void goTo(int ply) {
+        history.goTo(ply, this);
+        // the positions on the way there are not known, so repetitions are counted from here
+        this.ply = ply;
+        repetitions.clear(getRepetitionKey(), ply, getPieceCount());
+        publish(null, null, null);
+        interruptTurn();
+    }
+
     private int hiddenBorderPieceCount;
 
-    public Position pick(Position p, Piece piece) {
+    // plies the game counts as played once set up, see setStartPly()
+    private int startPly;
+
+    private Position pick(Position p, Piece piece) {
         if (get(p) == piece) {
             if (positions.isBoard(p) || hiddenBorderPieceCount <= 0) {
                 clear(p);
@@ -120,15 +310,20 @@ public final class GameTable {
     }
 
     public List<Move> getStepsWhereAdjacent(Piece movingPiece, Piece requiredPiece) {
+        metrics.countMoveGeneration();
         final List<Move> steps = new ArrayList<>();
-        for (Position p : positions.getBoard()) {
-            if (get(p) == movingPiece) {
-                for (Direction d : Direction.values()) {
-                    final Position p2 = d.addTo(p);
-                    if (get(p2) == requiredPiece) {
-                        final Move step = new Move(p, p2);
-                        if (isStepAlongLine(step)) {
-                            steps.add(step);
+        for (Position p : getPositionsOf(movingPiece)) {
+            if (positions.isBoard(p)) {
+                if (requiredPiece == null) {
+                    Collections.addAll(steps, moves.getSteps(p, this));
+                } else {
+                    for (Direction d : Direction.values()) {
+                        final Position p2 = d.addTo(p);
+                        if (get(p2) == requiredPiece) {
+                            final Move step = new Move(p, p2);
+                            if (isStepAlongLine(step)) {
+                                steps.add(step);
+                            }
                         }
                     }
                 }
@@ -139,8 +334,18 @@ public final class GameTable {
 
     public List<Move> getPossibleJumps(Piece movingPiece, Piece requiredPiece) {
         final List<Move> jumps = new ArrayList<>();
-        for (Move step : getStepsWhereAdjacent(movingPiece, requiredPiece)) {
-            addPossibleJump(jumps, step);
+        if (requiredPiece == null || requiredPiece == movingPiece) {
+            for (Move step : getStepsWhereAdjacent(movingPiece, requiredPiece)) {
+                addPossibleJump(jumps, step);
+            }
+        } else {
+            // with two kinds of pieces, the required one is the other one
+            metrics.countMoveGeneration();
+            for (Position p : getPositionsOf(movingPiece)) {
+                if (positions.isBoard(p)) {
+                    Collections.addAll(jumps, moves.getJumps(p, this));
+                }
+            }
         }
         return jumps;
     }
@@ -153,15 +358,31 @@ public final class GameTable {
     }
 
     public boolean isStepAlongLine(Move move) {
-        return move.isStep() && (move.p1().hasEvenCoordSum() || move.isOneDimensional())
-                && positions.isBoardMove(move);
+        return positions.isStepAlongLine(move);
     }
 
     public void reset() {
         for (Piece[] pieces : grid) {
             Arrays.fill(pieces, null);
         }
+        for (BitSet index : pieceIndex) {
+            index.clear();
+        }
+        Arrays.fill(borderCount, 0);
+        key = 0;
+        moves.clear();
+        threats = null;
+        regions = null;
+        startPly = 0;
         setupMethod.accept(this);
+        ply = startPly;
+        games++;
+        // copies have no history and share the original's repetitions
+        if (history != null) {
+            history.clear(this, startPly);
+            repetitions.clear(getRepetitionKey(), ply, getPieceCount());
+        }
+        publish(null, null, null);
     }
 
     public Piece get(Position p) {
@@ -169,7 +390,176 @@ public final class GameTable {
     }
 
     public void set(Position p, Piece piece) {
+        final Piece old = grid[p.x()][p.y()];
+        if (old == piece) {
+            return;
+        }
+        final boolean border = positions.isBorder(p);
+        final boolean borderWasEmpty = border && isBorderEmpty();
+        final int index = positions.indexOf(p);
+        if (old != null) {
+            key ^= positions.getKey(index, old);
+            pieceIndex[old.ordinal()].clear(index);
+            if (border) {
+                borderCount[old.ordinal()]--;
+            }
+        }
+        if (piece != null) {
+            key ^= positions.getKey(index, piece);
+            pieceIndex[piece.ordinal()].set(index);
+            if (border) {
+                borderCount[piece.ordinal()]++;
+            }
+        }
         grid[p.x()][p.y()] = piece;
+        if (border && borderWasEmpty != isBorderEmpty()) {
+            // prey may step only once all are placed, which changes targets anywhere
+            moves.clear();
+        } else {
+            moves.changed(p);
+        }
+        if (threats != null) {
+            threats.changed(p);
+        }
+        if (regions != null) {
+            regions.changed(p, old, piece);
+        }
+    }
+
+    /**
+     * @return positions occupied by the piece, in the order of {@link TablePositions#getAll()}
+     */
+    public List<Position> getPositionsOf(Piece piece) {
+        final BitSet index = pieceIndex[piece.ordinal()];
+        final List<Position> list = new ArrayList<>(index.cardinality());
+        for (int i = index.nextSetBit(0); i >= 0; i = index.nextSetBit(i + 1)) {
+            list.add(positions.get(i));
+        }
+        return list;
+    }
+
+    public List<Position> getEmptyBoardPositions() {
+        final BitSet empty = positions.getBoardIndexes();
+        for (BitSet index : pieceIndex) {
+            empty.andNot(index);
+        }
+        final List<Position> list = new ArrayList<>(empty.cardinality());
+        for (int i = empty.nextSetBit(0); i >= 0; i = empty.nextSetBit(i + 1)) {
+            list.add(positions.get(i));
+        }
+        return list;
+    }
+
+    /**
+     * @return the moves of the piece from its board positions and from its first border position
+     */
+    public List<Move> getLegalMoves(Piece piece) {
+        final Position borderPosition = getBorderPosition(piece);
+        final List<Move> list = new ArrayList<>();
+        for (Position source : getPositionsOf(piece)) {
+            if (positions.isBoard(source) || source.equals(borderPosition)) {
+                for (Position target : getLegalTargets(source, piece)) {
+                    list.add(new Move(source, target));
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * @return the empty positions the piece may move to from the source, in table order
+     */
+    public List<Position> getLegalTargets(Position source, Piece piece) {
+        final BitSet empty = new BitSet(positions.size());
+        if (positions.isBoard(source)) {
+            // only placements from the border reach further than a jump
+            final int yFrom = Math.max(0, source.y() - 2);
+            final int yTo = Math.min(positions.getYSize() - 1, source.y() + 2);
+            for (int x = Math.max(0, source.x() - 2); x <= Math.min(positions.getXSize() - 1, source.x() + 2); x++) {
+                empty.set(positions.indexOf(x, yFrom), positions.indexOf(x, yTo) + 1);
+            }
+        } else {
+            empty.set(0, positions.size());
+        }
+        for (BitSet index : pieceIndex) {
+            empty.andNot(index);
+        }
+        final List<Position> targets = new ArrayList<>();
+        for (int i = empty.nextSetBit(0); i >= 0; i = empty.nextSetBit(i + 1)) {
+            final Position target = positions.get(i);
+            if (isValid(new Move(source, target), piece)) {
+                targets.add(target);
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * @return true if a prey on this board position could be jumped over, now or later
+     */
+    public boolean isExposed(Position p) {
+        return threats().isExposed(p, this);
+    }
+
+    /**
+     * @return true if a prey on this board position could be jumped over right away
+     */
+    public boolean isAttacked(Position p) {
+        return threats().isAttacked(p, this);
+    }
+
+    /**
+     * @return the steps and jumps the predators on the board have
+     */
+    public int getPredatorMobility() {
+        return regions().getMobility(this);
+    }
+
+    /**
+     * @return empty board cells connected along lines to where the predators can move
+     */
+    public int getPredatorReach() {
+        return regions().getReach(this);
+    }
+
+    /**
+     * @return predators on the board without a move
+     */
+    public int getTrappedPredatorCount() {
+        return regions().getTrappedCount(this);
+    }
+
+    /**
+     * @return true if there are predators on the board and none of them can move
+     */
+    public boolean arePredatorsTrapped() {
+        return regions().isAllTrapped(this);
+    }
+
+    private PredatorRegions regions() {
+        if (regions == null) {
+            regions = new PredatorRegions(positions, this);
+        }
+        return regions;
+    }
+
+    private ThreatMap threats() {
+        if (threats == null) {
+            threats = new ThreatMap(positions);
+        }
+        return threats;
+    }
+
+    public int getCount(Piece piece) {
+        return pieceIndex[piece.ordinal()].cardinality();
+    }
+
+    /**
+     * @return pieces not yet placed on the board: visible on the border plus hidden behind them
+     */
+    public int getOffBoardCount(Piece piece) {
+        final int visible = borderCount[piece.ordinal()];
+        return visible > 0 ? visible + hiddenBorderPieceCount : 0;
     }
 
     private void clear(Position p) {
@@ -180,30 +570,46 @@ public final class GameTable {
         return get(p) == null;
     }
 
-    public boolean isValid(Move move, MoveConstraints piece) {
-        try {
-            return not(move.isStationary()) && isEmptyAt(move.p2()) && piece.isValid(move, this);
-        } catch (ArrayIndexOutOfBoundsException e) {
+    public boolean isValid(Move move, Piece piece) {
+        // the rules read the target and the cell a jump passes over, so both must be on the table
+        if (not(positions.isOnTable(move.p2())) || not(positions.isOnTable(move.middle()))) {
             return false;
         }
+        if (positions.isOnTable(move.p1()) && MoveCache.isNear(move.p1(), move.p2())) {
+            return moves.isTarget(move.p1(), move.p2(), piece, this);
+        }
+        // only placements from the border reach further than a jump
+        return not(move.isStationary()) && isEmptyAt(move.p2()) && piece.isValid(move, this);
     }
 
     boolean isBorderEmpty() {
-        for (Position p : positions.getBorder()) {
-            if (get(p) != null) {
+        for (int count : borderCount) {
+            if (count > 0) {
                 return false;
             }
         }
         return true;
     }
 
+    /**
+     * @return the first position of the piece in {@link TablePositions#getBorder()} order
+     */
     public Position getBorderPosition(Piece piece) {
-        for (Position p : positions.getBorder()) {
-            if (get(p) == piece) {
-                return p;
+        if (borderCount[piece.ordinal()] == 0) {
+            return null;
+        }
+        Position borderCorner = null;
+        for (Position p : getPositionsOf(piece)) {
+            if (positions.isBorder(p)) {
+                if (not(positions.isBorderCorner(p))) {
+                    return p;
+                }
+                if (borderCorner == null) {
+                    borderCorner = p;
+                }
             }
         }
-        return null;
+        return borderCorner;
     }
 
     public int getBoardXSize() {
@@ -222,13 +628,25 @@ public final class GameTable {
         return grid[0].length;
     }
 
-    private final Collection<Runnable> discardListeners = new ArrayList<>();
+    // added and removed by the game loop thread, run by the EDT or the flag-fall timer
+    private final Collection<Runnable> discardListeners = new CopyOnWriteArrayList<>();
 
     public void addDiscardListener(Runnable listener) {
         discardListeners.add(listener);
     }
 
+    public void removeDiscardListener(Runnable listener) {
+        discardListeners.remove(listener);
+    }
+
     public void discard() {
+        interruptTurn();
+    }
+
+    /**
+     * Ends a user's pending turn without a move
+     */
+    public void interruptTurn() {
         discardListeners.forEach(Runnable::run);
     }
 
@@ -237,14 +655,7 @@ public final class GameTable {
     }
 
     public Iterable<Move> getStepsAlongLineFrom(Position p) {
-        final Collection<Move> steps = new ArrayList<>();
-        for (Direction d : directions) {
-            final Move m = new Move(p, d.addTo(p));
-            if (isStepAlongLine(m)) {
-                steps.add(m);
-            }
-        }
-        return steps;
+        return positions.getStepsAlongLineFrom(p);
     }
 
     public int getMaxStepFromCorner() {
@@ -1,24 +1,76 @@
 package org.oldo.baghchal.model;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
- * Phases of the game (beginning, middle, end)
+ * Phases of the game (beginning, middle, end), or in puzzle mode one solved position per level
  */
 public final class Levels {
 
     private final int maxLevel;
+    private final List<Puzzle> puzzles;
 
     private int level;
     private boolean levelDone;
+    // the last game was drawn and started over, which does not finish the level
+    private boolean drawn;
 
     public Levels(int maxLevel) {
+        this(maxLevel, Collections.emptyList());
+    }
+
+    private Levels(int maxLevel, List<Puzzle> puzzles) {
         this.maxLevel = maxLevel;
+        this.puzzles = puzzles;
         firstLevel();
     }
 
+    /**
+     * @return levels for the puzzles in the resource, in the order listed
+     */
+    public static Levels loadPuzzles(URL resource) {
+        final List<String> lines = new ArrayList<>();
+        try (final BufferedReader reader = new BufferedReader(
+                new InputStreamReader(resource.openStream(), StandardCharsets.UTF_8))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                lines.add(line);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read puzzles from " + resource, e);
+        }
+        final List<Puzzle> puzzles = Puzzle.parse(lines);
+        if (puzzles.isEmpty()) {
+            throw new IllegalArgumentException("No puzzles in " + resource);
+        }
+        return new Levels(puzzles.size(), puzzles);
+    }
+
+    /**
+     * @return the puzzle of the current level, or null if not in puzzle mode
+     */
+    public Puzzle getPuzzle() {
+        return puzzles.isEmpty() ? null : puzzles.get(level - 1);
+    }
+
     public boolean isLevelDone() {
         return levelDone;
     }
 
+    public boolean isDrawn() {
+        return drawn;
+    }
+
+    public void setDrawn(boolean drawn) {
+        this.drawn = drawn;
+    }
+
     public int getLevel() {
         return level;
     }
@@ -26,6 +78,7 @@ public final class Levels {
     public void nextLevel() {
         if (!isGameOver()) {
             levelDone = false;
+            drawn = false;
             level++;
         }
     }
@@ -37,9 +90,13 @@ public final class Levels {
     public void firstLevel() {
         level = 1;
         levelDone = false;
+        drawn = false;
     }
 
     public String getLevelEndMessage() {
+        if (drawn && !levelDone) {
+            return "Draw! The game starts over";
+        }
         return isGameOver() ? "You won Bagh-Chal!" : "Now try level " + (level + 1);
     }
 
@@ -47,4 +104,15 @@ public final class Levels {
         this.levelDone = levelDone;
     }
 
+    /**
+     * Continues a saved game
+     */
+    public void restore(int level, boolean levelDone) {
+        if (level < 1 || level > maxLevel) {
+            throw new IllegalArgumentException("No such level: " + level);
+        }
+        this.level = level;
+        this.levelDone = levelDone;
+    }
+
 }
@@ -0,0 +1,187 @@
+package org.oldo.baghchal.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * Steps and jumps available from each board cell and the legal targets near each
+ * table cell, recomputed only for cells near a changed cell. Entries are never
+ * modified once stored, so copies share them. Run with -Dbaghchal.checkMoves=true
+ * to verify each cached entry against a full recompute.
+ */
+final class MoveCache {
+
+    private static final boolean CHECK = Boolean.getBoolean("baghchal.checkMoves");
+
+    private final TablePositions positions;
+
+    private final Move[][] steps;
+    private final Move[][] jumps;
+    private final BitSet valid;
+
+    // per piece and source cell: the legal targets within two cells, one bit per cell of the 5x5 block
+    private final int[][] targets;
+    private final BitSet[] targetsValid;
+
+    MoveCache(TablePositions positions) {
+        this.positions = positions;
+        steps = new Move[positions.size()][];
+        jumps = new Move[positions.size()][];
+        valid = new BitSet(positions.size());
+        targets = new int[Piece.values().length][positions.size()];
+        targetsValid = new BitSet[Piece.values().length];
+        for (int i = 0; i < targetsValid.length; i++) {
+            targetsValid[i] = new BitSet(positions.size());
+        }
+    }
+
+    MoveCache(MoveCache cache) {
+        positions = cache.positions;
+        steps = cache.steps.clone();
+        jumps = cache.jumps.clone();
+        valid = (BitSet) cache.valid.clone();
+        targets = new int[cache.targets.length][];
+        targetsValid = new BitSet[cache.targetsValid.length];
+        for (int i = 0; i < targets.length; i++) {
+            targets[i] = cache.targets[i].clone();
+            targetsValid[i] = (BitSet) cache.targetsValid[i].clone();
+        }
+    }
+
+    /**
+     * Steps, jumps and targets depend on the cells up to two away (and jumps on the
+     * piece on the cell itself), so a change invalidates the 5x5 block around it.
+     */
+    void changed(Position p) {
+        final int yFrom = max(0, p.y() - 2);
+        final int yTo = min(positions.getYSize() - 1, p.y() + 2);
+        for (int x = max(0, p.x() - 2); x <= min(positions.getXSize() - 1, p.x() + 2); x++) {
+            final int from = positions.indexOf(x, yFrom);
+            final int to = positions.indexOf(x, yTo) + 1;
+            valid.clear(from, to);
+            for (BitSet t : targetsValid) {
+                t.clear(from, to);
+            }
+        }
+    }
+
+    void clear() {
+        valid.clear();
+        for (BitSet t : targetsValid) {
+            t.clear();
+        }
+    }
+
+    static boolean isNear(Position p1, Position p2) {
+        return abs(p2.x() - p1.x()) <= 2 && abs(p2.y() - p1.y()) <= 2;
+    }
+
+    /**
+     * @param p1 source on the table
+     * @param p2 target on the table and near the source
+     */
+    boolean isTarget(Position p1, Position p2, Piece piece, GameTable table) {
+        final int index = positions.indexOf(p1);
+        final int[] masks = targets[piece.ordinal()];
+        final BitSet validMasks = targetsValid[piece.ordinal()];
+        if (!validMasks.get(index)) {
+            masks[index] = computeTargets(p1, piece, table);
+            validMasks.set(index);
+        } else if (CHECK) {
+            final int expected = computeTargets(p1, piece, table);
+            if (masks[index] != expected) {
+                throw new IllegalStateException(String.format("Stale %s targets from %s: cached %x, expected %x%n%s",
+                        piece, p1, masks[index], expected, table));
+            }
+        }
+        return (masks[index] & bit(p2.x() - p1.x(), p2.y() - p1.y())) != 0;
+    }
+
+    private int computeTargets(Position p1, Piece piece, GameTable table) {
+        int mask = 0;
+        for (int dx = -2; dx <= 2; dx++) {
+            for (int dy = -2; dy <= 2; dy++) {
+                final Position p2 = new Position(p1.x() + dx, p1.y() + dy);
+                if ((dx != 0 || dy != 0) && positions.isOnTable(p2) && table.isEmptyAt(p2)
+                        && piece.isValid(new Move(p1, p2), table)) {
+                    mask |= bit(dx, dy);
+                }
+            }
+        }
+        return mask;
+    }
+
+    private static int bit(int dx, int dy) {
+        return 1 << ((dx + 2) * 5 + dy + 2);
+    }
+
+    /**
+     * @return steps along lines from the board position to empty neighbours
+     */
+    Move[] getSteps(Position p, GameTable table) {
+        return steps[refresh(p, table)];
+    }
+
+    /**
+     * @return jumps from the board position over a piece other than its own to empty cells
+     */
+    Move[] getJumps(Position p, GameTable table) {
+        return jumps[refresh(p, table)];
+    }
+
+    private int refresh(Position p, GameTable table) {
+        final int index = positions.indexOf(p);
+        if (!valid.get(index)) {
+            steps[index] = computeSteps(p, table);
+            jumps[index] = computeJumps(p, table);
+            valid.set(index);
+        } else if (CHECK) {
+            check(p, steps[index], computeSteps(p, table), table);
+            check(p, jumps[index], computeJumps(p, table), table);
+        }
+        return index;
+    }
+
+    private Move[] computeSteps(Position p, GameTable table) {
+        final List<Move> list = new ArrayList<>();
+        for (Direction d : Direction.values()) {
+            final Move step = new Move(p, d.addTo(p));
+            if (positions.isStepAlongLine(step) && table.isEmptyAt(step.p2())) {
+                list.add(step);
+            }
+        }
+        return list.toArray(new Move[0]);
+    }
+
+    private Move[] computeJumps(Position p, GameTable table) {
+        final Piece piece = table.get(p);
+        final List<Move> list = new ArrayList<>();
+        for (Direction d : Direction.values()) {
+            final Move step = new Move(p, d.addTo(p));
+            if (positions.isStepAlongLine(step)) {
+                final Piece over = table.get(step.p2());
+                if (over != null && over != piece) {
+                    table.addPossibleJump(list, step);
+                }
+            }
+        }
+        return list.toArray(new Move[0]);
+    }
+
+    private static void check(Position p, Move[] cached, Move[] computed, GameTable table) {
+        boolean same = cached.length == computed.length;
+        for (int i = 0; same && i < cached.length; i++) {
+            same = cached[i].p1().equals(computed[i].p1()) && cached[i].p2().equals(computed[i].p2());
+        }
+        if (!same) {
+            throw new IllegalStateException(String.format("Stale moves from %s: cached %s, expected %s%n%s",
+                    p, Arrays.toString(cached), Arrays.toString(computed), table));
+        }
+    }
+}
@@ -20,12 +20,28 @@ public enum Piece implements MoveConstraints {
         }
     };
 
+    private static final Piece[] PIECES = values();
+
     private final char c;
 
     Piece(char c) {
         this.c = c;
     }
 
+    /**
+     * @return the piece to move after the given number of plies, taking turns in the order of the pieces
+     */
+    public static Piece toMove(int ply) {
+        return PIECES[ply % PIECES.length];
+    }
+
+    /**
+     * @return the opponent's piece
+     */
+    public Piece other() {
+        return PIECES[(ordinal() + 1) % PIECES.length];
+    }
+
     public char asChar() {
         return c;
     }
@@ -3,9 +3,14 @@ package org.oldo.baghchal.model;
 import org.guppy4j.log.Log;
 import org.guppy4j.log.LogProvider;
 import org.oldo.baghchal.control.Player;
+import org.oldo.baghchal.control.ThinkingTime;
+import org.oldo.baghchal.control.TimeManager;
+import org.oldo.baghchal.metrics.AiDecisionEvent;
+import org.oldo.baghchal.metrics.GameMetrics;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static org.guppy4j.log.Log.Level.debug;
 
@@ -14,7 +19,11 @@ import static org.guppy4j.log.Log.Level.debug;
  */
 public final class Players {
 
+    private static final long COMPUTER_TURN_NANOS = TimeUnit.SECONDS.toNanos(3);
+
     private final Log log;
+    private final GameMetrics metrics;
+    private final TimeManager timeManager;
 
     private final List<Piece> pieces = Arrays.asList(Piece.values());
 
@@ -26,10 +35,12 @@ public final class Players {
     private Player preyPlayer;
     private Player predatorPlayer;
 
-    public Players(LogProvider logProvider,
+    public Players(LogProvider logProvider, GameMetrics metrics, TimeManager timeManager,
                    Player preyStrategy, Player preyUser,
                    Player predatorStrategy, Player predatorUser) {
         log = logProvider.getLog(getClass());
+        this.metrics = metrics;
+        this.timeManager = timeManager;
         this.preyStrategy = preyStrategy;
         this.preyUser = preyUser;
         this.predatorStrategy = predatorStrategy;
@@ -43,6 +54,13 @@ public final class Players {
         return pieces;
     }
 
+    /**
+     * @return the piece to move after the given number of moves, taking turns in the order of the pieces
+     */
+    public Piece getPieceToMove(int ply) {
+        return Piece.toMove(ply);
+    }
+
     public void setPlayedByComputer(Piece piece, boolean computer) {
         if (piece == Piece.PREDATOR) {
             predatorPlayer = computer ? predatorStrategy : predatorUser;
@@ -56,19 +74,55 @@ public final class Players {
         return getPlayer(piece).isComputer();
     }
 
-    public Move play(GameTable gameTable, Piece piece) {
+    /**
+     * @param clock the clock of the game, running for the piece
+     */
+    public Move play(GameTable gameTable, Piece piece, GameClock clock) {
         final Player player = getPlayer(piece);
         if (player.isComputer()) {
-            sleepSeconds(3);
+            final long turnStart = System.nanoTime();
+            final ThinkingTime time = timeManager.allocate(gameTable, piece, clock);
+            final AiDecisionEvent event = new AiDecisionEvent();
+            event.begin();
+            final long start = metrics.startThink();
+            final Move move = player.play(gameTable, time);
+            metrics.recordThink(start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.player = piece.name();
+                event.depth = player.getSearchDepth();
+                event.nodes = start != 0 ? metrics.getLastThinkNodes() : -1;
+                event.move = String.valueOf(move);
+                event.commit();
+            }
+            // thinking overlaps with the pause (and the animation of the previous move), which is on the clock
+            sleepRemaining(turnStart, Math.min(COMPUTER_TURN_NANOS, time.getSoftNanos()));
+            return move;
         }
         return player.play(gameTable);
     }
 
-    private void sleepSeconds(int seconds) {
-        try {
-            Thread.sleep(seconds * 1000L);
-        } catch (InterruptedException e) {
-            log.as(debug, e);
+    /**
+     * Tells the players of both pieces of a move made on the table
+     */
+    public void moveMade(GameTable gameTable, Move move) {
+        preyPlayer.moveMade(gameTable, move);
+        predatorPlayer.moveMade(gameTable, move);
+    }
+
+    public void gameStarted(GameTable gameTable) {
+        preyPlayer.gameStarted(gameTable);
+        predatorPlayer.gameStarted(gameTable);
+    }
+
+    private void sleepRemaining(long start, long nanos) {
+        final long remaining = nanos - (System.nanoTime() - start);
+        if (remaining > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(remaining);
+            } catch (InterruptedException e) {
+                log.as(debug, e);
+            }
         }
     }
 
@@ -0,0 +1,234 @@
+package org.oldo.baghchal.model;
+
+import static org.oldo.baghchal.model.Piece.PREDATOR;
+import static org.oldo.baghchal.model.Piece.PREY;
+
+/**
+ * Regions of empty board cells connected along lines, and the moves of the predators into them.
+ * A cell that fills may split its region, which is flooded again from the cell's neighbours;
+ * a cell that empties joins the regions around it into the largest of them. The predators'
+ * moves and reach are counted again only when asked for after a change.
+ */
+final class PredatorRegions {
+
+    private final TablePositions positions;
+
+    // per cell index: label of the region of an empty board cell, 0 if occupied or not on the board
+    private final int[] region;
+    // per label: cells in the region
+    private final int[] sizes;
+    // labels not in use, as a stack
+    private final int[] free;
+    private int freeCount;
+
+    // per label: the count in which its region was last added to the reach
+    private final int[] seen;
+    private int stamp;
+
+    // cells to flood, kept to avoid allocation
+    private final int[] queue;
+
+    private boolean counted;
+    private int predators;
+    private int mobility;
+    private int reach;
+    private int trapped;
+
+    PredatorRegions(TablePositions positions, GameTable table) {
+        this.positions = positions;
+        region = new int[positions.size()];
+        sizes = new int[positions.size() + 1];
+        free = new int[positions.size()];
+        seen = new int[positions.size() + 1];
+        queue = new int[positions.size()];
+        for (int label = positions.size(); label > 0; label--) {
+            free[freeCount++] = label;
+        }
+        for (Position p : positions.getBoard()) {
+            final int index = positions.indexOf(p);
+            if (table.isEmptyAt(p) && region[index] == 0) {
+                final int label = allocate();
+                region[index] = label;
+                sizes[label] = 1;
+                flood(index, 0, label, table);
+            }
+        }
+    }
+
+    PredatorRegions(PredatorRegions regions) {
+        positions = regions.positions;
+        region = regions.region.clone();
+        sizes = regions.sizes.clone();
+        free = regions.free.clone();
+        freeCount = regions.freeCount;
+        seen = regions.seen.clone();
+        stamp = regions.stamp;
+        queue = new int[regions.queue.length];
+        counted = regions.counted;
+        predators = regions.predators;
+        mobility = regions.mobility;
+        reach = regions.reach;
+        trapped = regions.trapped;
+    }
+
+    void changed(Position p, Piece old, Piece piece) {
+        // any piece may open or close a predator's move, also on the border
+        counted = false;
+        if (positions.isBoard(p) && (old == null) != (piece == null)) {
+            if (piece == null) {
+                join(positions.indexOf(p));
+            } else {
+                split(positions.indexOf(p));
+            }
+        }
+    }
+
+    int getMobility(GameTable table) {
+        count(table);
+        return mobility;
+    }
+
+    int getReach(GameTable table) {
+        count(table);
+        return reach;
+    }
+
+    int getTrappedCount(GameTable table) {
+        count(table);
+        return trapped;
+    }
+
+    boolean isAllTrapped(GameTable table) {
+        count(table);
+        return predators > 0 && trapped == predators;
+    }
+
+    private void split(int index) {
+        final int label = region[index];
+        region[index] = 0;
+        sizes[label]--;
+        int emptyNeighbours = 0;
+        for (int n : positions.getLineNeighbours(index)) {
+            if (region[n] != 0) {
+                emptyNeighbours++;
+            }
+        }
+        if (emptyNeighbours > 1) {
+            // the cells left may no longer be connected, so each part gets a label of its own
+            for (int n : positions.getLineNeighbours(index)) {
+                if (region[n] == label) {
+                    final int part = allocate();
+                    region[n] = part;
+                    sizes[part] = 1;
+                    flood(n, label, part, null);
+                }
+            }
+            release(label);
+        } else if (sizes[label] == 0) {
+            release(label);
+        }
+    }
+
+    private void join(int index) {
+        int label = 0;
+        for (int n : positions.getLineNeighbours(index)) {
+            if (region[n] != 0 && (label == 0 || sizes[region[n]] > sizes[label])) {
+                label = region[n];
+            }
+        }
+        if (label == 0) {
+            label = allocate();
+        }
+        region[index] = label;
+        sizes[label]++;
+        for (int n : positions.getLineNeighbours(index)) {
+            final int other = region[n];
+            if (other != 0 && other != label) {
+                region[n] = label;
+                sizes[label]++;
+                flood(n, other, label, null);
+                release(other);
+            }
+        }
+    }
+
+    /**
+     * Relabels the cells connected to the start cell (already relabelled) that have the old
+     * label, or when building (old label 0) the empty board cells of the table without one
+     */
+    private void flood(int start, int from, int to, GameTable table) {
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        while (head < tail) {
+            for (int n : positions.getLineNeighbours(queue[head++])) {
+                if (region[n] == from && (table == null || table.isEmptyAt(positions.get(n)))) {
+                    region[n] = to;
+                    sizes[to]++;
+                    queue[tail++] = n;
+                }
+            }
+        }
+    }
+
+    private int allocate() {
+        return free[--freeCount];
+    }
+
+    private void release(int label) {
+        sizes[label] = 0;
+        free[freeCount++] = label;
+    }
+
+    private void count(GameTable table) {
+        if (counted) {
+            return;
+        }
+        stamp++;
+        predators = 0;
+        mobility = 0;
+        reach = 0;
+        trapped = 0;
+        for (Position p : table.getPositionsOf(PREDATOR)) {
+            if (positions.isBoard(p)) {
+                predators++;
+                final int moves = countMoves(p, table);
+                mobility += moves;
+                if (moves == 0) {
+                    trapped++;
+                }
+            }
+        }
+        counted = true;
+    }
+
+    /**
+     * @return the steps along lines and the jumps over prey from the board position, as
+     * allowed by {@link Piece#PREDATOR}, while adding the regions they lead into to the reach
+     */
+    private int countMoves(Position p, GameTable table) {
+        int moves = 0;
+        for (Direction d : Direction.values()) {
+            final Position next = d.addTo(p);
+            if (positions.isStepAlongLine(new Move(p, next)) && table.isEmptyAt(next)) {
+                moves++;
+                addReach(next);
+            } else if (positions.isOnTable(next) && table.get(next) == PREY) {
+                final Position beyond = d.addTo(next);
+                if (positions.isOnTable(beyond) && table.isEmptyAt(beyond)) {
+                    moves++;
+                    addReach(beyond);
+                }
+            }
+        }
+        return moves;
+    }
+
+    private void addReach(Position p) {
+        final int label = region[positions.indexOf(p)];
+        if (label != 0 && seen[label] != stamp) {
+            seen[label] = stamp;
+            reach += sizes[label];
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package org.oldo.baghchal.model;
+
+import org.oldo.g2d.IntPair;
+import org.oldo.g2d.Size;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.oldo.baghchal.model.Piece.PREDATOR;
+import static org.oldo.baghchal.model.Piece.PREY;
+
+/**
+ * A position from which the attacking piece is proven to reach its goal within a number
+ * of plies: capture the given number of prey or, if none are to be captured, leave the
+ * predators without a move.
+ * <p>
+ * One puzzle per line: board width and height, start ply, hidden border pieces, attacker,
+ * captures, plies and the table cells in {@link TablePositions#getAll()} order
+ * ('.' empty, 'o' prey, 'X' predator).
+ */
+public final class Puzzle {
+
+    private static final String CELLS = ".oX";
+
+    private final int boardX;
+    private final int boardY;
+    private final int startPly;
+    private final int hiddenBorderPieceCount;
+    private final Piece attacker;
+    private final int captures;
+    private final int plies;
+    private final String cells;
+
+    private Puzzle(int boardX, int boardY, int startPly, int hiddenBorderPieceCount,
+                   Piece attacker, int captures, int plies, String cells) {
+        if (cells.length() != (boardX + 2) * (boardY + 2)) {
+            throw new IllegalArgumentException("Expected " + (boardX + 2) * (boardY + 2) + " cells: " + cells);
+        }
+        this.boardX = boardX;
+        this.boardY = boardY;
+        this.startPly = startPly;
+        this.hiddenBorderPieceCount = hiddenBorderPieceCount;
+        this.attacker = attacker;
+        this.captures = captures;
+        this.plies = plies;
+        this.cells = cells;
+    }
+
+    /**
+     * @param ply plies played on the table so far, which tells whose move it is
+     */
+    public static Puzzle of(GameTable table, int ply, Piece attacker, int captures, int plies) {
+        final StringBuilder cells = new StringBuilder();
+        for (Position p : table.getPositions().getAll()) {
+            final Piece piece = table.get(p);
+            cells.append(CELLS.charAt(piece == null ? 0 : piece.ordinal() + 1));
+        }
+        return new Puzzle(table.getBoardXSize(), table.getBoardYSize(), ply, table.getHiddenBorderPieceCount(),
+                attacker, captures, plies, cells.toString());
+    }
+
+    public static Puzzle parse(String line) {
+        final String[] fields = line.trim().split("\\s+");
+        if (fields.length != 8) {
+            throw new IllegalArgumentException("Not a puzzle: " + line);
+        }
+        return new Puzzle(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]),
+                Integer.parseInt(fields[2]), Integer.parseInt(fields[3]), Piece.valueOf(fields[4]),
+                Integer.parseInt(fields[5]), Integer.parseInt(fields[6]), fields[7]);
+    }
+
+    public static List<Puzzle> parse(Iterable<String> lines) {
+        final List<Puzzle> puzzles = new ArrayList<>();
+        for (String line : lines) {
+            if (!line.trim().isEmpty() && !line.startsWith("#")) {
+                puzzles.add(parse(line));
+            }
+        }
+        return puzzles;
+    }
+
+    public boolean fits(GameTable table) {
+        return table.getBoardXSize() == boardX && table.getBoardYSize() == boardY;
+    }
+
+    /**
+     * Puts the puzzle's pieces on an empty table, as its setup method
+     */
+    public void setUp(GameTable table) {
+        int i = 0;
+        for (Position p : table.getPositions().getAll()) {
+            final int code = CELLS.indexOf(cells.charAt(i++));
+            table.set(p, code == 0 ? null : Piece.values()[code - 1]);
+        }
+        table.setHiddenBorderPieceCount(hiddenBorderPieceCount);
+        table.setStartPly(startPly);
+    }
+
+    public Size getBoardSize() {
+        return new IntPair(boardX, boardY);
+    }
+
+    public Piece getAttacker() {
+        return attacker;
+    }
+
+    public int getCaptures() {
+        return captures;
+    }
+
+    public int getPlies() {
+        return plies;
+    }
+
+    public int getStartPly() {
+        return startPly;
+    }
+
+    /**
+     * @param toMove the piece whose turn it is on the table
+     */
+    public boolean isSolved(GameTable table, Piece toMove) {
+        if (captures > 0) {
+            return getPreyCount(table) <= getStartPreyCount() - captures;
+        }
+        return toMove == PREDATOR && table.getLegalMoves(PREDATOR).isEmpty();
+    }
+
+    /**
+     * @return true if the attacker used up its plies without reaching the goal
+     */
+    public boolean isFailed(GameTable table, Piece toMove) {
+        return table.getHistory().getPly() - startPly >= plies && !isSolved(table, toMove);
+    }
+
+    private int getStartPreyCount() {
+        int count = hiddenBorderPieceCount;
+        for (int i = 0; i < cells.length(); i++) {
+            if (CELLS.indexOf(cells.charAt(i)) == PREY.ordinal() + 1) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int getPreyCount(GameTable table) {
+        return table.getCount(PREY) + table.getHiddenBorderPieceCount();
+    }
+
+    @Override
+    public String toString() {
+        return boardX + " " + boardY + " " + startPly + " " + hiddenBorderPieceCount + " "
+                + attacker + " " + captures + " " + plies + " " + cells;
+    }
+}
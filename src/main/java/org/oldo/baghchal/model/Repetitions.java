@@ -0,0 +1,141 @@
+package org.oldo.baghchal.model;
+
+/**
+ * Positions of the game in play since the last capture, for the draw rules: the same position
+ * with the same side to move for the third time, or a number of plies without a capture.
+ * <p>
+ * The keys of the latest positions are kept in a ring buffer by ply, and how often each was
+ * seen in an open-addressing table. The table is emptied by starting a new generation, and
+ * rebuilt from the ring once its slots are half full, which takes at least as many plies as the
+ * ring holds.
+ * Run with -Dbaghchal.drawPlies=n to change the plies without a capture that make a draw.
+ */
+final class Repetitions {
+
+    static final int DRAW_PLIES = Integer.getInteger("baghchal.drawPlies", 100);
+
+    private static final int REPEATS = 3;
+
+    private final long[] ring;
+    private final int ringMask;
+
+    private final long[] slotKeys;
+    private final int[] slotCounts;
+    private final int[] slotGenerations;
+    private final int slotMask;
+    private int generation;
+    private int usedSlots;
+
+    // plies of the oldest position in the ring, of the latest and of the last capture
+    private int firstPly;
+    private int lastPly;
+    private int capturePly;
+    // pieces on and off the board, which only a capture changes
+    private int pieceCount;
+
+    Repetitions() {
+        final int capacity = Integer.highestOneBit(Math.max(DRAW_PLIES, 1)) * 2;
+        ring = new long[capacity];
+        ringMask = capacity - 1;
+        slotKeys = new long[capacity * 4];
+        slotCounts = new int[capacity * 4];
+        slotGenerations = new int[capacity * 4];
+        slotMask = capacity * 4 - 1;
+    }
+
+    /**
+     * Starts over at a position that cannot have occurred before
+     */
+    void clear(long key, int ply, int pieceCount) {
+        generation++;
+        usedSlots = 0;
+        firstPly = ply;
+        capturePly = ply;
+        this.pieceCount = pieceCount;
+        add(key, ply);
+    }
+
+    /**
+     * Adds the position after the move to the given ply
+     */
+    void record(long key, int ply, int pieceCount) {
+        if (pieceCount != this.pieceCount || ply != lastPly + 1) {
+            // positions before a capture do not come back, and a jump in plies starts over
+            clear(key, ply, pieceCount);
+            return;
+        }
+        if (ply - firstPly == ring.length) {
+            remove(ring[firstPly & ringMask]);
+            firstPly++;
+        }
+        add(key, ply);
+    }
+
+    /**
+     * @param ply the ply of the position, at or after the latest recorded one
+     * @return true if the position would end the game in a draw
+     */
+    boolean isDrawn(long key, int ply, int pieceCount) {
+        if (pieceCount != this.pieceCount || ply < lastPly) {
+            // a capture on the way there starts the count over
+            return false;
+        }
+        final int seen = getCount(key) + (ply > lastPly ? 1 : 0);
+        return seen >= REPEATS || ply - capturePly >= DRAW_PLIES;
+    }
+
+    private void add(long key, int ply) {
+        ring[ply & ringMask] = key;
+        lastPly = ply;
+        final int slot = find(key);
+        if (slotGenerations[slot] != generation) {
+            slotGenerations[slot] = generation;
+            slotKeys[slot] = key;
+            slotCounts[slot] = 0;
+            if (++usedSlots > 2 * ring.length) {
+                rebuild();
+                return;
+            }
+        }
+        slotCounts[slot]++;
+    }
+
+    private void remove(long key) {
+        slotCounts[find(key)]--;
+    }
+
+    private int getCount(long key) {
+        final int slot = find(key);
+        return slotGenerations[slot] == generation ? slotCounts[slot] : 0;
+    }
+
+    /**
+     * @return the slot of the key, or the free slot where it belongs
+     */
+    private int find(long key) {
+        int slot = (int) (key ^ key >>> 32) & slotMask;
+        while (slotGenerations[slot] == generation && slotKeys[slot] != key) {
+            slot = (slot + 1) & slotMask;
+        }
+        return slot;
+    }
+
+    /**
+     * Drops the slots of positions that left the ring
+     */
+    private void rebuild() {
+        generation++;
+        usedSlots = 0;
+        for (int ply = firstPly; ply <= lastPly; ply++) {
+            final long key = ring[ply & ringMask];
+            final int slot = find(key);
+            if (slotGenerations[slot] != generation) {
+                slotGenerations[slot] = generation;
+                slotKeys[slot] = key;
+                slotCounts[slot] = 0;
+                usedSlots++;
+            }
+            slotCounts[slot]++;
+        }
+    }
+}
@@ -1,24 +1,62 @@
 package org.oldo.baghchal.model;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 
+import static org.oldo.baghchal.model.Direction.DOWN;
+import static org.oldo.baghchal.model.Direction.RIGHT;
+import static org.oldo.baghchal.model.Direction.RIGHT_DOWN;
+import static org.oldo.baghchal.model.Direction.RIGHT_UP;
+
 /**
  * Classifies table positions
  */
 public final class TablePositions {
 
+    private static final Direction[] directions = {
+            RIGHT_UP, RIGHT, RIGHT_DOWN, DOWN
+    };
+
     private final Collection<Position> all = new ArrayList<>();
     private final Collection<Position> board = new ArrayList<>();
     private final Collection<Position> border = new ArrayList<>();
     private final Collection<Position> corners = new ArrayList<>();
 
-    TablePositions(Position topLeft, Position bottomRight, Iterable<Position> positions) {
+    private final Position topLeft;
+    private final Position bottomRight;
+    private final int xSize;
+    private final int ySize;
+
+    // all positions by index (x * ySize + y), the iteration order of getAll()
+    private final Position[] cells;
+    private final BitSet boardIndexes = new BitSet();
+
+    // per index and piece: random bits for Zobrist keys, the same in every run
+    private final long[] keys;
+
+    // per board index: the indexes of the board cells one step along a line away
+    private final int[][] lineNeighbours;
+
+    TablePositions(Position topLeft, Position bottomRight, int xSize, int ySize) {
+        this.topLeft = topLeft;
+        this.bottomRight = bottomRight;
+        this.xSize = xSize;
+        this.ySize = ySize;
+        cells = new Position[xSize * ySize];
+        keys = new long[cells.length * Piece.values().length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = mix(i + 1);
+        }
         final Collection<Position> borderCorners = new ArrayList<>();
-        for (Position p : positions) {
+        for (int i = 0; i < cells.length; i++) {
+            final Position p = new Position(i / ySize, i % ySize);
+            cells[i] = p;
             all.add(p);
             if (p.isGreaterOrEqualTo(topLeft) && p.isLessOrEqualTo(bottomRight)) {
                 board.add(p);
+                boardIndexes.set(i);
                 if ((p.x() == topLeft.x() || p.x() == bottomRight.x())
                         && (p.y() == topLeft.y() || p.y() == bottomRight.y())) {
                     corners.add(p);
@@ -33,6 +71,40 @@ public final class TablePositions {
             }
         }
         border.addAll(borderCorners);
+        lineNeighbours = new int[cells.length][];
+        for (int i = 0; i < cells.length; i++) {
+            final int[] neighbours = new int[Direction.values().length];
+            int count = 0;
+            for (Direction d : Direction.values()) {
+                final Move step = new Move(cells[i], d.addTo(cells[i]));
+                if (isStepAlongLine(step)) {
+                    neighbours[count++] = indexOf(step.p2());
+                }
+            }
+            lineNeighbours[i] = Arrays.copyOf(neighbours, count);
+        }
+    }
+
+    /**
+     * @return the random bits of a piece on the position with the index
+     */
+    long getKey(int index, Piece piece) {
+        return keys[index * Piece.values().length + piece.ordinal()];
+    }
+
+    /**
+     * @return the random bits of the number of hidden border pieces
+     */
+    static long getHiddenKey(int count) {
+        return mix(-1L - count);
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long seed) {
+        long z = seed * 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
     }
 
     public Iterable<Position> getAll() {
@@ -52,11 +124,59 @@ public final class TablePositions {
     }
 
     public boolean isBoard(Position p) {
-        return board.contains(p);
+        return p.isGreaterOrEqualTo(topLeft) && p.isLessOrEqualTo(bottomRight);
     }
 
     public boolean isBorder(Position p) {
-        return border.contains(p);
+        return isOnTable(p) && !isBoard(p);
+    }
+
+    boolean isBorderCorner(Position p) {
+        return isBorder(p)
+                && (p.x() < topLeft.x() || p.x() > bottomRight.x())
+                && (p.y() < topLeft.y() || p.y() > bottomRight.y());
+    }
+
+    public boolean isOnTable(Position p) {
+        return 0 <= p.x() && p.x() < xSize && 0 <= p.y() && p.y() < ySize;
+    }
+
+    int indexOf(Position p) {
+        return indexOf(p.x(), p.y());
+    }
+
+    int indexOf(int x, int y) {
+        return x * ySize + y;
+    }
+
+    int getXSize() {
+        return xSize;
+    }
+
+    int getYSize() {
+        return ySize;
+    }
+
+    Position get(int index) {
+        return cells[index];
+    }
+
+    int size() {
+        return cells.length;
+    }
+
+    /**
+     * @return indexes of the board cells one step along a line from the board cell with the index
+     */
+    int[] getLineNeighbours(int index) {
+        return lineNeighbours[index];
+    }
+
+    /**
+     * @return a new set of the indexes of all board positions
+     */
+    BitSet getBoardIndexes() {
+        return (BitSet) boardIndexes.clone();
     }
 
     public boolean isBorderToBoard(Move move) {
@@ -71,4 +191,20 @@ public final class TablePositions {
         return isBoard(move.p1()) && isBoard(move.p2());
     }
 
+    public boolean isStepAlongLine(Move move) {
+        return move.isStep() && (move.p1().hasEvenCoordSum() || move.isOneDimensional())
+                && isBoardMove(move);
+    }
+
+    public Iterable<Move> getStepsAlongLineFrom(Position p) {
+        final Collection<Move> steps = new ArrayList<>();
+        for (Direction d : directions) {
+            final Move m = new Move(p, d.addTo(p));
+            if (isStepAlongLine(m)) {
+                steps.add(m);
+            }
+        }
+        return steps;
+    }
+
 }
@@ -0,0 +1,86 @@
+package org.oldo.baghchal.model;
+
+import java.util.BitSet;
+
+import static org.oldo.baghchal.model.Piece.PREDATOR;
+
+/**
+ * Per board cell: could a prey placed there be jumped over eventually (exposed)
+ * or right away (attacked). Only the neighbours of cells changed since the last
+ * query are re-evaluated, since a cell's threats depend on its neighbours alone.
+ */
+final class ThreatMap {
+
+    private final TablePositions positions;
+
+    private final BitSet exposed;
+    private final BitSet attacked;
+    private final BitSet changed;
+
+    private boolean complete;
+
+    ThreatMap(TablePositions positions) {
+        this.positions = positions;
+        exposed = new BitSet(positions.size());
+        attacked = new BitSet(positions.size());
+        changed = new BitSet(positions.size());
+    }
+
+    void changed(Position p) {
+        if (complete && positions.isBoard(p)) {
+            changed.set(positions.indexOf(p));
+        }
+    }
+
+    boolean isExposed(Position p, GameTable table) {
+        refresh(table);
+        return exposed.get(positions.indexOf(p));
+    }
+
+    boolean isAttacked(Position p, GameTable table) {
+        refresh(table);
+        return attacked.get(positions.indexOf(p));
+    }
+
+    private void refresh(GameTable table) {
+        if (!complete) {
+            for (Position p : positions.getBoard()) {
+                evaluate(p, table);
+            }
+            complete = true;
+        }
+        for (int i = changed.nextSetBit(0); i >= 0; i = changed.nextSetBit(i + 1)) {
+            final Position c = positions.get(i);
+            for (Direction d : Direction.values()) {
+                final Position p = d.addTo(c);
+                if (positions.isBoard(p)) {
+                    evaluate(p, table);
+                }
+            }
+        }
+        changed.clear();
+    }
+
+    private void evaluate(Position p, GameTable table) {
+        boolean e = false;
+        boolean a = false;
+        // lines are symmetric, so checking one direction per line covers both neighbours
+        for (Move step : positions.getStepsAlongLineFrom(p)) {
+            final Position fore = step.p2();
+            final Position back = new Position(2 * p.x() - fore.x(), 2 * p.y() - fore.y());
+            if (positions.isBoard(back)) {
+                final Piece fp = table.get(fore);
+                final Piece bp = table.get(back);
+                e |= isEmptyOrPredator(fp) && isEmptyOrPredator(bp);
+                a |= fp == PREDATOR && bp == null || fp == null && bp == PREDATOR;
+            }
+        }
+        final int index = positions.indexOf(p);
+        exposed.set(index, e);
+        attacked.set(index, a);
+    }
+
+    private static boolean isEmptyOrPredator(Piece piece) {
+        return piece == null || piece == PREDATOR;
+    }
+}
@@ -0,0 +1,152 @@
+package org.oldo.baghchal.net;
+
+import org.oldo.baghchal.model.Move;
+import org.oldo.baghchal.model.Position;
+import org.oldo.g2d.IntPair;
+import org.oldo.g2d.Size;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Binary frames between game host and players: the length of type and payload as a varint,
+ * the type byte and the payload. A move is its from and to table cells, one byte each on
+ * boards of up to 256 table cells (14 x 14) and two bytes each on larger ones, so a move
+ * frame takes 4 bytes on common boards.
+ * <p>
+ * Payloads:
+ * <ul>
+ * <li>JOIN: game id (int), the joining piece (byte), board width and height (bytes)</li>
+ * <li>SNAPSHOT: see {@link SyncSnapshot}</li>
+ * <li>MOVE: from and to cells</li>
+ * <li>PING and PONG: the sender's nano time (long), echoed</li>
+ * <li>NEW_GAME: number of the game it ends (int), board width and height (bytes) of the next
+ * one; from the host, the number of the game it started instead</li>
+ * </ul>
+ */
+final class Frames {
+
+    static final byte JOIN = 1;
+    static final byte SNAPSHOT = 2;
+    static final byte MOVE = 3;
+    static final byte PING = 4;
+    static final byte PONG = 5;
+    static final byte NEW_GAME = 6;
+
+    // largest board side, as in the game's board size spinners, so that table cells fit two bytes
+    static final int MAX_BOARD_SIZE = 99;
+    // a snapshot of a board of MAX_BOARD_SIZE, about 2.5 KB, with room to spare
+    static final int MAX_FRAME = 8192;
+
+    private Frames() {
+    }
+
+    /**
+     * @return a buffer with the frame header written, to be filled with the payload and flipped
+     */
+    static ByteBuffer frame(byte type, int payloadLength) {
+        final int length = 1 + payloadLength;
+        final ByteBuffer buffer = ByteBuffer.allocate(varintLength(length) + length);
+        int value = length;
+        while (value >= 0x80) {
+            buffer.put((byte) (value & 0x7f | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+        return buffer.put(type);
+    }
+
+    /**
+     * @return the length of the complete frame at the buffer's position, header included,
+     * or -1 if it has not fully arrived
+     * @throws IllegalStateException if the frame is longer than any valid one
+     */
+    static int frameLength(ByteBuffer in) {
+        int length = 0;
+        for (int i = 0, shift = 0; i < 3; i++, shift += 7) {
+            if (in.position() + i >= in.limit()) {
+                return -1;
+            }
+            final int b = in.get(in.position() + i);
+            length |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                if (length == 0 || length > MAX_FRAME) {
+                    throw new IllegalStateException("Invalid frame length: " + length);
+                }
+                final int total = i + 1 + length;
+                return in.remaining() >= total ? total : -1;
+            }
+        }
+        throw new IllegalStateException("Invalid frame length");
+    }
+
+    /**
+     * Skips the header of the frame at the buffer's position
+     *
+     * @return the frame's type
+     */
+    static byte readHeader(ByteBuffer in) {
+        while ((in.get() & 0x80) != 0) {
+            // length, already checked
+        }
+        return in.get();
+    }
+
+    static ByteBuffer move(Move move, Size boardSize) {
+        final ByteBuffer frame = frame(MOVE, 2 * cellBytes(boardSize));
+        putCell(frame, move.p1(), boardSize);
+        putCell(frame, move.p2(), boardSize);
+        frame.flip();
+        return frame;
+    }
+
+    static Move readMove(ByteBuffer in, Size boardSize) {
+        return new Move(getCell(in, boardSize), getCell(in, boardSize));
+    }
+
+    static ByteBuffer join(int gameId, byte piece, Size boardSize) {
+        final ByteBuffer frame = frame(JOIN, 7);
+        frame.putInt(gameId).put(piece).put((byte) boardSize.x()).put((byte) boardSize.y());
+        frame.flip();
+        return frame;
+    }
+
+    static ByteBuffer newGame(int number, Size boardSize) {
+        final ByteBuffer frame = frame(NEW_GAME, 6);
+        frame.putInt(number).put((byte) boardSize.x()).put((byte) boardSize.y());
+        frame.flip();
+        return frame;
+    }
+
+    static Size readBoardSize(ByteBuffer in) {
+        return new IntPair(in.get() & 0xff, in.get() & 0xff);
+    }
+
+    static ByteBuffer time(byte type, long nanos) {
+        final ByteBuffer frame = frame(type, 8);
+        frame.putLong(nanos);
+        frame.flip();
+        return frame;
+    }
+
+    private static void putCell(ByteBuffer out, Position p, Size boardSize) {
+        final int cell = p.x() * (boardSize.y() + 2) + p.y();
+        if (cellBytes(boardSize) == 1) {
+            out.put((byte) cell);
+        } else {
+            out.putShort((short) cell);
+        }
+    }
+
+    private static Position getCell(ByteBuffer in, Size boardSize) {
+        final int cell = cellBytes(boardSize) == 1 ? in.get() & 0xff : in.getShort() & 0xffff;
+        return new Position(cell / (boardSize.y() + 2), cell % (boardSize.y() + 2));
+    }
+
+    private static int cellBytes(Size boardSize) {
+        return (boardSize.x() + 2) * (boardSize.y() + 2) <= 256 ? 1 : 2;
+    }
+
+    private static int varintLength(int value) {
+        return value < 0x80 ? 1 : value < 0x4000 ? 2 : 3;
+    }
+}
@@ -0,0 +1,427 @@
+package org.oldo.baghchal.net;
+
+import org.guppy4j.log.Log;
+import org.guppy4j.log.LogProvider;
+import org.guppy4j.log.Slf4jLogProvider;
+import org.guppy4j.run.Startable;
+import org.oldo.baghchal.BaghChalSetup;
+import org.oldo.baghchal.Listener;
+import org.oldo.baghchal.metrics.GameMetrics;
+import org.oldo.baghchal.model.GameTable;
+import org.oldo.baghchal.model.Move;
+import org.oldo.baghchal.model.Piece;
+import org.oldo.g2d.IntPair;
+import org.oldo.g2d.Size;
+import org.oldo.text.CharCanvasImpl;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.guppy4j.log.Log.Level.debug;
+import static org.guppy4j.log.Log.Level.info;
+import static org.guppy4j.log.Log.Level.warn;
+
+/**
+ * Hosts games between players on other machines: one thread with a selector serves all
+ * connections of all games. Each game has a seat per piece. The host keeps the game's table,
+ * checks each move against it and passes it on to the other seat. A player that joins, or
+ * joins again after its connection dropped, gets a snapshot of the table to resync from, and
+ * so does one whose move does not fit the table. A player whose table starts a new game, because
+ * the last one ended or the user started one, tells the host, which starts it too and tells the
+ * other seat; when both tell it of the end of the same game, it starts only one. Games left
+ * without players are dropped after a while.
+ * <p>
+ * Arguments: [port] [idle minutes]
+ */
+public final class GameHost implements Startable {
+
+    private static final Piece[] PIECES = Piece.values();
+    private static final int MIN_BOARD_SIZE = 4;
+    private static final int BUFFER_BYTES = 2 * Frames.MAX_FRAME;
+    // a player that reads less is dropped, and resyncs when it comes back
+    private static final int MAX_PENDING_BYTES = 64 * 1024;
+
+    private final Log log;
+    private final LogProvider logProvider;
+    private final GameMetrics metrics = new GameMetrics(false);
+    private final long idleNanos;
+
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final Map<Integer, HostedGame> games = new HashMap<>();
+
+    private volatile boolean closed;
+
+    public GameHost(LogProvider logProvider, InetSocketAddress address, long idleMillis) throws IOException {
+        log = logProvider.getLog(getClass());
+        this.logProvider = logProvider;
+        idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(address);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public static void main(String... args) throws IOException {
+        final int port = args.length > 0 ? Integer.parseInt(args[0]) : 7575;
+        final long idleMinutes = args.length > 1 ? Long.parseLong(args[1]) : 10;
+        new GameHost(new Slf4jLogProvider(), new InetSocketAddress(port), TimeUnit.MINUTES.toMillis(idleMinutes)).run();
+    }
+
+    /**
+     * Runs the event loop on a thread of its own
+     */
+    @Override
+    public void start() {
+        final Thread thread = new Thread(this::run, "game-host");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public InetSocketAddress getAddress() throws IOException {
+        return (InetSocketAddress) server.getLocalAddress();
+    }
+
+    public void close() {
+        closed = true;
+        selector.wakeup();
+    }
+
+    private void run() {
+        log.as(info, "Hosting games on {}", server.socket().getLocalSocketAddress());
+        try {
+            while (!closed) {
+                selector.select(1000);
+                final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    final SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+                dropIdleGames();
+            }
+        } catch (IOException e) {
+            log.as(warn, e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key);
+            }
+            closeQuietly(selector);
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        try {
+            if (!key.isValid()) {
+                return;
+            }
+            if (key.isAcceptable()) {
+                accept();
+            } else {
+                final Connection connection = (Connection) key.attachment();
+                if (key.isReadable()) {
+                    connection.read();
+                }
+                if (key.isValid() && key.isWritable()) {
+                    connection.flush();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.as(debug, e);
+            if (key.attachment() instanceof Connection) {
+                ((Connection) key.attachment()).close();
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        final SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        final Connection connection = new Connection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+    }
+
+    private void dropIdleGames() {
+        final long now = System.nanoTime();
+        final Iterator<HostedGame> i = games.values().iterator();
+        while (i.hasNext()) {
+            final HostedGame game = i.next();
+            if (game.isEmpty() && now - game.emptySince > idleNanos) {
+                log.as(info, "Dropping game {} without players", game.id);
+                i.remove();
+            }
+        }
+    }
+
+    private void joined(Connection connection, int gameId, Piece piece, Size boardSize) {
+        HostedGame game = games.get(gameId);
+        if (game == null) {
+            game = new HostedGame(gameId, newTable(boardSize));
+            games.put(gameId, game);
+            log.as(info, "Game {} on a {} x {} board", gameId, boardSize.x(), boardSize.y());
+        }
+        if (connection.game != null && connection.game != game) {
+            connection.game.leave(connection);
+        }
+        final Connection previous = game.seats[piece.ordinal()];
+        if (previous != null && previous != connection) {
+            // the player is back on a new connection before the old one was found dead
+            previous.close();
+        }
+        game.seats[piece.ordinal()] = connection;
+        connection.game = game;
+        connection.piece = piece;
+        connection.send(game.snapshot());
+    }
+
+    private void moved(Connection connection, Move move) {
+        final HostedGame game = connection.game;
+        if (game == null) {
+            return;
+        }
+        final GameTable table = game.table;
+        final Piece piece = connection.piece;
+        if (Piece.toMove(table.getHistory().getPly()) != piece
+                || table.get(move.p1()) != piece || !table.isValid(move, piece)) {
+            log.as(debug, "Game {}: {} does not fit, resyncing {}", game.id, move, piece);
+            connection.send(game.snapshot());
+            return;
+        }
+        table.movePiece(move);
+        final Connection other = game.seats[piece.other().ordinal()];
+        if (other != null) {
+            other.send(Frames.move(move, game.boardSize));
+        }
+        if (table.isDrawn()) {
+            // as the players' game loops do, whose news of it then refers to the drawn game
+            table.reset();
+            game.number++;
+        }
+    }
+
+    private void newGame(Connection connection, int number, Size boardSize) {
+        final HostedGame game = connection.game;
+        if (game == null) {
+            return;
+        }
+        if (number != game.number) {
+            // the other player ended that game first, or this one missed the start of the game in play
+            log.as(debug, "Game {}: {} ended game number {}, not {}", game.id, connection.piece, number, game.number);
+            return;
+        }
+        if (game.boardSize.sameAs(boardSize)) {
+            game.table.reset();
+        } else {
+            game.setTable(newTable(boardSize));
+        }
+        game.number++;
+        log.as(debug, "Game {}: {} started game number {}", game.id, connection.piece, game.number);
+        final Connection other = game.seats[connection.piece.other().ordinal()];
+        if (other != null) {
+            other.send(Frames.newGame(game.number, boardSize));
+        }
+    }
+
+    private GameTable newTable(Size boardSize) {
+        final GameTable table = new GameTable(logProvider, boardSize, BaghChalSetup::prepare, Listener.NONE,
+                new CharCanvasImpl(), metrics);
+        table.reset();
+        return table;
+    }
+
+    private static void closeQuietly(SelectionKey key) {
+        if (key.attachment() instanceof Connection) {
+            ((Connection) key.attachment()).close();
+        } else {
+            closeQuietly(key.channel());
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            // closing anyway
+        }
+    }
+
+    private static final class HostedGame {
+
+        private final int id;
+        private final Connection[] seats = new Connection[PIECES.length];
+        private GameTable table;
+        private Size boardSize;
+        // counts the games played, so that news of the end of one is applied once
+        private int number;
+        private long emptySince;
+
+        private HostedGame(int id, GameTable table) {
+            this.id = id;
+            setTable(table);
+        }
+
+        private void setTable(GameTable table) {
+            this.table = table;
+            boardSize = new IntPair(table.getBoardXSize(), table.getBoardYSize());
+        }
+
+        private ByteBuffer snapshot() {
+            return SyncSnapshot.of(table, number).toFrame();
+        }
+
+        private void leave(Connection connection) {
+            for (int i = 0; i < seats.length; i++) {
+                if (seats[i] == connection) {
+                    seats[i] = null;
+                }
+            }
+            if (isEmpty()) {
+                emptySince = System.nanoTime();
+            }
+        }
+
+        private boolean isEmpty() {
+            for (Connection seat : seats) {
+                if (seat != null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private final class Connection {
+
+        private final SocketChannel channel;
+        private final ByteBuffer in = ByteBuffer.allocate(BUFFER_BYTES);
+        private final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+        private int pendingBytes;
+        private SelectionKey key;
+
+        private HostedGame game;
+        private Piece piece;
+
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        private void read() throws IOException {
+            if (channel.read(in) < 0) {
+                close();
+                return;
+            }
+            in.flip();
+            int length;
+            while (key.isValid() && (length = Frames.frameLength(in)) > 0) {
+                final int end = in.position() + length;
+                final int limit = in.limit();
+                final byte type = Frames.readHeader(in);
+                // a payload shorter than its type needs underflows instead of reading on into the next frame
+                in.limit(end);
+                receive(type);
+                in.limit(limit).position(end);
+            }
+            in.compact();
+        }
+
+        private void receive(byte type) {
+            switch (type) {
+                case Frames.JOIN:
+                    final int gameId = in.getInt();
+                    final int piece = in.get();
+                    if (piece < 0 || piece >= PIECES.length) {
+                        throw new IllegalStateException("No such piece: " + piece);
+                    }
+                    joined(this, gameId, PIECES[piece], readBoardSize());
+                    break;
+                case Frames.MOVE:
+                    if (game != null) {
+                        moved(this, Frames.readMove(in, game.boardSize));
+                    }
+                    break;
+                case Frames.PING:
+                    send(Frames.time(Frames.PONG, in.getLong()));
+                    break;
+                case Frames.NEW_GAME:
+                    final int number = in.getInt();
+                    newGame(this, number, readBoardSize());
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown frame type: " + type);
+            }
+        }
+
+        private Size readBoardSize() {
+            final Size boardSize = Frames.readBoardSize(in);
+            if (boardSize.x() < MIN_BOARD_SIZE || boardSize.y() < MIN_BOARD_SIZE
+                    || boardSize.x() > Frames.MAX_BOARD_SIZE || boardSize.y() > Frames.MAX_BOARD_SIZE) {
+                throw new IllegalStateException("Board size out of range " + MIN_BOARD_SIZE + ".." + Frames.MAX_BOARD_SIZE
+                        + ": " + boardSize.x() + " x " + boardSize.y());
+            }
+            return boardSize;
+        }
+
+        private void send(ByteBuffer frame) {
+            if (!key.isValid()) {
+                return;
+            }
+            try {
+                if (pending.isEmpty()) {
+                    channel.write(frame);
+                }
+                if (frame.hasRemaining()) {
+                    pending.add(frame);
+                    pendingBytes += frame.remaining();
+                    if (pendingBytes > MAX_PENDING_BYTES) {
+                        log.as(warn, "Dropping a {} player that does not keep up", piece);
+                        close();
+                        return;
+                    }
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                }
+            } catch (IOException e) {
+                log.as(debug, e);
+                close();
+            }
+        }
+
+        private void flush() throws IOException {
+            while (!pending.isEmpty()) {
+                final ByteBuffer frame = pending.peek();
+                final int before = frame.remaining();
+                channel.write(frame);
+                pendingBytes -= before - frame.remaining();
+                if (frame.hasRemaining()) {
+                    return;
+                }
+                pending.poll();
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        }
+
+        private void close() {
+            if (game != null) {
+                game.leave(this);
+                game = null;
+            }
+            key.cancel();
+            closeQuietly(channel);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package org.oldo.baghchal.net;
+
+import org.guppy4j.log.Log;
+import org.guppy4j.log.LogProvider;
+import org.oldo.baghchal.metrics.LatencyHistogram;
+import org.oldo.baghchal.model.Move;
+import org.oldo.baghchal.model.Piece;
+import org.oldo.g2d.Size;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import static org.guppy4j.log.Log.Level.debug;
+import static org.guppy4j.log.Log.Level.info;
+
+/**
+ * A player's connection to a {@link GameHost}, joined to one game with one piece. Frames from
+ * the host are read on a thread of its own and handed to a receiver. When the connection drops,
+ * it connects again after a pause and joins again, which brings a snapshot to resync from.
+ * Moves and new games sent while it is down are lost, as the snapshot shows the game without
+ * them.
+ */
+public final class HostConnection {
+
+    /**
+     * Receives what the host sends, on the connection's thread
+     */
+    public interface Receiver {
+
+        void moveReceived(Move move);
+
+        void snapshotReceived(SyncSnapshot snapshot);
+
+        /**
+         * The other player started a new game of the given number, which a resync brings, unless
+         * this player started it too
+         */
+        void newGameReceived(int number);
+    }
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 5_000;
+    private static final long MIN_PAUSE_MILLIS = 100;
+    private static final long MAX_PAUSE_MILLIS = 5_000;
+
+    private final Log log;
+    private final InetSocketAddress address;
+    private final int gameId;
+    private final Piece piece;
+    private final Receiver receiver;
+    private final LatencyHistogram roundTrips;
+
+    // the host's board size, which the cells of moves refer to
+    private volatile Size boardSize;
+    private volatile SocketChannel channel;
+    private volatile boolean closed;
+
+    /**
+     * @param boardSize  board of the game if the host starts it, the host's board otherwise
+     * @param roundTrips receives the time from each ping to its pong
+     */
+    public HostConnection(LogProvider logProvider, InetSocketAddress address, int gameId, Piece piece,
+                          Size boardSize, Receiver receiver, LatencyHistogram roundTrips) {
+        log = logProvider.getLog(getClass());
+        this.address = address;
+        this.gameId = gameId;
+        this.piece = piece;
+        this.boardSize = boardSize;
+        this.receiver = receiver;
+        this.roundTrips = roundTrips;
+    }
+
+    public void start() {
+        final Thread thread = new Thread(this::run, "host-connection-" + gameId + "-" + piece);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void send(Move move) {
+        send(Frames.move(move, boardSize));
+    }
+
+    /**
+     * Tells the host that the game of the given number ended and a new one started
+     *
+     * @param number    the number of the ended game, as in the snapshot the table was last synced from
+     * @param boardSize board of the new game
+     */
+    public void newGame(int number, Size boardSize) {
+        send(Frames.newGame(number, boardSize));
+        this.boardSize = boardSize;
+    }
+
+    /**
+     * Asks the host for a snapshot of the game
+     */
+    public void resync() {
+        send(Frames.join(gameId, (byte) piece.ordinal(), boardSize));
+    }
+
+    public void ping() {
+        send(Frames.time(Frames.PING, System.nanoTime()));
+    }
+
+    /**
+     * Drops the connection as if the network failed, which makes it connect again
+     */
+    public void disconnect() {
+        final SocketChannel current = channel;
+        if (current != null) {
+            closeQuietly(current);
+        }
+    }
+
+    public void close() {
+        closed = true;
+        disconnect();
+    }
+
+    public boolean isConnected() {
+        return channel != null;
+    }
+
+    private synchronized void send(ByteBuffer frame) {
+        final SocketChannel current = channel;
+        if (current == null) {
+            return;
+        }
+        try {
+            while (frame.hasRemaining()) {
+                current.write(frame);
+            }
+        } catch (IOException e) {
+            log.as(debug, e);
+            // the reading thread finds the connection closed and connects again
+            closeQuietly(current);
+        }
+    }
+
+    private void run() {
+        long pause = MIN_PAUSE_MILLIS;
+        while (!closed) {
+            try (final SocketChannel connected = SocketChannel.open()) {
+                connected.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                connected.socket().connect(address, CONNECT_TIMEOUT_MILLIS);
+                channel = connected;
+                resync();
+                log.as(info, "Joined game {} on {} as {}", gameId, address, piece);
+                pause = MIN_PAUSE_MILLIS;
+                read(connected);
+            } catch (IOException | RuntimeException e) {
+                log.as(debug, e);
+            } finally {
+                channel = null;
+            }
+            if (!closed) {
+                log.as(info, "Connection to {} lost, connecting again in {} ms", address, pause);
+                try {
+                    Thread.sleep(pause);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                pause = Math.min(MAX_PAUSE_MILLIS, 2 * pause);
+            }
+        }
+    }
+
+    private void read(SocketChannel connected) throws IOException {
+        final ByteBuffer in = ByteBuffer.allocate(2 * Frames.MAX_FRAME);
+        while (true) {
+            if (connected.read(in) < 0) {
+                throw new EOFException("Closed by host");
+            }
+            in.flip();
+            int length;
+            while ((length = Frames.frameLength(in)) > 0) {
+                final int end = in.position() + length;
+                final int limit = in.limit();
+                final byte type = Frames.readHeader(in);
+                in.limit(end);
+                receive(type, in);
+                in.limit(limit).position(end);
+            }
+            in.compact();
+        }
+    }
+
+    private void receive(byte type, ByteBuffer in) {
+        switch (type) {
+            case Frames.SNAPSHOT:
+                final SyncSnapshot snapshot = SyncSnapshot.read(in);
+                boardSize = snapshot.getBoardSize();
+                receiver.snapshotReceived(snapshot);
+                break;
+            case Frames.MOVE:
+                receiver.moveReceived(Frames.readMove(in, boardSize));
+                break;
+            case Frames.NEW_GAME:
+                final int number = in.getInt();
+                boardSize = Frames.readBoardSize(in);
+                receiver.newGameReceived(number);
+                break;
+            case Frames.PONG:
+                roundTrips.record(System.nanoTime() - in.getLong());
+                break;
+            default:
+                throw new IllegalStateException("Unknown frame type: " + type);
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // closing anyway
+        }
+    }
+}
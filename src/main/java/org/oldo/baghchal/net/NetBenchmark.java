@@ -0,0 +1,245 @@
+package org.oldo.baghchal.net;
+
+import org.guppy4j.log.LogProvider;
+import org.guppy4j.log.Slf4jLogProvider;
+import org.oldo.baghchal.BaghChalSetup;
+import org.oldo.baghchal.Listener;
+import org.oldo.baghchal.metrics.GameMetrics;
+import org.oldo.baghchal.metrics.LatencyHistogram;
+import org.oldo.baghchal.metrics.LatencySummary;
+import org.oldo.baghchal.model.GameTable;
+import org.oldo.baghchal.model.Move;
+import org.oldo.baghchal.model.Piece;
+import org.oldo.baghchal.model.Position;
+import org.oldo.g2d.IntPair;
+import org.oldo.g2d.Size;
+import org.oldo.text.CharCanvasImpl;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Round-trip latency of moves through a game host on loopback, for many concurrent games of
+ * random moves that answer each other right away. Players drop their connection every so
+ * many moves, and must still end up with the same table as their opponent after resyncing.
+ * <p>
+ * Arguments: [games] [moves per game] [reconnect every]
+ */
+public final class NetBenchmark {
+
+    private static final Piece[] PIECES = Piece.values();
+
+    private final LogProvider logProvider = new Slf4jLogProvider();
+    private final GameMetrics metrics = new GameMetrics(false);
+    private final Size boardSize = new IntPair(5, 5);
+
+    // from sending a move to receiving the answer: two hops through the host
+    private final LatencyHistogram moveTrips = new LatencyHistogram();
+    // from a ping to its pong
+    private final LatencyHistogram pingTrips = new LatencyHistogram();
+
+    public static void main(String... args) throws IOException, InterruptedException {
+        final int games = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        final int moves = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        final int reconnectEvery = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        new NetBenchmark().run(games, moves, reconnectEvery);
+    }
+
+    private void run(int games, int moves, int reconnectEvery) throws IOException, InterruptedException {
+        final GameHost host = new GameHost(logProvider, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                TimeUnit.MINUTES.toMillis(1));
+        host.start();
+        System.out.printf("%d games, %d moves each, reconnect every %d moves, host on %s%n",
+                games, moves, reconnectEvery, host.getAddress());
+
+        final CountDownLatch done = new CountDownLatch(games);
+        final List<Client[]> clients = new ArrayList<>(games);
+        final long start = System.nanoTime();
+        for (int g = 0; g < games; g++) {
+            final Game game = new Game(moves, done);
+            final Client[] pair = new Client[PIECES.length];
+            for (Piece piece : PIECES) {
+                pair[piece.ordinal()] = new Client(host.getAddress(), g, piece, game, reconnectEvery,
+                        new Random(g * 2L + piece.ordinal()));
+            }
+            clients.add(pair);
+            for (Client client : pair) {
+                client.connection.start();
+            }
+        }
+        final boolean finished = done.await(5, TimeUnit.MINUTES);
+        final long nanos = System.nanoTime() - start;
+        // the last moves may still be on their way
+        Thread.sleep(200);
+
+        int mismatches = 0;
+        int reconnects = 0;
+        for (Client[] pair : clients) {
+            if (!pair[0].isSameAs(pair[1])) {
+                mismatches++;
+            }
+            for (Client client : pair) {
+                reconnects += client.reconnects;
+                client.connection.close();
+            }
+        }
+        host.close();
+        System.out.printf("%s in %.1f ms, %d reconnects, %d mismatches%n",
+                finished ? "all games done" : done.getCount() + " games unfinished", nanos / 1e6, reconnects, mismatches);
+        print("move round trip", moveTrips.getSummary());
+        print("ping round trip", pingTrips.getSummary());
+    }
+
+    private static void print(String name, LatencySummary summary) {
+        System.out.printf("%s: %d samples, mean %.3f ms, p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+                name, summary.getCount(), summary.getMeanMillis(), summary.getP50Millis(),
+                summary.getP90Millis(), summary.getP99Millis(), summary.getMaxMillis());
+    }
+
+    private GameTable newTable() {
+        final GameTable table = new GameTable(logProvider, boardSize, BaghChalSetup::prepare, Listener.NONE,
+                new CharCanvasImpl(), metrics);
+        table.reset();
+        return table;
+    }
+
+    private static Move randomMove(GameTable table, Piece piece, Random random) {
+        final List<Position> sources = table.getPositionsOf(piece);
+        Collections.shuffle(sources, random);
+        for (Position source : sources) {
+            if (table.getPositions().isBorder(source) && !source.equals(table.getBorderPosition(piece))) {
+                continue;
+            }
+            final List<Position> targets = table.getLegalTargets(source, piece);
+            if (!targets.isEmpty()) {
+                return new Move(source, targets.get(random.nextInt(targets.size())));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Moves made in one game by both players
+     */
+    private static final class Game {
+
+        private final int moves;
+        private final CountDownLatch done;
+        private final AtomicInteger made = new AtomicInteger();
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        private Game(int moves, CountDownLatch done) {
+            this.moves = moves;
+            this.done = done;
+        }
+
+        private boolean isOver() {
+            return made.get() >= moves || finished.get();
+        }
+
+        private void finish() {
+            if (finished.compareAndSet(false, true)) {
+                done.countDown();
+            }
+        }
+    }
+
+    private final class Client implements HostConnection.Receiver {
+
+        private final Piece piece;
+        private final Game game;
+        private final int reconnectEvery;
+        private final Random random;
+        private final GameTable table = newTable();
+        private final HostConnection connection;
+
+        private long sentAt;
+        private int movesMade;
+        private int reconnects;
+
+        private Client(InetSocketAddress host, int gameId, Piece piece, Game game, int reconnectEvery, Random random) {
+            this.piece = piece;
+            this.game = game;
+            this.reconnectEvery = reconnectEvery;
+            this.random = random;
+            connection = new HostConnection(logProvider, host, gameId, piece, boardSize, this, pingTrips);
+        }
+
+        @Override
+        public synchronized void moveReceived(Move move) {
+            if (sentAt != 0) {
+                moveTrips.record(System.nanoTime() - sentAt);
+                sentAt = 0;
+            }
+            final Piece other = piece.other();
+            if (table.get(move.p1()) != other || !table.isValid(move, other)) {
+                connection.resync();
+                return;
+            }
+            play(move);
+            answer();
+        }
+
+        @Override
+        public synchronized void snapshotReceived(SyncSnapshot snapshot) {
+            if (!snapshot.isSameAs(table)) {
+                snapshot.restore(table);
+            }
+            answer();
+        }
+
+        @Override
+        public void newGameReceived(int number) {
+            // the players here only start new games on draws, as the host does
+        }
+
+        private void answer() {
+            if (game.isOver()) {
+                game.finish();
+                return;
+            }
+            if (Piece.toMove(table.getHistory().getPly()) != piece) {
+                return;
+            }
+            final Move move = randomMove(table, piece, random);
+            if (move == null) {
+                game.finish();
+                return;
+            }
+            play(move);
+            game.made.incrementAndGet();
+            connection.ping();
+            sentAt = System.nanoTime();
+            connection.send(move);
+            if (reconnectEvery > 0 && ++movesMade % reconnectEvery == 0) {
+                // the answer comes after the reconnect, which is not a round trip
+                sentAt = 0;
+                reconnects++;
+                connection.disconnect();
+            }
+        }
+
+        private void play(Move move) {
+            table.movePiece(move);
+            if (table.isDrawn()) {
+                // as the host does
+                table.reset();
+            }
+        }
+
+        private synchronized boolean isSameAs(Client other) {
+            synchronized (other) {
+                return SyncSnapshot.of(table).isSameAs(other.table);
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package org.oldo.baghchal.net;
+
+import org.oldo.baghchal.model.BoardSnapshot;
+
+/**
+ * Shows the game in play to spectators
+ */
+public interface SpectatorFeed {
+
+    /**
+     * Passes on the table's latest state, without waiting for any spectator (called by the thread that plays the game)
+     */
+    void publish(BoardSnapshot snapshot);
+
+    SpectatorFeed NONE = snapshot -> {
+        // ignore
+    };
+}
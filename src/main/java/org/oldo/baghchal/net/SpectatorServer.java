@@ -0,0 +1,402 @@
+package org.oldo.baghchal.net;
+
+import org.guppy4j.log.Log;
+import org.guppy4j.log.LogProvider;
+import org.guppy4j.run.Startable;
+import org.oldo.baghchal.model.BoardSnapshot;
+import org.oldo.baghchal.model.Piece;
+import org.oldo.baghchal.model.Position;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.guppy4j.log.Log.Level.debug;
+import static org.guppy4j.log.Log.Level.info;
+
+/**
+ * Streams the game in play to spectators as server-sent events at {@code GET /events}: first a
+ * {@code snapshot} of the whole table, then a {@code delta} per change with the cells changed
+ * since the last event. One thread with a selector serves all spectators. Each event is encoded
+ * once into a direct buffer, and the same bytes are written to every spectator from read-only
+ * views of it.
+ * <p>
+ * Publishing only hands over the table's state, which replaces one not sent yet, so the game
+ * never waits for a spectator and states do not pile up. One spectator that falls behind by too
+ * many events skips them, and gets a fresh snapshot once it has caught up with what it was sent;
+ * one that does not catch up in time is dropped.
+ * <p>
+ * Events, with cells as in {@link org.oldo.baghchal.model.Puzzle} ('.' empty, 'o' prey, 'X' predator):
+ * <pre>
+ * event: snapshot
+ * data: {"width":5,"height":5,"hidden":0,"cells":"..oooo.oX..."}
+ *
+ * event: delta
+ * data: {"hidden":0,"cells":[[1,3,"o"],[0,1,"."]]}
+ * </pre>
+ */
+public final class SpectatorServer implements SpectatorFeed, Startable {
+
+    private static final String CELLS = ".oX";
+    private static final int MAX_REQUEST_BYTES = 8192;
+    private static final int SEND_BUFFER_BYTES = 32 * 1024;
+    // events a spectator may have waiting before it skips to a snapshot
+    private static final int MAX_PENDING_EVENTS = 64;
+    private static final long DROP_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final long KEEP_ALIVE_NANOS = TimeUnit.SECONDS.toNanos(15);
+
+    private static final ByteBuffer HEADER = shared("HTTP/1.1 200 OK\r\n"
+            + "Content-Type: text/event-stream\r\n"
+            + "Cache-Control: no-cache\r\n"
+            + "Connection: keep-alive\r\n"
+            + "Access-Control-Allow-Origin: *\r\n"
+            + "\r\n"
+            + "retry: 1000\n\n");
+    private static final ByteBuffer NOT_FOUND = shared("HTTP/1.1 404 Not Found\r\n"
+            + "Content-Length: 0\r\n"
+            + "Connection: close\r\n"
+            + "\r\n");
+    private static final ByteBuffer KEEP_ALIVE = shared(": keep-alive\n\n");
+
+    private final Log log;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+
+    // the latest state published and not yet sent
+    private final AtomicReference<BoardSnapshot> published = new AtomicReference<>();
+    private final List<Spectator> spectators = new ArrayList<>();
+
+    // the state last sent and its snapshot event, encoded when first needed
+    private BoardSnapshot latest;
+    private ByteBuffer latestEvent;
+    private long eventId;
+    private long lastWrite = System.nanoTime();
+
+    private volatile boolean closed;
+
+    public SpectatorServer(LogProvider logProvider, InetSocketAddress address) throws IOException {
+        log = logProvider.getLog(getClass());
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(address);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Serves spectators on a thread of its own
+     */
+    @Override
+    public void start() {
+        final Thread thread = new Thread(this::run, "spectators");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public InetSocketAddress getAddress() throws IOException {
+        return (InetSocketAddress) server.getLocalAddress();
+    }
+
+    public void close() {
+        closed = true;
+        selector.wakeup();
+    }
+
+    @Override
+    public void publish(BoardSnapshot snapshot) {
+        published.set(snapshot);
+        selector.wakeup();
+    }
+
+    private void run() {
+        log.as(info, "Spectators see the game at http://{}/events", server.socket().getLocalSocketAddress());
+        try {
+            while (!closed) {
+                selector.select(1000);
+                final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    final SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+                final BoardSnapshot snapshot = published.getAndSet(null);
+                if (snapshot != null) {
+                    update(snapshot);
+                }
+                keepAlive();
+                dropLagging();
+            }
+        } catch (IOException e) {
+            log.as(info, e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key.channel());
+            }
+            closeQuietly(selector);
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        try {
+            if (!key.isValid()) {
+                return;
+            }
+            if (key.isAcceptable()) {
+                accept();
+            } else {
+                final Spectator spectator = (Spectator) key.attachment();
+                if (key.isReadable()) {
+                    spectator.read();
+                }
+                if (key.isValid() && key.isWritable()) {
+                    spectator.flush();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.as(debug, e);
+            ((Spectator) key.attachment()).close();
+        }
+    }
+
+    private void accept() throws IOException {
+        final SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        // what a spectator cannot take waits here as shared events, not in socket buffers
+        channel.setOption(StandardSocketOptions.SO_SNDBUF, SEND_BUFFER_BYTES);
+        final Spectator spectator = new Spectator(channel);
+        spectator.key = channel.register(selector, SelectionKey.OP_READ, spectator);
+    }
+
+    private void update(BoardSnapshot snapshot) {
+        final BoardSnapshot previous = latest;
+        if (snapshot == previous) {
+            return;
+        }
+        latest = snapshot;
+        latestEvent = null;
+        final boolean sameBoard = previous != null && previous.getBoardXSize() == snapshot.getBoardXSize()
+                && previous.getBoardYSize() == snapshot.getBoardYSize();
+        final ByteBuffer event = sameBoard ? delta(previous, snapshot) : snapshotEvent();
+        if (event == null) {
+            return;
+        }
+        for (Spectator spectator : new ArrayList<>(spectators)) {
+            spectator.send(event);
+        }
+    }
+
+    /**
+     * @return the event for the cells that changed, or null if none did
+     */
+    private ByteBuffer delta(BoardSnapshot previous, BoardSnapshot snapshot) {
+        final StringBuilder cells = new StringBuilder();
+        for (Position p : snapshot.getPositions().getAll()) {
+            final Piece piece = snapshot.get(p);
+            if (piece != previous.get(p)) {
+                if (cells.length() > 0) {
+                    cells.append(',');
+                }
+                cells.append('[').append(p.x()).append(',').append(p.y())
+                        .append(",\"").append(cell(piece)).append("\"]");
+            }
+        }
+        if (cells.length() == 0 && previous.getHiddenBorderPieceCount() == snapshot.getHiddenBorderPieceCount()) {
+            return null;
+        }
+        return event("delta", "{\"hidden\":" + snapshot.getHiddenBorderPieceCount() + ",\"cells\":[" + cells + "]}");
+    }
+
+    /**
+     * @return the snapshot event of the latest state, the same for all spectators that need one
+     */
+    private ByteBuffer snapshotEvent() {
+        if (latestEvent == null && latest != null) {
+            final StringBuilder cells = new StringBuilder();
+            for (Position p : latest.getPositions().getAll()) {
+                cells.append(cell(latest.get(p)));
+            }
+            latestEvent = event("snapshot", "{\"width\":" + latest.getBoardXSize() + ",\"height\":" + latest.getBoardYSize()
+                    + ",\"hidden\":" + latest.getHiddenBorderPieceCount() + ",\"cells\":\"" + cells + "\"}");
+        }
+        return latestEvent;
+    }
+
+    private ByteBuffer event(String type, String data) {
+        return shared("id: " + ++eventId + "\nevent: " + type + "\ndata: " + data + "\n\n");
+    }
+
+    private void keepAlive() {
+        if (System.nanoTime() - lastWrite > KEEP_ALIVE_NANOS) {
+            for (Spectator spectator : new ArrayList<>(spectators)) {
+                spectator.send(KEEP_ALIVE);
+            }
+            lastWrite = System.nanoTime();
+        }
+    }
+
+    private void dropLagging() {
+        final long now = System.nanoTime();
+        for (Spectator spectator : new ArrayList<>(spectators)) {
+            if (spectator.skipping && now - spectator.skippingSince > DROP_NANOS) {
+                log.as(debug, "Dropping a spectator that does not keep up");
+                spectator.close();
+            }
+        }
+    }
+
+    private static char cell(Piece piece) {
+        return CELLS.charAt(piece == null ? 0 : piece.ordinal() + 1);
+    }
+
+    private static ByteBuffer shared(String text) {
+        // a heap buffer would be copied into a temporary direct one on each write
+        final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        return buffer.asReadOnlyBuffer();
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            // closing anyway
+        }
+    }
+
+    private final class Spectator {
+
+        private final SocketChannel channel;
+        private final ByteBuffer request = ByteBuffer.allocate(MAX_REQUEST_BYTES);
+        // views of shared events, each with its own position
+        private final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+        private SelectionKey key;
+        private boolean subscribed;
+        private boolean skipping;
+        private long skippingSince;
+
+        private Spectator(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        private void read() throws IOException {
+            if (channel.read(request) < 0) {
+                close();
+                return;
+            }
+            if (subscribed) {
+                // nothing more is expected from a subscriber
+                request.clear();
+                return;
+            }
+            final String text = new String(request.array(), 0, request.position(), StandardCharsets.ISO_8859_1);
+            if (!text.contains("\r\n\r\n")) {
+                if (!request.hasRemaining()) {
+                    throw new IllegalStateException("Request too long");
+                }
+                return;
+            }
+            final String[] requestLine = text.substring(0, text.indexOf("\r\n")).split(" ");
+            if (requestLine.length < 2 || !"GET".equals(requestLine[0]) || !requestLine[1].startsWith("/events")) {
+                write(NOT_FOUND.duplicate());
+                closeAfterFlush();
+                return;
+            }
+            subscribed = true;
+            request.clear();
+            spectators.add(this);
+            write(HEADER.duplicate());
+            final ByteBuffer snapshot = snapshotEvent();
+            if (snapshot != null) {
+                write(snapshot.duplicate());
+            }
+        }
+
+        private void send(ByteBuffer event) {
+            if (skipping) {
+                return;
+            }
+            if (pending.size() >= MAX_PENDING_EVENTS) {
+                // keeps the event being written, so the stream stays well-formed
+                while (pending.size() > 1) {
+                    pending.pollLast();
+                }
+                skipping = true;
+                skippingSince = System.nanoTime();
+                return;
+            }
+            write(event.duplicate());
+        }
+
+        private void write(ByteBuffer event) {
+            if (!key.isValid()) {
+                return;
+            }
+            try {
+                if (pending.isEmpty()) {
+                    channel.write(event);
+                    lastWrite = System.nanoTime();
+                }
+                if (event.hasRemaining()) {
+                    pending.add(event);
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                }
+            } catch (IOException e) {
+                log.as(debug, e);
+                close();
+            }
+        }
+
+        private void flush() throws IOException {
+            while (!pending.isEmpty()) {
+                final ByteBuffer event = pending.peek();
+                channel.write(event);
+                if (event.hasRemaining()) {
+                    return;
+                }
+                pending.poll();
+            }
+            if (!subscribed) {
+                close();
+                return;
+            }
+            key.interestOps(SelectionKey.OP_READ);
+            if (skipping) {
+                // caught up with what was sent: starts over from the latest state
+                skipping = false;
+                final ByteBuffer snapshot = snapshotEvent();
+                if (snapshot != null) {
+                    write(snapshot.duplicate());
+                }
+            }
+        }
+
+        private void closeAfterFlush() {
+            if (pending.isEmpty()) {
+                close();
+            }
+        }
+
+        private void close() {
+            spectators.remove(this);
+            key.cancel();
+            closeQuietly(channel);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package org.oldo.baghchal.net;
+
+import org.oldo.baghchal.model.BoardSnapshot;
+import org.oldo.baghchal.model.GameTable;
+import org.oldo.baghchal.model.Piece;
+import org.oldo.baghchal.model.Position;
+import org.oldo.g2d.IntPair;
+import org.oldo.g2d.Size;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A hosted game's table at one ply, two bits per table cell, from which a player resyncs
+ * after it joined or reconnected, or when its table no longer follows the host's.
+ * <p>
+ * Payload: game number (int), ply (int), board width and height (bytes), hidden border pieces (short),
+ * cells. The game number counts the games played in a hosted game, so a player can tell which
+ * one a {@link Frames#NEW_GAME} refers to.
+ */
+public final class SyncSnapshot {
+
+    private static final Piece[] PIECES = Piece.values();
+
+    private final int game;
+    private final int ply;
+    private final int boardX;
+    private final int boardY;
+    private final int hiddenBorderPieceCount;
+    private final byte[] cells;
+
+    private SyncSnapshot(int game, int ply, int boardX, int boardY, int hiddenBorderPieceCount, byte[] cells) {
+        this.game = game;
+        this.ply = ply;
+        this.boardX = boardX;
+        this.boardY = boardY;
+        this.hiddenBorderPieceCount = hiddenBorderPieceCount;
+        this.cells = cells;
+    }
+
+    static SyncSnapshot of(GameTable table) {
+        return of(table, 0);
+    }
+
+    static SyncSnapshot of(GameTable table, int game) {
+        final BoardSnapshot board = table.getSnapshot();
+        final byte[] cells = new byte[cellBytes(board.getBoardXSize(), board.getBoardYSize())];
+        int i = 0;
+        for (Position p : board.getPositions().getAll()) {
+            final Piece piece = board.get(p);
+            if (piece != null) {
+                cells[i >> 2] |= (piece.ordinal() + 1) << ((i & 3) << 1);
+            }
+            i++;
+        }
+        return new SyncSnapshot(game, table.getHistory().getPly(), board.getBoardXSize(), board.getBoardYSize(),
+                board.getHiddenBorderPieceCount(), cells);
+    }
+
+    public int getGame() {
+        return game;
+    }
+
+    public int getPly() {
+        return ply;
+    }
+
+    public Size getBoardSize() {
+        return new IntPair(boardX, boardY);
+    }
+
+    public boolean fits(GameTable table) {
+        return table.getBoardXSize() == boardX && table.getBoardYSize() == boardY;
+    }
+
+    /**
+     * Puts the pieces on the table, which must fit, and starts its history at the snapshot's ply
+     */
+    public void restore(GameTable table) {
+        int i = 0;
+        for (Position p : table.getPositions().getAll()) {
+            final int code = (cells[i >> 2] >> ((i & 3) << 1)) & 3;
+            table.set(p, code == 0 ? null : PIECES[code - 1]);
+            i++;
+        }
+        table.setHiddenBorderPieceCount(hiddenBorderPieceCount);
+        table.startHistoryAt(ply);
+    }
+
+    /**
+     * @return true if the table has the same pieces at the same ply
+     */
+    public boolean isSameAs(GameTable table) {
+        if (!fits(table) || table.getHistory().getPly() != ply
+                || table.getHiddenBorderPieceCount() != hiddenBorderPieceCount) {
+            return false;
+        }
+        int i = 0;
+        for (Position p : table.getPositions().getAll()) {
+            final Piece piece = table.get(p);
+            final int code = (cells[i >> 2] >> ((i & 3) << 1)) & 3;
+            if (code != (piece == null ? 0 : piece.ordinal() + 1)) {
+                return false;
+            }
+            i++;
+        }
+        return true;
+    }
+
+    ByteBuffer toFrame() {
+        final ByteBuffer frame = Frames.frame(Frames.SNAPSHOT, 12 + cells.length);
+        frame.putInt(game).putInt(ply).put((byte) boardX).put((byte) boardY).putShort((short) hiddenBorderPieceCount).put(cells);
+        frame.flip();
+        return frame;
+    }
+
+    static SyncSnapshot read(ByteBuffer in) {
+        final int game = in.getInt();
+        final int ply = in.getInt();
+        final int boardX = in.get() & 0xff;
+        final int boardY = in.get() & 0xff;
+        final int hidden = in.getShort() & 0xffff;
+        final byte[] cells = new byte[cellBytes(boardX, boardY)];
+        in.get(cells);
+        return new SyncSnapshot(game, ply, boardX, boardY, hidden, cells);
+    }
+
+    private static int cellBytes(int boardX, int boardY) {
+        return ((boardX + 2) * (boardY + 2) + 3) / 4;
+    }
+}
@@ -0,0 +1,23 @@
+package org.oldo.baghchal.resources;
+
+import org.oldo.baghchal.metrics.LatencySummary;
+
+import javax.management.MXBean;
+
+/**
+ * Counters of the sound playback engine
+ */
+@MXBean
+public interface AudioMetrics {
+
+    long getPlayedCount();
+
+    long getDroppedCount();
+
+    long getLateCount();
+
+    long getMaxLatencyMillis();
+
+    LatencySummary getStartLatency();
+
+}
@@ -0,0 +1,230 @@
+package org.oldo.baghchal.resources;
+
+import org.guppy4j.log.Log;
+import org.guppy4j.log.LogProvider;
+import org.oldo.baghchal.metrics.LatencyHistogram;
+import org.oldo.baghchal.metrics.LatencySummary;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static javax.sound.sampled.AudioSystem.getSourceDataLine;
+import static org.guppy4j.log.Log.Level.warn;
+
+/**
+ * Mixes pre-decoded sounds in software into one permanently open output line.
+ * Sounds not decoded yet are decoded on a thread of their own, never on the caller's.
+ */
+public final class AudioMixer implements AudioMetrics {
+
+    public static final AudioFormat FORMAT = new AudioFormat(44100f, 16, 2, true, false);
+
+    private static final int BLOCK_FRAMES = 441; // 10 ms
+    private static final int LINE_BLOCKS = 4;
+
+    private final Log log;
+    private final PcmLoader pcmLoader;
+    private final long lateNanos;
+
+    private final ExecutorService decoder = Executors.newSingleThreadExecutor(r -> {
+        final Thread thread = new Thread(r, "audio-decoder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Queue<Voice> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final Voice[] voices;
+
+    private final AtomicLong playedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong lateCount = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+    private final LatencyHistogram startLatency = new LatencyHistogram();
+
+    private volatile Thread mixerThread;
+    // set once if there is no output line, after which nothing is played
+    private volatile boolean lineUnavailable;
+
+    public AudioMixer(LogProvider logProvider, PcmLoader pcmLoader, int maxVoices, long lateMillis) {
+        log = logProvider.getLog(getClass());
+        this.pcmLoader = pcmLoader;
+        this.lateNanos = TimeUnit.MILLISECONDS.toNanos(lateMillis);
+        voices = new Voice[maxVoices];
+    }
+
+    /**
+     * Decodes the sound now so that its first playback does not wait for I/O
+     */
+    public void preload(URL url) {
+        if (url != null) {
+            pcmLoader.getPcm(url);
+        }
+    }
+
+    /**
+     * Opens the output line ahead of the first sound
+     */
+    public void start() {
+        getMixerThread();
+    }
+
+    public void play(URL url) {
+        if (url == null || lineUnavailable) {
+            return;
+        }
+        final long requested = System.nanoTime();
+        final byte[] pcm = pcmLoader.getDecodedPcm(url);
+        if (pcm == null) {
+            decoder.execute(() -> enqueue(pcmLoader.getPcm(url), requested));
+        } else {
+            enqueue(pcm, requested);
+        }
+    }
+
+    private void enqueue(byte[] pcm, long requested) {
+        if (pendingCount.incrementAndGet() > voices.length) {
+            pendingCount.decrementAndGet();
+            droppedCount.incrementAndGet();
+            return;
+        }
+        pending.add(new Voice(pcm, requested));
+        LockSupport.unpark(getMixerThread());
+    }
+
+    private Thread getMixerThread() {
+        Thread t = mixerThread;
+        if (t == null) {
+            synchronized (this) {
+                t = mixerThread;
+                if (t == null) {
+                    t = new Thread(this::mix, "audio-mixer");
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MAX_PRIORITY);
+                    mixerThread = t;
+                    t.start();
+                }
+            }
+        }
+        return t;
+    }
+
+    private void mix() {
+        final int frameSize = FORMAT.getFrameSize();
+        final byte[] block = new byte[BLOCK_FRAMES * frameSize];
+        final int[] sum = new int[BLOCK_FRAMES * FORMAT.getChannels()];
+        try (final SourceDataLine line = getSourceDataLine(FORMAT)) {
+            line.open(FORMAT, block.length * LINE_BLOCKS);
+            line.start();
+            while (!Thread.currentThread().isInterrupted()) {
+                final boolean active = acceptPending();
+                if (active) {
+                    mixBlock(sum, block);
+                    line.write(block, 0, block.length);
+                } else {
+                    LockSupport.park(this);
+                }
+            }
+        } catch (LineUnavailableException | IllegalArgumentException | SecurityException e) {
+            lineUnavailable = true;
+            log.as(warn, "No audio output line for {}, sounds are off: {}", FORMAT, e.toString());
+            droppedCount.addAndGet(pendingCount.getAndSet(0));
+            pending.clear();
+        }
+    }
+
+    private boolean acceptPending() {
+        boolean active = false;
+        for (int i = 0; i < voices.length; i++) {
+            if (voices[i] == null) {
+                final Voice v = pending.poll();
+                if (v != null) {
+                    pendingCount.decrementAndGet();
+                    start(v);
+                    voices[i] = v;
+                }
+            }
+            active |= voices[i] != null;
+        }
+        return active;
+    }
+
+    private void start(Voice v) {
+        final long latency = System.nanoTime() - v.enqueued;
+        playedCount.incrementAndGet();
+        if (latency > lateNanos) {
+            lateCount.incrementAndGet();
+        }
+        maxLatencyNanos.accumulateAndGet(latency, Math::max);
+        startLatency.record(latency);
+    }
+
+    private void mixBlock(int[] sum, byte[] block) {
+        Arrays.fill(sum, 0);
+        for (int i = 0; i < voices.length; i++) {
+            final Voice v = voices[i];
+            if (v != null) {
+                final int end = Math.min(v.data.length, v.offset + block.length);
+                for (int b = v.offset, s = 0; b + 1 < end; b += 2, s++) {
+                    sum[s] += (short) ((v.data[b] & 0xff) | (v.data[b + 1] << 8));
+                }
+                v.offset = end;
+                if (end >= v.data.length - 1) {
+                    voices[i] = null;
+                }
+            }
+        }
+        for (int s = 0; s < sum.length; s++) {
+            final int sample = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sum[s]));
+            block[2 * s] = (byte) sample;
+            block[2 * s + 1] = (byte) (sample >> 8);
+        }
+    }
+
+    @Override
+    public long getPlayedCount() {
+        return playedCount.get();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    @Override
+    public long getLateCount() {
+        return lateCount.get();
+    }
+
+    @Override
+    public long getMaxLatencyMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxLatencyNanos.get());
+    }
+
+    @Override
+    public LatencySummary getStartLatency() {
+        return startLatency.getSummary();
+    }
+
+    private static final class Voice {
+        final byte[] data;
+        final long enqueued;
+        int offset;
+
+        Voice(byte[] data, long enqueued) {
+            this.data = data;
+            this.enqueued = enqueued;
+        }
+    }
+}
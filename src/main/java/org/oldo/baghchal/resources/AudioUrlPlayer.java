@@ -1,39 +0,0 @@
-package org.oldo.baghchal.resources;
-
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.Clip;
-import javax.sound.sampled.DataLine.Info;
-import javax.sound.sampled.LineUnavailableException;
-import javax.sound.sampled.UnsupportedAudioFileException;
-import java.io.IOException;
-import java.net.URL;
-
-import static javax.sound.sampled.AudioSystem.getAudioInputStream;
-import static javax.sound.sampled.AudioSystem.getLine;
-import static javax.sound.sampled.LineEvent.Type.STOP;
-
-/**
- * Plays sound files (currently just wav)
- */
-public final class AudioUrlPlayer {
-
-    public static void play(URL url) {
-        try (final AudioInputStream stream = getAudioInputStream(url)) {
-
-            final Clip clip = (Clip) getLine(new Info(Clip.class, stream.getFormat()));
-            clip.open(stream);
-            clip.start();
-
-            clip.addLineListener(event -> {
-                if (STOP.equals(event.getType())) {
-                    clip.close();
-                }
-            });
-
-        } catch (UnsupportedAudioFileException | LineUnavailableException e) {
-            throw new IllegalArgumentException("Could not play " + url, e);
-        } catch (IOException e) {
-            throw new IllegalStateException("Could not read " + url, e);
-        }
-    }
-}
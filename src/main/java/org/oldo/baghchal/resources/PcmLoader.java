@@ -0,0 +1,82 @@
+package org.oldo.baghchal.resources;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static javax.sound.sampled.AudioFormat.Encoding.PCM_SIGNED;
+import static javax.sound.sampled.AudioSystem.getAudioInputStream;
+
+/**
+ * Decodes sound files once into PCM bytes of a fixed format and caches them
+ */
+public final class PcmLoader {
+
+    private final ConcurrentMap<URI, byte[]> cache = new ConcurrentHashMap<>();
+
+    private final AudioFormat format;
+
+    public PcmLoader(AudioFormat format) {
+        this.format = format;
+    }
+
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    public byte[] getPcm(URL resourceLocation) {
+        return cache.computeIfAbsent(toUri(resourceLocation), uri -> decode(resourceLocation));
+    }
+
+    /**
+     * @return the PCM bytes if the sound was decoded before, null otherwise
+     */
+    public byte[] getDecodedPcm(URL resourceLocation) {
+        return cache.get(toUri(resourceLocation));
+    }
+
+    private static URI toUri(URL resourceLocation) {
+        try {
+            return resourceLocation.toURI();
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private byte[] decode(URL url) {
+        try (final AudioInputStream source = getAudioInputStream(url);
+             final AudioInputStream pcm = toSigned16Bit(source);
+             final AudioInputStream target = getAudioInputStream(format, pcm)) {
+            return readAll(target);
+        } catch (UnsupportedAudioFileException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Could not decode " + url, e);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read " + url, e);
+        }
+    }
+
+    // two-step conversion: not every codec converts encoding, rate and channels at once
+    private static AudioInputStream toSigned16Bit(AudioInputStream source) {
+        final AudioFormat f = source.getFormat();
+        final AudioFormat signed = new AudioFormat(PCM_SIGNED, f.getSampleRate(), 16,
+                f.getChannels(), f.getChannels() * 2, f.getSampleRate(), false);
+        return getAudioInputStream(signed, source);
+    }
+
+    private static byte[] readAll(AudioInputStream stream) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int n;
+        while ((n = stream.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
@@ -18,6 +18,8 @@ public interface Theme extends Images {
 
     URL getSoundResource(SoundResourceId resourceId);
 
+    Iterable<URL> getSoundResources();
+
     int getPieceWidth();
 
     int getPieceHeight();
@@ -15,6 +15,8 @@ import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.Objects;
 import java.util.Properties;
@@ -101,6 +103,8 @@ public final class Themes implements Theme, ThemeSelector {
         return colors.getColor(colorId);
     }
 
+    private static final int PREY_SOUNDS = 3;
+
     private int preyIndex = 1;
 
     @Override
@@ -114,7 +118,7 @@ public final class Themes implements Theme, ThemeSelector {
                 return getResource("predator-step", "wav");
             case PREY_MOVES:
                 final URL resource = getResource("prey" + preyIndex, "wav");
-                preyIndex = (preyIndex % 3) + 1;
+                preyIndex = (preyIndex % PREY_SOUNDS) + 1;
                 return resource;
             case CONGRATS:
                 return getResource("congrats", "wav");
@@ -122,6 +126,24 @@ public final class Themes implements Theme, ThemeSelector {
         throw new IllegalArgumentException("Unknown sound : " + resourceId);
     }
 
+    @Override
+    public Iterable<URL> getSoundResources() {
+        final Collection<URL> resources = new ArrayList<>();
+        for (String name : new String[]{"welcome", "predator-kills", "predator-step", "congrats"}) {
+            addIfPresent(resources, getResource(name, "wav"));
+        }
+        for (int i = 1; i <= PREY_SOUNDS; i++) {
+            addIfPresent(resources, getResource("prey" + i, "wav"));
+        }
+        return resources;
+    }
+
+    private static void addIfPresent(Collection<URL> resources, URL url) {
+        if (url != null) {
+            resources.add(url);
+        }
+    }
+
     @Override
     public int getPieceWidth() {
         return Math.max(getImage(PREDATOR).getWidth(), getImage(PREY).getWidth());
@@ -0,0 +1,99 @@
+package org.oldo.baghchal.view;
+
+import org.oldo.baghchal.metrics.GameMetrics;
+
+import java.awt.EventQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Fixed-timestep render loop: while an animation runs, each step paints one frame
+ * on the EDT. Steps missed because the loop fell behind, or because the previous
+ * frame was not painted yet, are dropped rather than caught up and are counted.
+ * The loop parks while nothing is animated.
+ */
+final class AnimationLoop {
+
+    private final GameMetrics metrics;
+    private final long stepNanos;
+    private final BooleanSupplier animating;
+    private final Runnable paintFrame;
+
+    private final AtomicBoolean framePending = new AtomicBoolean();
+    private final Thread thread;
+
+    // confined to the EDT
+    private long lastFrame;
+
+    /**
+     * @param animating  whether a frame needs painting, polled by the loop thread
+     * @param paintFrame paints one frame synchronously, run on the EDT
+     */
+    AnimationLoop(GameMetrics metrics, int framesPerSecond, BooleanSupplier animating, Runnable paintFrame) {
+        this.metrics = metrics;
+        stepNanos = TimeUnit.SECONDS.toNanos(1) / framesPerSecond;
+        this.animating = animating;
+        this.paintFrame = paintFrame;
+        thread = new Thread(this::run, "animation");
+        thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Lets the loop notice an animation that just started
+     */
+    void wake() {
+        LockSupport.unpark(thread);
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            while (!animating.getAsBoolean()) {
+                LockSupport.park(this);
+            }
+            EventQueue.invokeLater(() -> lastFrame = 0);
+            long next = System.nanoTime();
+            while (animating.getAsBoolean()) {
+                if (!postFrame()) {
+                    metrics.countDroppedFrames(1);
+                }
+                next += stepNanos;
+                final long now = System.nanoTime();
+                if (now - next > 0) {
+                    final long missed = (now - next) / stepNanos + 1;
+                    metrics.countDroppedFrames(missed);
+                    next += missed * stepNanos;
+                }
+                LockSupport.parkNanos(next - now);
+            }
+            // the resting state after the animation, unless a pending frame will paint it anyway
+            postFrame();
+        }
+    }
+
+    private boolean postFrame() {
+        if (framePending.compareAndSet(false, true)) {
+            EventQueue.invokeLater(this::paintFrame);
+            return true;
+        }
+        return false;
+    }
+
+    private void paintFrame() {
+        try {
+            paintFrame.run();
+        } finally {
+            framePending.set(false);
+        }
+        final long now = System.nanoTime();
+        if (lastFrame != 0) {
+            metrics.recordFrameTime(now - lastFrame);
+        }
+        lastFrame = now;
+    }
+}
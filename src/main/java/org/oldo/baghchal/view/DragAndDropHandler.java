@@ -8,6 +8,7 @@ import org.oldo.baghchal.model.Position;
 
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.util.Collection;
 
 /**
  * Manages the moving of pieces via drag and drop
@@ -21,6 +22,7 @@ public class DragAndDropHandler extends MouseAdapter {
     private final Piece piece;
 
     private Position dragStart;
+    private Collection<Position> dragTargets;
 
     public DragAndDropHandler(GameTable gameTable, GameView view, PlayFlow playFlow, Piece piece) {
         this.gameTable = gameTable;
@@ -32,9 +34,11 @@ public class DragAndDropHandler extends MouseAdapter {
     @Override
     public void mousePressed(MouseEvent e) {
         final Position p = view.getPosition(e.getPoint());
-        dragStart = gameTable.pick(p, piece);
-        if (dragStart != null) {
-            view.notifyDraggedTo(p, piece);
+        if (gameTable.getSnapshot().get(p) == piece) {
+            dragStart = p;
+            // the table does not change during the user's turn, so this holds for the whole drag
+            dragTargets = gameTable.getLegalTargets(p, piece);
+            view.startDrag(p, piece, dragTargets);
         }
     }
 
@@ -49,21 +53,15 @@ public class DragAndDropHandler extends MouseAdapter {
     public void mouseReleased(MouseEvent e) {
         final Position p = view.getPosition(e.getPoint());
         if (dragStart != null) {
-            gameTable.set(dragStart, piece);
             final Move move = new Move(dragStart, p);
-            final boolean validMove = gameTable.isValid(move, piece);
+            final boolean validMove = dragTargets.contains(p);
+            view.endDrag();
+            dragStart = null;
+            dragTargets = null;
             if (validMove) {
                 playFlow.moveDone(move);
-            } else {
-                view.notifyDraggedTo(dragStart, piece);
             }
-            resetDragState();
         }
     }
 
-    private void resetDragState() {
-        view.setLastDragPoint(null);
-        dragStart = null;
-    }
-
 }
@@ -0,0 +1,58 @@
+package org.oldo.baghchal.view;
+
+import org.oldo.baghchal.model.BoardSnapshot;
+import org.oldo.baghchal.model.Piece;
+import org.oldo.baghchal.model.Position;
+
+import java.awt.Point;
+
+/**
+ * The piece being dragged, kept apart from the game table (confined to the EDT)
+ */
+final class DragOverlay {
+
+    private Position source;
+    private Piece piece;
+    private Point point;
+
+    void start(Position source, Piece piece) {
+        this.source = source;
+        this.piece = piece;
+        point = null;
+    }
+
+    void moveTo(Point point) {
+        this.point = point;
+    }
+
+    void clear() {
+        source = null;
+        piece = null;
+        point = null;
+    }
+
+    boolean isActive() {
+        return piece != null;
+    }
+
+    Position getSource() {
+        return source;
+    }
+
+    Piece getPiece() {
+        return piece;
+    }
+
+    Point getPoint() {
+        return point;
+    }
+
+    /**
+     * Whether the dragged piece has left its position (border pieces with hidden
+     * reserves behind them stay visible while one of them is dragged)
+     */
+    boolean hides(Position p, BoardSnapshot board) {
+        return p.equals(source)
+                && (board.getPositions().isBoard(p) || board.getHiddenBorderPieceCount() <= 0);
+    }
+}
@@ -2,6 +2,9 @@ package org.oldo.baghchal.view;
 
 import org.guppy4j.log.Log;
 import org.guppy4j.log.LogProvider;
+import org.oldo.baghchal.control.HistoryControl;
+import org.oldo.baghchal.metrics.ThemeSwitchEvent;
+import org.oldo.baghchal.model.GameClock;
 import org.oldo.baghchal.model.GameTable;
 import org.oldo.baghchal.model.Piece;
 import org.oldo.baghchal.model.Players;
@@ -20,10 +23,13 @@ import javax.swing.JSpinner;
 import javax.swing.JToolBar;
 import javax.swing.JToolBar.Separator;
 import javax.swing.SpinnerNumberModel;
+import javax.swing.Timer;
 import javax.swing.WindowConstants;
 import java.awt.BorderLayout;
 import java.awt.Component;
 import java.awt.Dimension;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 
 import static org.guppy4j.log.Log.Level.debug;
 
@@ -46,7 +52,7 @@ public final class GameFrame {
                      GameView view, ThemeSelector themeSelector,
                      SpinnerNumberModel boardXSizeModel,
                      SpinnerNumberModel boardYSizeModel,
-                     Players players,
+                     Players players, HistoryControl history, GameClock clock,
                      Piece piece1, String piece1Name,
                      Piece piece2, String piece2Name) {
         log = logProvider.getLog(getClass());
@@ -62,6 +68,12 @@ public final class GameFrame {
         final JButton newGameBtn = new JButton("New Game");
         newGameBtn.addActionListener(e -> view.start());
 
+        final JButton undoBtn = new JButton("Undo");
+        undoBtn.addActionListener(e -> history.undo());
+
+        final JButton redoBtn = new JButton("Redo");
+        redoBtn.addActionListener(e -> history.redo());
+
 //        nextLevelBtn = new JButton("Next Level");
 //        nextLevelBtn.addActionListener(e -> gamePanel.nextLevel());
 //        nextLevelBtn.setEnabled(false);
@@ -82,6 +94,7 @@ public final class GameFrame {
         final JToolBar toolBar = new JToolBar();
         toolBar.setFloatable(false);
         addTo(toolBar, newGameBtn);
+        addTo(toolBar, undoBtn, redoBtn);
         addTo(toolBar, new JLabel("Theme: "), themeChooser);
         addTo(toolBar, new JLabel("Width: "), xSizeSpinner);
         addTo(toolBar, new JLabel("Height: "), ySizeSpinner);
@@ -89,8 +102,13 @@ public final class GameFrame {
         addPlayedByComputerCheckbox(players, piece1, piece1Name, toolBar);
         addPlayedByComputerCheckbox(players, piece2, piece2Name, toolBar);
 
+        if (clock.isTimed()) {
+            addClock(clock, piece1, piece1Name, toolBar);
+            addClock(clock, piece2, piece2Name, toolBar);
+        }
+
         frame.add(toolBar, BorderLayout.PAGE_START);
-        frame.add(new JScrollPane(view.as(Component.class)), BorderLayout.CENTER);
+        frame.add(new JScrollPane(view.getComponent()), BorderLayout.CENTER);
     }
 
     private void addPlayedByComputerCheckbox(Players players, Piece piece, String name, JToolBar toolBar) {
@@ -99,6 +117,22 @@ public final class GameFrame {
         addTo(toolBar, new JLabel(name + ": "), checkbox);
     }
 
+    private static void addClock(GameClock clock, Piece piece, String name, JToolBar toolBar) {
+        final JLabel label = new JLabel(formatClock(name, clock.getRemainingMillis(piece), true));
+        addTo(toolBar, label);
+        new Timer(100, e -> label.setText(
+                formatClock(name, clock.getRemainingMillis(piece), clock.getRunning() == piece))).start();
+    }
+
+    private static String formatClock(String name, long millis, boolean running) {
+        final long seconds = millis / 1000;
+        final String time = seconds < 10
+                ? String.format("%d.%d", seconds, millis / 100 % 10)
+                : String.format("%d:%02d", seconds / 60, seconds % 60);
+        // a fixed width keeps the toolbar from jumping
+        return String.format("%s %s %7s", running ? "\u25B6" : " ", name, time);
+    }
+
     private static void addTo(JToolBar toolBar, Component... components) {
         for (Component component : components) {
             updateSizing(component);
@@ -115,10 +149,17 @@ public final class GameFrame {
     }
 
     private void selectTheme(ThemeSelector themeSelector, JComboBox<String> themeChooser) {
+        final ThemeSwitchEvent event = new ThemeSwitchEvent();
+        event.begin();
         final String themeName = themeChooser.getItemAt(themeChooser.getSelectedIndex());
         themeSelector.selectTheme(themeName);
         view.applyThemeChange();
         updateBoardSize();
+        event.end();
+        if (event.shouldCommit()) {
+            event.theme = themeName;
+            event.commit();
+        }
     }
 
     public void show() {
@@ -126,6 +167,15 @@ public final class GameFrame {
         frame.setVisible(true);
     }
 
+    public void addOpenedListener(Runnable listener) {
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowOpened(WindowEvent e) {
+                listener.run();
+            }
+        });
+    }
+
     public void enableNextLevel(boolean enable) {
 //        nextLevelBtn.setEnabled(enable);
     }
@@ -164,4 +214,16 @@ public final class GameFrame {
     public GameTable getGameTable() {
         return view.getGameTable();
     }
+
+    /**
+     * Shows a board of the given size, as far as the screen allows
+     *
+     * @return the table of the board shown
+     */
+    public GameTable setBoardSize(Size size) {
+        boardXSizeModel.setValue(size.x());
+        boardYSizeModel.setValue(size.y());
+        updateBoardSize();
+        return view.getGameTable();
+    }
 }
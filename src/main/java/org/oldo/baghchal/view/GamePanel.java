@@ -1,17 +1,29 @@
 package org.oldo.baghchal.view;
 
+import org.oldo.baghchal.metrics.BoardResizeEvent;
+import org.oldo.baghchal.metrics.GameMetrics;
+import org.oldo.baghchal.metrics.PaintEvent;
+import org.oldo.baghchal.model.BoardSnapshot;
 import org.oldo.baghchal.model.GameTable;
 import org.oldo.baghchal.model.GameTableFactory;
 import org.oldo.baghchal.model.Levels;
 import org.oldo.baghchal.model.Move;
 import org.oldo.baghchal.model.Piece;
 import org.oldo.baghchal.model.Position;
+import org.oldo.baghchal.model.TablePositions;
 import org.oldo.baghchal.theming.Theme;
 import org.oldo.g2d.IntPair;
 import org.oldo.g2d.Size;
 
+import javax.swing.AbstractAction;
+import javax.swing.JComponent;
+import javax.swing.JLayer;
 import javax.swing.JPanel;
+import javax.swing.KeyStroke;
+import javax.swing.plaf.LayerUI;
 import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics;
@@ -21,8 +33,10 @@ import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.Stroke;
+import java.awt.event.ActionEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.image.BufferedImage;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -32,6 +46,7 @@ import static java.awt.RenderingHints.KEY_TEXT_ANTIALIASING;
 import static java.awt.RenderingHints.VALUE_ANTIALIAS_ON;
 import static java.awt.RenderingHints.VALUE_STROKE_NORMALIZE;
 import static java.awt.RenderingHints.VALUE_TEXT_ANTIALIAS_ON;
+import static org.guppy4j.Booleans.not;
 import static org.oldo.baghchal.theming.Images.ImageId.CONGRATS;
 import static org.oldo.baghchal.theming.Theme.ColorId.BACKGROUND;
 import static org.oldo.baghchal.theming.Theme.ColorId.BOARD_EDGE;
@@ -41,6 +56,8 @@ import static org.oldo.baghchal.theming.Theme.ColorId.GRID;
 public final class GamePanel extends JPanel implements GameView {
 
     private static final int DRAG_FRAME_PADDING = 3;
+    private static final int TARGET_ALPHA = 96;
+    private static final int ANIMATION_FPS = 60;
     public static final double SPACING = 0.5;
     private static final double PIECE_SPACE = 1 + SPACING;
 
@@ -51,7 +68,21 @@ public final class GamePanel extends JPanel implements GameView {
     private final Levels levels;
     private final Theme theme;
 
-    private GameTable gameTable;
+    // replaced on the EDT, read by the game loop thread
+    private volatile GameTable gameTable;
+
+    private final DragOverlay dragOverlay = new DragOverlay();
+    private final TargetOverlay targetOverlay = new TargetOverlay();
+
+    // the dragged piece is drawn on this layer, over the board as rendered when it was picked
+    private final JLayer<GamePanel> dragLayer;
+    private BufferedImage dragBackground;
+
+    private final MoveAnimation moveAnimation = new MoveAnimation();
+    private final AnimationLoop animationLoop;
+
+    private final GameMetrics metrics;
+    private final MetricsOverlay metricsOverlay;
 
     private static RenderingHints createRenderingHints() {
         final Map<RenderingHints.Key, Object> map = new HashMap<>();
@@ -62,15 +93,42 @@ public final class GamePanel extends JPanel implements GameView {
     }
 
     public GamePanel(GameTableFactory gameTableFactory, IntPair defaultBoardSize,
-                     Theme theme, Levels levels) {
+                     Theme theme, Levels levels, GameMetrics metrics) {
         this.gameTableFactory = gameTableFactory;
         this.levels = levels;
         this.theme = theme;
+        this.metrics = metrics;
+        metricsOverlay = new MetricsOverlay(metrics, this);
+        dragLayer = new JLayer<>(this, new LayerUI<GamePanel>() {
+            @Override
+            public void paint(Graphics g, JComponent c) {
+                super.paint(g, c);
+                drawDraggedImage((Graphics2D) g);
+            }
+        });
+        animationLoop = new AnimationLoop(metrics, ANIMATION_FPS,
+                () -> moveAnimation.isRunning(System.nanoTime()), this::paintAnimationFrame);
+        animationLoop.start();
         setOpaque(true);
+        bindMetricsToggle();
         setBoardSize(defaultBoardSize);
     }
 
+    private void bindMetricsToggle() {
+        final String actionKey = "toggleMetrics";
+        getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke("F3"), actionKey);
+        getActionMap().put(actionKey, new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                metricsOverlay.toggle();
+                repaint();
+            }
+        });
+    }
+
     public void setBoardSize(Size size) {
+        final BoardResizeEvent event = new BoardResizeEvent();
+        event.begin();
         boolean restart = false;
         if (gameTable == null || !gameTable.isBoardSize(size)) {
             final GameTable oldGameTable = gameTable;
@@ -84,6 +142,12 @@ public final class GamePanel extends JPanel implements GameView {
         if (restart) {
             start();
         }
+        event.end();
+        if (event.shouldCommit()) {
+            event.width = size.x();
+            event.height = size.y();
+            event.commit();
+        }
     }
 
     private void setSize() {
@@ -110,8 +174,12 @@ public final class GamePanel extends JPanel implements GameView {
 
     @Override
     public Point getPoint(Position p) {
-        final int x = (int) ((p.x() + SPACING) * xStep());
-        final int y = (int) ((p.y() + SPACING) * yStep());
+        return getPoint(p, xStep(), yStep());
+    }
+
+    private static Point getPoint(Position p, int xStep, int yStep) {
+        final int x = (int) ((p.x() + SPACING) * xStep);
+        final int y = (int) ((p.y() + SPACING) * yStep);
         return new Point(x, y);
     }
 
@@ -135,44 +203,108 @@ public final class GamePanel extends JPanel implements GameView {
 
     private void startLevel() {
         gameTable.reset();
+        // a player waiting for a move of the old game gives up the turn, so the game loop sees the new one
+        gameTable.interruptTurn();
         repaint();
     }
 
     @Override
     protected void paintComponent(Graphics g) {
+        final PaintEvent event = new PaintEvent();
+        event.begin();
+        final long start = metrics.start();
         super.paintComponent(g);
 
         final Graphics2D g2 = (Graphics2D) g;
         g2.setRenderingHints(renderingHints);
         g2.setColor(getForeground());
 
-        if (levels.isLevelDone()) {
+        if (levels.isLevelDone() || levels.isDrawn()) {
             drawLevelEnded(g2);
+        } else if (dragOverlay.isActive()) {
+            // the table does not change during a drag, only the clip around the dragged piece is blitted
+            g2.drawImage(getDragBackground(), 0, 0, null);
         } else {
-            drawGameTable(g2);
-            drawDraggedImage(g2);
+            final BoardSnapshot board = gameTable.getSnapshot();
+            final long now = System.nanoTime();
+            if (moveAnimation.follow(board, now)) {
+                animationLoop.wake();
+            }
+            drawGameTable(g2, board, now);
+            drawTargets(g2, board);
+            drawAnimation(g2, board, now);
+        }
+        metrics.recordPaint(start);
+        metricsOverlay.draw(g2);
+        event.end();
+        if (event.shouldCommit()) {
+            final Rectangle clip = g.getClipBounds();
+            event.clipWidth = clip == null ? getWidth() : clip.width;
+            event.clipHeight = clip == null ? getHeight() : clip.height;
+            event.dragging = dragOverlay.isActive();
+            event.commit();
         }
     }
 
+    private BufferedImage getDragBackground() {
+        final int width = getWidth();
+        final int height = getHeight();
+        if (dragBackground == null || dragBackground.getWidth() != width || dragBackground.getHeight() != height) {
+            final GraphicsConfiguration gc = getGraphicsConfiguration();
+            dragBackground = gc != null
+                    ? gc.createCompatibleImage(width, height)
+                    : new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            final Graphics2D g = dragBackground.createGraphics();
+            try {
+                g.setColor(getBackground());
+                g.fillRect(0, 0, width, height);
+                g.setRenderingHints(renderingHints);
+                g.setColor(getForeground());
+                final BoardSnapshot board = gameTable.getSnapshot();
+                drawGameTable(g, board, System.nanoTime());
+                drawTargets(g, board);
+            } finally {
+                g.dispose();
+            }
+        }
+        return dragBackground;
+    }
+
     private void drawLevelEnded(Graphics2D g2) {
         final int width = getWidth();
         final int height = getHeight();
 
-        final BufferedImage congrats = theme.getImage(CONGRATS);
-        g2.drawImage(congrats, width / 2 - congrats.getWidth() / 2, height / 2 - congrats.getHeight(), null);
+        if (levels.isLevelDone()) {
+            final BufferedImage congrats = theme.getImage(CONGRATS);
+            g2.drawImage(congrats, width / 2 - congrats.getWidth() / 2, height / 2 - congrats.getHeight(), null);
+        }
         g2.setFont(new Font("SansSerif", Font.PLAIN, 34));
         final String s = levels.getLevelEndMessage();
         g2.drawString(s, width / 2 - (g2.getFontMetrics().stringWidth(s) / 2), height / 2 + 20);
     }
 
-    private void drawGameTable(Graphics2D g2) {
-        final int xStep = xStep();
-        final int yStep = yStep();
-        final int xBoardEnd = xStep * gameTable.getBoardXSize();
-        final int yBoardEnd = yStep * gameTable.getBoardYSize();
+    private void paintAnimationFrame() {
+        final Rectangle bounds = moveAnimation.getBounds(this::getPoint,
+                theme.getPieceWidth(), theme.getPieceHeight());
+        if (bounds != null) {
+            dragLayer.paintImmediately(bounds);
+        }
+    }
+
+    private void drawAnimation(Graphics2D g2, BoardSnapshot board, long now) {
+        final int xStep = getWidth() / board.getXSize();
+        final int yStep = getHeight() / board.getYSize();
+        moveAnimation.draw(g2, p -> getPoint(p, xStep, yStep), theme, now);
+    }
+
+    private void drawGameTable(Graphics2D g2, BoardSnapshot board, long now) {
+        final int xStep = getWidth() / board.getXSize();
+        final int yStep = getHeight() / board.getYSize();
+        final int xBoardEnd = xStep * board.getBoardXSize();
+        final int yBoardEnd = yStep * board.getBoardYSize();
 
         drawBoard(g2, xStep, yStep, xBoardEnd, yBoardEnd);
-        drawPieces(g2, xStep, yStep);
+        drawPieces(g2, board, xStep, yStep, now);
     }
 
     private void drawBoard(Graphics2D g2, int xStep, int yStep, int xEnd, int yEnd) {
@@ -183,15 +315,16 @@ public final class GamePanel extends JPanel implements GameView {
         g2.drawRect(xStep, yStep, xEnd, yEnd);
     }
 
-    private void drawPieces(Graphics2D g2, int xStep, int yStep) {
-        for (Position p : gameTable.getPositions().getAll()) {
-            final Point point = getPoint(p);
+    private void drawPieces(Graphics2D g2, BoardSnapshot board, int xStep, int yStep, long now) {
+        final TablePositions positions = board.getPositions();
+        for (Position p : positions.getAll()) {
+            final Point point = getPoint(p, xStep, yStep);
 
-            for (Move m : gameTable.getStepsAlongLineFrom(p)) {
+            for (Move m : positions.getStepsAlongLineFrom(p)) {
                 drawLine(g2, xStep, yStep, point.x, point.y, m);
             }
-            final Piece piece = gameTable.get(p);
-            if (piece != null) {
+            final Piece piece = board.get(p);
+            if (piece != null && not(dragOverlay.hides(p, board)) && not(moveAnimation.hides(p, now))) {
                 final BufferedImage image = theme.getImage(piece);
                 g2.drawImage(image,
                         point.x - image.getWidth() / 2,
@@ -202,37 +335,85 @@ public final class GamePanel extends JPanel implements GameView {
         }
     }
 
+    private void drawTargets(Graphics2D g2, BoardSnapshot board) {
+        final BufferedImage image = targetOverlay.getImage(getGraphicsConfiguration(),
+                getWidth(), getHeight(), g -> paintTargets(g, board));
+        if (image != null) {
+            g2.drawImage(image, 0, 0, null);
+        }
+    }
+
+    private void paintTargets(Graphics2D g, BoardSnapshot board) {
+        final int xStep = getWidth() / board.getXSize();
+        final int yStep = getHeight() / board.getYSize();
+        final int width = theme.getPieceWidth();
+        final int height = theme.getPieceHeight();
+        final Color grid = theme.getColor(GRID);
+        final Color color = grid != null ? grid : getForeground();
+        g.setRenderingHints(renderingHints);
+        g.setColor(new Color(color.getRed(), color.getGreen(), color.getBlue(), TARGET_ALPHA));
+        for (Position p : targetOverlay.getTargets()) {
+            final Point point = getPoint(p, xStep, yStep);
+            g.fillOval(point.x - width / 2, point.y - height / 2, width, height);
+        }
+    }
+
     private void drawLine(Graphics2D g2, int xStep, int yStep, int x, int y, Move m) {
         g2.setColor(theme.getColor(m.isOneDimensional() ? GRID : DIAGONAL));
         g2.drawLine(x, y, x + m.xStep() * xStep, y + m.yStep() * yStep);
     }
 
-    private Point lastDragPoint;
-    private BufferedImage draggedImage;
-
-    public void setLastDragPoint(Point lastDragPoint) {
-        this.lastDragPoint = lastDragPoint;
+    @Override
+    public void startDrag(Position source, Piece piece, Collection<Position> targets) {
+        dragOverlay.start(source, piece);
+        targetOverlay.show(targets);
+        // the cached board shows the table at rest
+        moveAnimation.stop();
+        dragBackground = null;
+        if (!targets.isEmpty()) {
+            repaint();
+        }
+        notifyDraggedTo(source, piece);
     }
 
     @Override
     public void notifyDraggedTo(Point point, Piece piece) {
-        draggedImage = theme.getImage(piece);
+        final BufferedImage draggedImage = theme.getImage(piece);
+        final Point lastDragPoint = dragOverlay.getPoint();
         if (lastDragPoint != null) {
-            repaintForDrag(lastDragPoint);
+            repaintForDrag(lastDragPoint, draggedImage);
         }
         if (point != null) {
             point.translate(-draggedImage.getWidth() / 2, -draggedImage.getHeight() / 2);
             if (!point.equals(lastDragPoint)) {
-                repaintForDrag(point);
+                repaintForDrag(point, draggedImage);
             }
         }
-        setLastDragPoint(point);
+        dragOverlay.moveTo(point);
     }
 
-    private void repaintForDrag(Point p) {
-        repaint(addPixels(getRectangle(p, draggedImage), 2));
+    @Override
+    public void endDrag() {
+        if (dragOverlay.isActive()) {
+            final Piece piece = dragOverlay.getPiece();
+            final Position source = dragOverlay.getSource();
+            notifyDraggedTo((Point) null, piece);
+            // repaints the source position, where the piece shows up again
+            notifyDraggedTo(source, piece);
+            dragOverlay.clear();
+            dragBackground = null;
+        }
+        if (!targetOverlay.isEmpty()) {
+            targetOverlay.clear();
+            repaint();
+        }
     }
 
+    private void repaintForDrag(Point p, BufferedImage draggedImage) {
+        dragLayer.repaint(addPixels(getRectangle(p, draggedImage), 2));
+    }
+
+
     @Override
     public Size getScreenSize() {
         final GraphicsConfiguration gc = getGraphicsConfiguration();
@@ -245,8 +426,11 @@ public final class GamePanel extends JPanel implements GameView {
     }
 
     private void drawDraggedImage(Graphics2D g2) {
-        if (lastDragPoint != null && draggedImage != null) {
+        final Point lastDragPoint = dragOverlay.getPoint();
+        if (lastDragPoint != null && dragOverlay.isActive()) {
+            final BufferedImage draggedImage = theme.getImage(dragOverlay.getPiece());
             g2.drawImage(draggedImage, lastDragPoint.x, lastDragPoint.y, null);
+            g2.setColor(getForeground());
             g2.setStroke(theme.getDragBoxStroke());
             final Rectangle r = getRectangle(lastDragPoint, draggedImage);
             g2.drawRect(r.x, r.y, r.width, r.height);
@@ -286,6 +470,11 @@ public final class GamePanel extends JPanel implements GameView {
         return gameTable;
     }
 
+    @Override
+    public Component getComponent() {
+        return dragLayer;
+    }
+
     @Override
     public void applyThemeChange() {
         setBackground(theme.getColor(BACKGROUND));
@@ -8,6 +8,7 @@ import org.oldo.g2d.Size;
 
 import java.awt.*;
 import java.awt.event.MouseAdapter;
+import java.util.Collection;
 
 /**
  * View interface
@@ -30,9 +31,16 @@ public interface GameView extends Startable {
 
     GameTable getGameTable();
 
+    /**
+     * @return the component to show, i.e. the view within its overlay layers
+     */
+    Component getComponent();
+
     void applyThemeChange();
 
-    void setLastDragPoint(Point p);
+    void startDrag(Position source, Piece piece, Collection<Position> targets);
+
+    void endDrag();
 
     void notifyDraggedTo(Point point, Piece piece);
 
@@ -0,0 +1,79 @@
+package org.oldo.baghchal.view;
+
+import org.oldo.baghchal.metrics.GameMetrics;
+import org.oldo.baghchal.metrics.LatencySummary;
+
+import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+
+/**
+ * Toggleable text overlay showing the hot-path metrics
+ */
+final class MetricsOverlay {
+
+    private static final int REFRESH_MILLIS = 500;
+    private static final int MARGIN = 6;
+
+    private final Font font = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+    private final Color background = new Color(0, 0, 0, 160);
+
+    private final GameMetrics metrics;
+    private final Timer refresher;
+
+    MetricsOverlay(GameMetrics metrics, JComponent component) {
+        this.metrics = metrics;
+        refresher = new Timer(REFRESH_MILLIS, e -> component.repaint(0, 0, 0, component.getWidth(), 80));
+        // also when enabled or disabled over JMX
+        metrics.addEnabledListener(() -> SwingUtilities.invokeLater(() -> updateRefresher(component)));
+        if (metrics.isEnabled()) {
+            refresher.start();
+        }
+    }
+
+    void toggle() {
+        metrics.setEnabled(!metrics.isEnabled());
+    }
+
+    private void updateRefresher(JComponent component) {
+        if (metrics.isEnabled()) {
+            refresher.start();
+        } else {
+            refresher.stop();
+            component.repaint(0, 0, 0, component.getWidth(), 80);
+        }
+    }
+
+    void draw(Graphics2D g2) {
+        if (!metrics.isEnabled()) {
+            return;
+        }
+        final LatencySummary paint = metrics.getPaintLatency();
+        final LatencySummary frame = metrics.getFrameTime();
+        final String[] lines = {
+                String.format("FPS %.1f  paint p50 %.2f p90 %.2f p99 %.2f ms",
+                        metrics.getFramesPerSecond(), paint.getP50Millis(), paint.getP90Millis(), paint.getP99Millis()),
+                String.format("animation frame p50 %.2f p99 %.2f ms  dropped %d",
+                        frame.getP50Millis(), frame.getP99Millis(), metrics.getDroppedFrameCount()),
+                String.format("AI %.0f nodes/s  last think %.1f ms",
+                        metrics.getNodesPerSecond(), metrics.getLastThinkMillis())
+        };
+        g2.setFont(font);
+        final FontMetrics fm = g2.getFontMetrics();
+        int width = 0;
+        for (String line : lines) {
+            width = Math.max(width, fm.stringWidth(line));
+        }
+        final int lineHeight = fm.getHeight();
+        g2.setColor(background);
+        g2.fillRect(0, 0, width + 2 * MARGIN, lines.length * lineHeight + 2 * MARGIN);
+        g2.setColor(Color.WHITE);
+        for (int i = 0; i < lines.length; i++) {
+            g2.drawString(lines[i], MARGIN, MARGIN + i * lineHeight + fm.getAscent());
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.oldo.baghchal.view;
+
+import org.oldo.baghchal.model.BoardSnapshot;
+import org.oldo.baghchal.model.Move;
+import org.oldo.baghchal.model.Piece;
+import org.oldo.baghchal.model.Position;
+import org.oldo.baghchal.theming.Theme;
+
+import java.awt.AlphaComposite;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Slides the last moved piece from its source to its target and fades out the piece
+ * it captured (confined to the EDT, except for {@link #isRunning})
+ */
+final class MoveAnimation {
+
+    private static final long SLIDE_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+    private static final long FADE_NANOS = TimeUnit.MILLISECONDS.toNanos(400);
+
+    private BoardSnapshot board;
+    private long start;
+    private volatile long end;
+
+    /**
+     * Starts animating the move that led to the board, unless it is already animated
+     *
+     * @return true if a new animation started
+     */
+    boolean follow(BoardSnapshot board, long now) {
+        if (board == this.board) {
+            return false;
+        }
+        this.board = board;
+        if (board.getLastMove() == null) {
+            end = 0;
+            return false;
+        }
+        start = now;
+        end = now + (board.getCapturedAt() != null ? Math.max(SLIDE_NANOS, FADE_NANOS) : SLIDE_NANOS);
+        return true;
+    }
+
+    boolean isRunning(long now) {
+        return now - end < 0;
+    }
+
+    void stop() {
+        end = 0;
+    }
+
+    /**
+     * Whether the moved piece is still on its way to the position
+     */
+    boolean hides(Position p, long now) {
+        return isRunning(now) && p.equals(board.getLastMove().p2()) && now - start < SLIDE_NANOS;
+    }
+
+    void draw(Graphics2D g2, Function<Position, Point> pointOf, Theme theme, long now) {
+        if (!isRunning(now)) {
+            return;
+        }
+        final long elapsed = now - start;
+        final Position capturedAt = board.getCapturedAt();
+        if (capturedAt != null && elapsed < FADE_NANOS) {
+            final Composite composite = g2.getComposite();
+            final float alpha = 1f - elapsed / (float) FADE_NANOS;
+            g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, alpha));
+            drawCentered(g2, theme.getImage(board.getCaptured()), pointOf.apply(capturedAt));
+            g2.setComposite(composite);
+        }
+        if (elapsed < SLIDE_NANOS) {
+            final Move move = board.getLastMove();
+            final Point from = pointOf.apply(move.p1());
+            final Point to = pointOf.apply(move.p2());
+            final double t = elapsed / (double) SLIDE_NANOS;
+            final double eased = t * t * (3 - 2 * t);
+            final Point at = new Point(
+                    (int) Math.round(from.x + (to.x - from.x) * eased),
+                    (int) Math.round(from.y + (to.y - from.y) * eased));
+            final Piece piece = board.get(move.p2());
+            if (piece != null) {
+                drawCentered(g2, theme.getImage(piece), at);
+            }
+        }
+    }
+
+    /**
+     * @return the area the animation draws in, or null if there is none
+     */
+    Rectangle getBounds(Function<Position, Point> pointOf, int pieceWidth, int pieceHeight) {
+        if (board == null || board.getLastMove() == null) {
+            return null;
+        }
+        final Rectangle bounds = new Rectangle(pointOf.apply(board.getLastMove().p1()));
+        bounds.add(pointOf.apply(board.getLastMove().p2()));
+        if (board.getCapturedAt() != null) {
+            bounds.add(pointOf.apply(board.getCapturedAt()));
+        }
+        bounds.grow(pieceWidth / 2 + 2, pieceHeight / 2 + 2);
+        return bounds;
+    }
+
+    private static void drawCentered(Graphics2D g2, BufferedImage image, Point p) {
+        g2.drawImage(image, p.x - image.getWidth() / 2, p.y - image.getHeight() / 2, null);
+    }
+}
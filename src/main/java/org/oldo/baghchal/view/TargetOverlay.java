@@ -0,0 +1,59 @@
+package org.oldo.baghchal.view;
+
+import org.oldo.baghchal.model.Position;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.function.Consumer;
+
+/**
+ * Legal targets of the picked piece, rendered once per pick into a translucent
+ * image that painting only blits (confined to the EDT)
+ */
+final class TargetOverlay {
+
+    private Collection<Position> targets = Collections.emptyList();
+    private BufferedImage image;
+
+    void show(Collection<Position> targets) {
+        this.targets = targets;
+        image = null;
+    }
+
+    void clear() {
+        show(Collections.emptyList());
+    }
+
+    boolean isEmpty() {
+        return targets.isEmpty();
+    }
+
+    Collection<Position> getTargets() {
+        return targets;
+    }
+
+    /**
+     * @return the targets as drawn by the painter, drawn again only if the size changed
+     */
+    BufferedImage getImage(GraphicsConfiguration gc, int width, int height, Consumer<Graphics2D> painter) {
+        if (targets.isEmpty() || width <= 0 || height <= 0) {
+            return null;
+        }
+        if (image == null || image.getWidth() != width || image.getHeight() != height) {
+            image = gc != null
+                    ? gc.createCompatibleImage(width, height, Transparency.TRANSLUCENT)
+                    : new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            final Graphics2D g = image.createGraphics();
+            try {
+                painter.accept(g);
+            } finally {
+                g.dispose();
+            }
+        }
+        return image;
+    }
+}
@@ -0,0 +1,56 @@
+package org.oldo.baghchal.control;
+
+import org.guppy4j.log.Slf4jLogProvider;
+import org.junit.Test;
+import org.oldo.baghchal.Listener;
+import org.oldo.baghchal.metrics.GameMetrics;
+import org.oldo.baghchal.model.GameTable;
+import org.oldo.baghchal.model.Piece;
+import org.oldo.baghchal.model.Puzzle;
+import org.oldo.text.CharCanvasImpl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Each shipped puzzle must be solvable in its number of plies, and not in two plies fewer,
+ * so that it is exactly as hard as its level says
+ */
+public final class ProofSolverTest {
+
+    @Test
+    public void provesEachPuzzleInItsPliesOnly() throws IOException {
+        final List<Puzzle> puzzles = Puzzle.parse(readPuzzles());
+        assertFalse(puzzles.isEmpty());
+        for (Puzzle puzzle : puzzles) {
+            final GameTable table = new GameTable(new Slf4jLogProvider(), puzzle.getBoardSize(), puzzle::setUp,
+                    Listener.NONE, new CharCanvasImpl(), new GameMetrics(false));
+            table.reset();
+            final Piece toMove = Piece.toMove(table.getHistory().getPly());
+            final ProofSolver solver = new ProofSolver(20, 5_000_000, Long.MAX_VALUE, ProofSolver.Progress.NONE);
+
+            assertEquals(puzzle.toString(), ProofSolver.Result.PROVEN,
+                    solver.solve(table.copy(), toMove, puzzle.getAttacker(), puzzle::isSolved, puzzle.getPlies()));
+            assertEquals(puzzle.toString(), ProofSolver.Result.DISPROVEN,
+                    solver.solve(table.copy(), toMove, puzzle.getAttacker(), puzzle::isSolved, puzzle.getPlies() - 2));
+        }
+    }
+
+    private static List<String> readPuzzles() throws IOException {
+        final List<String> lines = new ArrayList<>();
+        try (final BufferedReader reader = new BufferedReader(new InputStreamReader(
+                ProofSolverTest.class.getResourceAsStream("/org/oldo/baghchal/puzzles.txt"), StandardCharsets.UTF_8))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,121 @@
+package org.oldo.baghchal.model;
+
+import org.guppy4j.log.Slf4jLogProvider;
+import org.junit.Test;
+import org.oldo.baghchal.BaghChalSetup;
+import org.oldo.baghchal.Listener;
+import org.oldo.baghchal.metrics.GameMetrics;
+import org.oldo.g2d.IntPair;
+import org.oldo.text.CharCanvasImpl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Undo and redo through {@link GameTable#goTo} must restore the table exactly as it was at that ply
+ */
+public final class GameHistoryTest {
+
+    private static final Piece[] PIECES = Piece.values();
+
+    private final Random random = new Random(40);
+
+    @Test
+    public void goToRestoresEveryPly() {
+        for (int size : new int[]{5, 9, 25}) {
+            final GameTable table = newTable(size);
+            final List<String> states = new ArrayList<>();
+            states.add(state(table));
+            play(table, states, 600);
+            for (int k = 0; k < 300; k++) {
+                final int ply = random.nextInt(table.getHistory().size() + 1);
+                table.goTo(ply);
+                assertEquals(size + "x" + size + " at ply " + ply, states.get(ply), state(table));
+                for (Piece piece : PIECES) {
+                    final List<Position> scanned = new ArrayList<>();
+                    for (Position p : table.getPositions().getAll()) {
+                        if (table.get(p) == piece) {
+                            scanned.add(p);
+                        }
+                    }
+                    assertEquals(scanned, table.getPositionsOf(piece));
+                }
+                if (k % 50 == 49) {
+                    // playing on from an earlier ply drops the moves that could have been redone
+                    states.subList(ply + 1, states.size()).clear();
+                    play(table, states, 40);
+                    assertEquals(states.size() - 1, table.getHistory().size());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void resetOfCopyLeavesOriginalAlone() {
+        final GameTable table = newTable(5);
+        play(table, new ArrayList<>(), 20);
+        final String state = state(table);
+        final int ply = table.getHistory().getPly();
+
+        table.copy().reset();
+
+        assertEquals(state, state(table));
+        assertEquals(ply, table.getHistory().getPly());
+    }
+
+    @Test
+    public void goToStaysWithinHistoryStartedLater() {
+        final GameTable table = newTable(5);
+        play(table, new ArrayList<>(), 3);
+        final int base = table.getHistory().getPly();
+        // as after recovering a saved game or a resync
+        table.startHistoryAt(base);
+        final List<String> states = new ArrayList<>();
+        states.add(state(table));
+        play(table, states, 30);
+        final GameHistory history = table.getHistory();
+        assertEquals(base, history.getBasePly());
+        assertEquals(base + states.size() - 1, history.size());
+        for (int ply = history.size(); ply >= base; ply--) {
+            table.goTo(ply);
+            assertEquals("at ply " + ply, states.get(ply - base), state(table));
+        }
+        try {
+            table.goTo(base - 1);
+            fail("went below the history's base ply");
+        } catch (IllegalArgumentException e) {
+            assertEquals(states.get(0), state(table));
+        }
+    }
+
+    private void play(GameTable table, List<String> states, int plies) {
+        for (int i = 0; i < plies && !table.isDrawn(); i++) {
+            final List<Move> moves = table.getLegalMoves(Piece.toMove(table.getHistory().getPly()));
+            if (moves.isEmpty()) {
+                return;
+            }
+            table.movePiece(moves.get(random.nextInt(moves.size())));
+            states.add(state(table));
+        }
+    }
+
+    private static String state(GameTable table) {
+        final StringBuilder state = new StringBuilder();
+        for (Position p : table.getPositions().getAll()) {
+            final Piece piece = table.get(p);
+            state.append(piece == null ? '.' : piece.asChar());
+        }
+        return state.append(table.getSnapshot().getHiddenBorderPieceCount()).toString();
+    }
+
+    private static GameTable newTable(int size) {
+        final GameTable table = new GameTable(new Slf4jLogProvider(), new IntPair(size, size), BaghChalSetup::prepare,
+                Listener.NONE, new CharCanvasImpl(), new GameMetrics(false));
+        table.reset();
+        return table;
+    }
+}
@@ -0,0 +1,64 @@
+package org.oldo.baghchal.model;
+
+import org.guppy4j.log.Slf4jLogProvider;
+import org.junit.Test;
+import org.oldo.baghchal.BaghChalSetup;
+import org.oldo.baghchal.Listener;
+import org.oldo.baghchal.metrics.GameMetrics;
+import org.oldo.g2d.IntPair;
+import org.oldo.text.CharCanvasImpl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The targets highlighted while dragging must be exactly the cells {@link GameTable#isValid} accepts
+ */
+public final class LegalTargetsTest {
+
+    private static final Piece[] PIECES = Piece.values();
+
+    @Test
+    public void matchIsValidThroughoutSelfPlay() {
+        final GameTable table = new GameTable(new Slf4jLogProvider(), new IntPair(5, 5), BaghChalSetup::prepare,
+                Listener.NONE, new CharCanvasImpl(), new GameMetrics(false));
+        table.reset();
+        final Random random = new Random(37);
+        int plies = 0;
+        for (int game = 0; game < 4; game++) {
+            while (!table.isDrawn()) {
+                final List<Move> moves = new ArrayList<>();
+                for (Position source : table.getPositions().getAll()) {
+                    for (Piece piece : PIECES) {
+                        final List<Position> expected = new ArrayList<>();
+                        for (Position target : table.getPositions().getAll()) {
+                            if (table.isValid(new Move(source, target), piece)) {
+                                expected.add(target);
+                            }
+                        }
+                        assertEquals(piece + " from " + source + System.lineSeparator() + table,
+                                expected, table.getLegalTargets(source, piece));
+                        if (piece == toMove(table) && table.get(source) == piece) {
+                            expected.forEach(target -> moves.add(new Move(source, target)));
+                        }
+                    }
+                }
+                if (moves.isEmpty()) {
+                    break;
+                }
+                table.movePiece(moves.get(random.nextInt(moves.size())));
+                plies++;
+            }
+            table.reset();
+        }
+        assertTrue(plies > 100);
+    }
+
+    private static Piece toMove(GameTable table) {
+        return Piece.toMove(table.getHistory().getPly());
+    }
+}
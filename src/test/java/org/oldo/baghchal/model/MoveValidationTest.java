@@ -0,0 +1,115 @@
+package org.oldo.baghchal.model;
+
+import org.guppy4j.log.Slf4jLogProvider;
+import org.junit.Test;
+import org.oldo.baghchal.BaghChalSetup;
+import org.oldo.baghchal.Listener;
+import org.oldo.baghchal.metrics.GameMetrics;
+import org.oldo.g2d.IntPair;
+import org.oldo.text.CharCanvasImpl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.fail;
+
+/**
+ * {@link GameTable#isValid} answered from cached legal targets must agree with the rules applied
+ * directly, as the validator did before the cache, for sources and targets up to two cells off the table
+ */
+public final class MoveValidationTest {
+
+    private static final Piece[] PIECES = Piece.values();
+
+    @Test
+    public void agreesOnEveryFillingOfSmallBoard() {
+        // empty, partial and full border, each cell set incrementally on one table
+        for (int border = 0; border < 3; border++) {
+            final GameTable table = newTable(3, 3);
+            final List<Position> borderCells = list(table.getPositions().getBorder());
+            for (Position p : table.getPositions().getAll()) {
+                table.set(p, null);
+            }
+            for (int i = 0; i < borderCells.size(); i++) {
+                if (border == 2 || border == 1 && i % 3 == 0) {
+                    table.set(borderCells.get(i), Piece.PREY);
+                }
+            }
+            final List<Position> cells = list(table.getPositions().getBoard());
+            for (int code = 0; code < 19683; code++) {
+                int c = code;
+                for (Position p : cells) {
+                    table.set(p, piece(c % 3));
+                    c /= 3;
+                }
+                if (border == 0 || code % 7 == 0) {
+                    compare(table);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void agreesOnRandomFillingsOfLargerBoards() {
+        final Random random = new Random(42);
+        for (int[] size : new int[][]{{4, 4}, {5, 5}, {3, 6}, {7, 5}}) {
+            final GameTable table = newTable(size[0], size[1]);
+            for (int k = 0; k < 100; k++) {
+                for (Position p : table.getPositions().getAll()) {
+                    if (random.nextInt(3) == 0) {
+                        table.set(p, piece(random.nextInt(3)));
+                    }
+                }
+                compare(table);
+            }
+        }
+    }
+
+    private static void compare(GameTable table) {
+        for (int x1 = -2; x1 < table.getXSize() + 2; x1++) {
+            for (int y1 = -2; y1 < table.getYSize() + 2; y1++) {
+                for (int x2 = -2; x2 < table.getXSize() + 2; x2++) {
+                    for (int y2 = -2; y2 < table.getYSize() + 2; y2++) {
+                        final Move move = new Move(new Position(x1, y1), new Position(x2, y2));
+                        for (Piece piece : PIECES) {
+                            final boolean expected = isValidByRules(table, move, piece);
+                            if (table.isValid(move, piece) != expected) {
+                                fail(piece + " " + move + " should be " + (expected ? "valid" : "invalid")
+                                        + System.lineSeparator() + table);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The validator before the move cache
+     */
+    private static boolean isValidByRules(GameTable table, Move move, Piece piece) {
+        try {
+            return !move.isStationary() && table.isEmptyAt(move.p2()) && piece.isValid(move, table);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            return false;
+        }
+    }
+
+    private static Piece piece(int code) {
+        return code == 0 ? null : PIECES[code - 1];
+    }
+
+    private static List<Position> list(Iterable<Position> positions) {
+        final List<Position> list = new ArrayList<>();
+        positions.forEach(list::add);
+        return list;
+    }
+
+    private static GameTable newTable(int xSize, int ySize) {
+        final GameTable table = new GameTable(new Slf4jLogProvider(), new IntPair(xSize, ySize), BaghChalSetup::prepare,
+                Listener.NONE, new CharCanvasImpl(), new GameMetrics(false));
+        table.reset();
+        return table;
+    }
+}
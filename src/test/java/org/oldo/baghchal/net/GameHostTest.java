@@ -0,0 +1,302 @@
+package org.oldo.baghchal.net;
+
+import org.guppy4j.log.Slf4jLogProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.oldo.baghchal.BaghChalSetup;
+import org.oldo.baghchal.Listener;
+import org.oldo.baghchal.control.PlayerInterruptedException;
+import org.oldo.baghchal.control.RemotePlayer;
+import org.oldo.baghchal.metrics.GameMetrics;
+import org.oldo.baghchal.metrics.LatencyHistogram;
+import org.oldo.baghchal.model.GameTable;
+import org.oldo.baghchal.model.Move;
+import org.oldo.baghchal.model.Piece;
+import org.oldo.g2d.IntPair;
+import org.oldo.g2d.Size;
+import org.oldo.text.CharCanvasImpl;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Two players on loopback play consecutive games through a {@link GameHost}, which must start
+ * each new game with them, so that no move of the next game is answered with a resync
+ */
+public final class GameHostTest {
+
+    private static final Piece[] PIECES = Piece.values();
+    private static final int PLIES = 20;
+
+    private final Size boardSize = new IntPair(5, 5);
+    private final Random random = new Random(49);
+
+    private GameHost host;
+    private final Client[] clients = new Client[PIECES.length];
+
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        host = new GameHost(new Slf4jLogProvider(), new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                TimeUnit.MINUTES.toMillis(1));
+        host.start();
+        for (Piece piece : PIECES) {
+            final Client client = new Client(piece, 1);
+            clients[piece.ordinal()] = client;
+            client.connection.start();
+            // the first to join sets up the game
+            client.awaitSnapshot();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for (Client client : clients) {
+            client.connection.close();
+        }
+        host.close();
+    }
+
+    @Test
+    public void newGameEndedByBoth() throws InterruptedException {
+        play();
+        // e.g. trapped predators, which both game loops see
+        for (Client client : clients) {
+            client.startGame();
+        }
+        play();
+        assertSameAsHost();
+    }
+
+    @Test
+    public void newGameStartedByOne() throws InterruptedException {
+        play();
+        // e.g. from the menu, which the other player learns of from the host
+        clients[1].startGame();
+        clients[0].awaitSnapshot();
+        assertEquals(1, clients[0].restores);
+        play();
+        assertSameAsHost();
+    }
+
+    @Test
+    public void boardOfLargestSizeFitsAFrame() throws IOException, InterruptedException {
+        final Size largest = new IntPair(Frames.MAX_BOARD_SIZE, Frames.MAX_BOARD_SIZE);
+        final SyncSnapshot snapshot = join(largest);
+        assertNotNull("no snapshot of the largest board", snapshot);
+        assertTrue(snapshot.getBoardSize().sameAs(largest));
+    }
+
+    @Test
+    public void boardTooLargeIsRefused() throws IOException, InterruptedException {
+        try (SocketChannel channel = SocketChannel.open(host.getAddress())) {
+            channel.write(Frames.join(2, (byte) 0, new IntPair(Frames.MAX_BOARD_SIZE + 1, Frames.MAX_BOARD_SIZE)));
+            channel.socket().setSoTimeout(5_000);
+            assertEquals(-1, channel.socket().getInputStream().read());
+        }
+    }
+
+    @Test
+    public void newGameOnAnotherBoardResizesRemotePlayer() throws Exception {
+        final Client prey = new Client(Piece.PREY, 3);
+        prey.connection.start();
+        prey.awaitSnapshot();
+        final AtomicReference<GameTable> resized = new AtomicReference<>();
+        final RemotePlayer remote = new RemotePlayer(new Slf4jLogProvider(), Piece.PREY, host.getAddress(), 3, boardSize);
+        remote.start(size -> {
+            resized.set(newTable(size));
+            return resized.get();
+        });
+        final ExecutorService gameLoop = Executors.newSingleThreadExecutor();
+        try {
+            final Size larger = new IntPair(6, 6);
+            prey.startGame(larger);
+            final Future<Move> interrupted = gameLoop.submit(() -> remote.play(newTable(boardSize)));
+            try {
+                interrupted.get(5, TimeUnit.SECONDS);
+                fail("played on the old board");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof PlayerInterruptedException);
+            }
+            assertTrue(resized.get().isBoardSize(larger));
+            assertTrue(SyncSnapshot.of(prey.table).isSameAs(resized.get()));
+
+            // as the game loop does for the new table, which must not start yet another game
+            remote.gameStarted(resized.get());
+            final Move move = prey.table.getLegalMoves(Piece.PREY).get(0);
+            prey.table.movePiece(move);
+            prey.connection.send(move);
+            assertEquals(move.toString(), gameLoop.submit(() -> remote.play(resized.get()))
+                    .get(5, TimeUnit.SECONDS).toString());
+            prey.connection.resync();
+            prey.awaitSnapshot();
+            assertEquals("game number", 1, prey.game);
+            assertEquals(0, prey.restores);
+        } finally {
+            gameLoop.shutdownNow();
+            remote.close();
+            prey.connection.close();
+        }
+    }
+
+    private SyncSnapshot join(Size boardSize) throws IOException, InterruptedException {
+        final BlockingQueue<SyncSnapshot> snapshots = new LinkedBlockingQueue<>();
+        final HostConnection connection = new HostConnection(new Slf4jLogProvider(), host.getAddress(), 2,
+                Piece.PREY, boardSize, new HostConnection.Receiver() {
+            @Override
+            public void moveReceived(Move move) {
+            }
+
+            @Override
+            public void snapshotReceived(SyncSnapshot snapshot) {
+                snapshots.add(snapshot);
+            }
+
+            @Override
+            public void newGameReceived(int number) {
+            }
+        }, new LatencyHistogram());
+        connection.start();
+        try {
+            return snapshots.poll(5, TimeUnit.SECONDS);
+        } finally {
+            connection.close();
+        }
+    }
+
+    private void play() throws InterruptedException {
+        for (int i = 0; i < PLIES; i++) {
+            final int ply = clients[0].table.getHistory().getPly();
+            final Client mover = clients[Piece.toMove(ply).ordinal()];
+            final Client other = clients[mover.piece.other().ordinal()];
+            final List<Move> moves = mover.table.getLegalMoves(mover.piece);
+            if (moves.isEmpty()) {
+                return;
+            }
+            final Move move = moves.get(random.nextInt(moves.size()));
+            mover.table.movePiece(move);
+            mover.connection.send(move);
+            final Move received = other.awaitMove();
+            assertEquals(move.toString(), received.toString());
+            other.table.movePiece(received);
+            if (mover.table.isDrawn()) {
+                // as the game loops do
+                for (Client client : clients) {
+                    client.startGame();
+                }
+            }
+        }
+    }
+
+    private void assertSameAsHost() throws InterruptedException {
+        for (Client client : clients) {
+            final int restores = client.restores;
+            client.connection.resync();
+            client.awaitSnapshot();
+            assertEquals(client.piece + " resynced", restores, client.restores);
+        }
+        assertTrue(SyncSnapshot.of(clients[0].table).isSameAs(clients[1].table));
+    }
+
+    private static GameTable newTable(Size size) {
+        final GameTable table = new GameTable(new Slf4jLogProvider(), size, BaghChalSetup::prepare, Listener.NONE,
+                new CharCanvasImpl(), new GameMetrics(false));
+        table.reset();
+        return table;
+    }
+
+    /**
+     * Keeps a table in step with the host as a remote player does
+     */
+    private final class Client implements HostConnection.Receiver {
+
+        private final Piece piece;
+        private GameTable table;
+        private final HostConnection connection;
+        private final BlockingQueue<Object> received = new LinkedBlockingQueue<>();
+
+        private int game;
+        private int restores;
+
+        private Client(Piece piece, int gameId) throws IOException {
+            this.piece = piece;
+            table = newTable(boardSize);
+            connection = new HostConnection(new Slf4jLogProvider(), host.getAddress(), gameId, piece, boardSize, this,
+                    new LatencyHistogram());
+        }
+
+        private void startGame() {
+            startGame(boardSize);
+        }
+
+        private void startGame(Size size) {
+            if (table.isBoardSize(size)) {
+                table.reset();
+            } else {
+                table = newTable(size);
+            }
+            connection.newGame(game, size);
+            game++;
+        }
+
+        private Move awaitMove() throws InterruptedException {
+            return (Move) await(Move.class);
+        }
+
+        private void awaitSnapshot() throws InterruptedException {
+            await(SyncSnapshot.class);
+        }
+
+        private Object await(Class<?> type) throws InterruptedException {
+            while (true) {
+                final Object next = received.poll(5, TimeUnit.SECONDS);
+                assertNotNull(piece + " awaiting " + type.getSimpleName(), next);
+                if (next instanceof SyncSnapshot) {
+                    final SyncSnapshot snapshot = (SyncSnapshot) next;
+                    game = snapshot.getGame();
+                    if (!snapshot.isSameAs(table)) {
+                        snapshot.restore(table);
+                        restores++;
+                    }
+                } else if (next instanceof Integer && (Integer) next > game) {
+                    connection.resync();
+                }
+                if (type.isInstance(next)) {
+                    return next;
+                }
+            }
+        }
+
+        @Override
+        public void moveReceived(Move move) {
+            received.add(move);
+        }
+
+        @Override
+        public void snapshotReceived(SyncSnapshot snapshot) {
+            received.add(snapshot);
+        }
+
+        @Override
+        public void newGameReceived(int number) {
+            received.add(number);
+        }
+    }
+}